@@ -0,0 +1,101 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.jcodemodel.benchmark.SyntheticModel;
+import com.helger.jcodemodel.util.NullWriter;
+
+/**
+ * Benchmarks {@link JFormatter#write(JDefinedClass)} for each class of a large
+ * code model. It lives in the jcodemodel package, because this method is not
+ * public.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+public class JFormatterBenchmark
+{
+  @Param ({ "true", "false" })
+  public boolean m_bSinglePass;
+
+  private List <JDefinedClass> m_aClasses;
+
+  @Setup
+  public void setup ()
+  {
+    final JCodeModel aModel = SyntheticModel.createModel (10, 50, 10);
+    m_aClasses = new ArrayList <JDefinedClass> ();
+    for (final Iterator <JPackage> it = aModel.packages (); it.hasNext ();)
+      m_aClasses.addAll (it.next ().classes ());
+  }
+
+  @Benchmark
+  public JFormatter writeEachClass ()
+  {
+    JFormatter ret = null;
+    for (final JDefinedClass aClass : m_aClasses)
+    {
+      ret = new JFormatter (NullWriter.getInstance ()).setSinglePass (m_bSinglePass);
+      ret.write (aClass);
+    }
+    return ret;
+  }
+}
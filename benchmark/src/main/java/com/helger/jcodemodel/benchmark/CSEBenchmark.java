@@ -0,0 +1,134 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JClassAlreadyExistsException;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JVar;
+import com.helger.jcodemodel.optimize.CSE;
+
+/**
+ * Benchmarks {@link CSE#optimize(JBlock)} on deeply nested blocks and on long
+ * flat blocks. CSE modifies the block, so a fresh block is created before each
+ * invocation.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class CSEBenchmark
+{
+  @Param ({ "10", "50" })
+  public int m_nDepth;
+
+  @Param ({ "10" })
+  public int m_nStatementsPerBlock;
+
+  private JBlock m_aBlock;
+
+  @Setup (Level.Invocation)
+  public void setup () throws JClassAlreadyExistsException
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass aClass = cm._class ("org.example.bench.CSETarget");
+    final JMethod aMethod = aClass.method (JMod.PUBLIC, cm.VOID, "run");
+    m_aBlock = aMethod.body ();
+    final JVar aArray = m_aBlock.decl (cm.INT.array (), "a", JExpr.newArray (cm.INT, 42));
+    final JVar aIndex = m_aBlock.decl (cm.INT, "i", JExpr.lit (0));
+    SyntheticModel.fillDeepBlock (cm, m_aBlock, aArray, aIndex, m_nDepth, m_nStatementsPerBlock);
+  }
+
+  @Benchmark
+  public JBlock optimize ()
+  {
+    CSE.optimize (m_aBlock);
+    return m_aBlock;
+  }
+
+  @State (Scope.Thread)
+  public static class FlatBlock
+  {
+    @Param ({ "1000", "10000" })
+    public int m_nStatements;
+
+    private JBlock m_aBlock;
+
+    @Setup (Level.Invocation)
+    public void setup () throws JClassAlreadyExistsException
+    {
+      final JCodeModel cm = new JCodeModel ();
+      final JDefinedClass aClass = cm._class ("org.example.bench.CSEFlatTarget");
+      final JMethod aMethod = aClass.method (JMod.PUBLIC, cm.VOID, "map");
+      m_aBlock = aMethod.body ();
+      final JVar aArray = m_aBlock.decl (cm.INT.array (), "a", JExpr.newArray (cm.INT, 42));
+      SyntheticModel.fillFlatBlock (cm, m_aBlock, aArray, m_nStatements);
+    }
+  }
+
+  @Benchmark
+  public JBlock optimizeFlat (final FlatBlock aState)
+  {
+    CSE.optimize (aState.m_aBlock);
+    return aState.m_aBlock;
+  }
+}
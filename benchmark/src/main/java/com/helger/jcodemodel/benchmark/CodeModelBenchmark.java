@@ -0,0 +1,126 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.writer.SingleStreamCodeWriter;
+import com.helger.jcodemodel.writer.ZipCodeWriter;
+
+/**
+ * Benchmarks creating a large code model and writing it with the different
+ * code writers.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+public class CodeModelBenchmark
+{
+  /**
+   * An output stream that discards everything, so that only the generation is
+   * measured.
+   */
+  private static final class NullOutputStream extends OutputStream
+  {
+    @Override
+    public void write (final int b)
+    {}
+
+    @Override
+    public void write (final byte [] b, final int off, final int len)
+    {}
+  }
+
+  @Param ({ "10" })
+  public int m_nPackages;
+
+  @Param ({ "50" })
+  public int m_nClassesPerPackage;
+
+  @Param ({ "10" })
+  public int m_nMethodsPerClass;
+
+  private JCodeModel m_aModel;
+
+  @Setup
+  public void setup ()
+  {
+    m_aModel = SyntheticModel.createModel (m_nPackages, m_nClassesPerPackage, m_nMethodsPerClass);
+  }
+
+  @Benchmark
+  public JCodeModel createModel ()
+  {
+    return SyntheticModel.createModel (m_nPackages, m_nClassesPerPackage, m_nMethodsPerClass);
+  }
+
+  @Benchmark
+  public JCodeModel buildToSingleStream () throws IOException
+  {
+    m_aModel.build (new SingleStreamCodeWriter (new NullOutputStream ()));
+    return m_aModel;
+  }
+
+  @Benchmark
+  public JCodeModel buildToZip () throws IOException
+  {
+    m_aModel.build (new ZipCodeWriter (new NullOutputStream ()));
+    return m_aModel;
+  }
+}
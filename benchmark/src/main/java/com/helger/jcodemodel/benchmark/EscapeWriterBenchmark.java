@@ -0,0 +1,214 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.benchmark;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.jcodemodel.util.JavadocEscapeWriter;
+import com.helger.jcodemodel.util.NullWriter;
+import com.helger.jcodemodel.util.UnicodeEscapeWriter;
+
+/**
+ * Compares the bulk write path of {@link UnicodeEscapeWriter} and
+ * {@link JavadocEscapeWriter} with the previous char by char implementation.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class EscapeWriterBenchmark
+{
+  /**
+   * The char by char {@link UnicodeEscapeWriter} implementation used before
+   * the bulk write path was added.
+   */
+  private static final class CharByCharUnicodeEscapeWriter extends FilterWriter
+  {
+    CharByCharUnicodeEscapeWriter (final Writer next)
+    {
+      super (next);
+    }
+
+    @Override
+    public void write (final int ch) throws IOException
+    {
+      if (ch >= 128 || (ch < 0x20 && ch != '\t' && ch != '\r' && ch != '\n'))
+      {
+        out.write ("\\u");
+        final String s = Integer.toHexString (ch);
+        for (int i = s.length (); i < 4; i++)
+          out.write ('0');
+        out.write (s);
+      }
+      else
+        out.write (ch);
+    }
+
+    @Override
+    public void write (final char [] buf, final int off, final int len) throws IOException
+    {
+      for (int i = 0; i < len; i++)
+        write (buf[off + i]);
+    }
+
+    @Override
+    public void write (final String buf, final int off, final int len) throws IOException
+    {
+      write (buf.toCharArray (), off, len);
+    }
+  }
+
+  /**
+   * The char by char {@link JavadocEscapeWriter} implementation used before
+   * the bulk write path was added.
+   */
+  private static final class CharByCharJavadocEscapeWriter extends FilterWriter
+  {
+    CharByCharJavadocEscapeWriter (final Writer next)
+    {
+      super (next);
+    }
+
+    @Override
+    public void write (final int ch) throws IOException
+    {
+      if (ch == '<')
+        out.write ("&lt;");
+      else
+        if (ch == '&')
+          out.write ("&amp;");
+        else
+          out.write (ch);
+    }
+
+    @Override
+    public void write (final char [] buf, final int off, final int len) throws IOException
+    {
+      for (int i = 0; i < len; i++)
+        write (buf[off + i]);
+    }
+
+    @Override
+    public void write (final String buf, final int off, final int len) throws IOException
+    {
+      write (buf.toCharArray (), off, len);
+    }
+  }
+
+  /** Typical line of generated code */
+  private static final String CODE_LINE = "        final java.util.List<java.lang.String> aList = new java.util.ArrayList<java.lang.String>(m_nSize);\n";
+
+  /** Typical line of Javadoc */
+  private static final String JAVADOC_LINE = "     * Returns the value of the field &lt;b&gt;name&lt;/b&gt; of the class {@link Foo} & co.\n";
+
+  /**
+   * Share of lines that contain a character to be escaped.
+   */
+  @Param ({ "0", "10" })
+  public int m_nEscapePercentage;
+
+  private String m_sCode;
+  private String m_sJavadoc;
+
+  @Setup
+  public void setup ()
+  {
+    final StringBuilder aCode = new StringBuilder ();
+    final StringBuilder aJavadoc = new StringBuilder ();
+    for (int i = 0; i < 1000; i++)
+    {
+      final boolean bEscape = i % 100 < m_nEscapePercentage;
+      aCode.append (bEscape ? CODE_LINE.replace ("aList", "aList\u00e4") : CODE_LINE);
+      aJavadoc.append (bEscape ? JAVADOC_LINE : JAVADOC_LINE.replace ('&', '+').replace ('<', '('));
+    }
+    m_sCode = aCode.toString ();
+    m_sJavadoc = aJavadoc.toString ();
+  }
+
+  @Benchmark
+  public Writer unicodeEscapeBulk () throws IOException
+  {
+    final Writer w = new UnicodeEscapeWriter (NullWriter.getInstance ());
+    w.write (m_sCode);
+    return w;
+  }
+
+  @Benchmark
+  public Writer unicodeEscapeCharByChar () throws IOException
+  {
+    final Writer w = new CharByCharUnicodeEscapeWriter (NullWriter.getInstance ());
+    w.write (m_sCode);
+    return w;
+  }
+
+  @Benchmark
+  public Writer javadocEscapeBulk () throws IOException
+  {
+    final Writer w = new JavadocEscapeWriter (NullWriter.getInstance ());
+    w.write (m_sJavadoc);
+    return w;
+  }
+
+  @Benchmark
+  public Writer javadocEscapeCharByChar () throws IOException
+  {
+    final Writer w = new CharByCharJavadocEscapeWriter (NullWriter.getInstance ());
+    w.write (m_sJavadoc);
+    return w;
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.benchmark;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JClassAlreadyExistsException;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JVar;
+
+/**
+ * Creates synthetic code models of configurable size that are shared by all
+ * benchmarks.
+ */
+public final class SyntheticModel
+{
+  private SyntheticModel ()
+  {}
+
+  /**
+   * Create a code model with the given number of packages, classes per package
+   * and methods per class. Every class has fields, a constructor, a
+   * documented method per field pair with nested blocks, loops and generic
+   * types.
+   *
+   * @param nPackages
+   *        Number of packages
+   * @param nClassesPerPackage
+   *        Number of classes in each package
+   * @param nMethodsPerClass
+   *        Number of methods in each class
+   * @return The new code model. Never <code>null</code>.
+   */
+  @Nonnull
+  public static JCodeModel createModel (final int nPackages, final int nClassesPerPackage, final int nMethodsPerClass)
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final AbstractJClass aStringList = cm.ref (List.class).narrow (String.class);
+    final AbstractJClass aMap = cm.ref (Map.class).narrow (cm.ref (String.class), cm.ref (Integer.class));
+    try
+    {
+      for (int p = 0; p < nPackages; ++p)
+      {
+        final String sPackage = "org.example.bench.p" + p;
+        cm._package (sPackage).javadoc ().add ("Generated package " + p);
+        for (int c = 0; c < nClassesPerPackage; ++c)
+        {
+          final JDefinedClass aClass = cm._class (sPackage + ".Generated" + c);
+          aClass._implements (Serializable.class);
+          aClass.javadoc ().add ("Generated class " + c + " in package " + sPackage);
+
+          final JFieldVar aNames = aClass.field (JMod.PRIVATE | JMod.FINAL, aStringList, "m_aNames");
+          final JFieldVar aCounts = aClass.field (JMod.PRIVATE | JMod.FINAL, aMap, "m_aCounts");
+          final JFieldVar aSize = aClass.field (JMod.PRIVATE, cm.INT, "m_nSize");
+
+          final JMethod aCtor = aClass.constructor (JMod.PUBLIC);
+          final JVar aParam = aCtor.param (JMod.FINAL, aStringList, "aNames");
+          aCtor.body ().assign (JExpr.refthis (aNames), aParam);
+          aCtor.body ().assign (JExpr.refthis (aCounts), JExpr._new (cm.ref (java.util.HashMap.class).narrow (cm.ref (String.class),
+                                                                                                               cm.ref (Integer.class))));
+
+          for (int m = 0; m < nMethodsPerClass; ++m)
+          {
+            final JMethod aMethod = aClass.method (JMod.PUBLIC, cm.INT, "compute" + m);
+            aMethod.javadoc ().add ("Computes value " + m + " & more <b>now</b>");
+            final JVar aLimit = aMethod.param (JMod.FINAL, cm.INT, "nLimit");
+            final JBlock aBody = aMethod.body ();
+            final JVar aResult = aBody.decl (cm.INT, "ret", JExpr.lit (m));
+            final JForLoop aLoop = aBody._for ();
+            final JVar aIndex = aLoop.init (cm.INT, "i", JExpr.lit (0));
+            aLoop.test (aIndex.lt (aLimit).cand (aIndex.lt (JExpr.invoke (aNames, "size"))));
+            aLoop.update (aIndex.incr ());
+            final JVar aName = aLoop.body ().decl (cm.ref (String.class), "sName", aNames.invoke ("get").arg (aIndex));
+            final JConditional aIf = aLoop.body ()._if (aCounts.invoke ("containsKey").arg (aName));
+            aIf._then ().assignPlus (aResult, aCounts.invoke ("get").arg (aName));
+            aIf._else ().invoke (aCounts, "put").arg (aName).arg (aIndex.mul (JExpr.lit (m + 1)));
+            aBody.assign (aSize, aSize.plus (aResult));
+            aBody._return (aResult.plus (aSize).minus (JExpr.lit (c)));
+          }
+        }
+      }
+    }
+    catch (final JClassAlreadyExistsException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+    return cm;
+  }
+
+  /**
+   * Fill the passed block with a nested structure of conditionals of the given
+   * depth. Each nesting level repeats the same field and method accesses, so
+   * that there are many common sub expressions.
+   *
+   * @param cm
+   *        The code model to use
+   * @param aBlock
+   *        The block to fill
+   * @param aArray
+   *        An int array variable accessible from the block
+   * @param aIndex
+   *        An int variable accessible from the block
+   * @param nDepth
+   *        Nesting depth
+   * @param nStatementsPerBlock
+   *        Number of statements on each nesting level
+   */
+  public static void fillDeepBlock (@Nonnull final JCodeModel cm,
+                                    @Nonnull final JBlock aBlock,
+                                    @Nonnull final JVar aArray,
+                                    @Nonnull final JVar aIndex,
+                                    final int nDepth,
+                                    final int nStatementsPerBlock)
+  {
+    final AbstractJClass aSystem = cm.ref (System.class);
+    JBlock aCur = aBlock;
+    for (int d = 0; d < nDepth; ++d)
+    {
+      for (int s = 0; s < nStatementsPerBlock; ++s)
+      {
+        final IJExpression aLength = JExpr.ref (aArray, "length").hintType (cm.INT);
+        final IJExpression aElement = aArray.component (aIndex).hintType (cm.INT);
+        aCur.invoke (aSystem.staticRef ("out"), "println").arg (aLength.plus (aElement).plus (JExpr.lit (s))).hintType (cm.VOID);
+      }
+      aCur = aCur._if (JExpr.ref (aArray, "length").hintType (cm.INT).gt (JExpr.lit (d)))._then ();
+    }
+  }
+
+  /**
+   * Fill a block with many sequential statements, like the body of a
+   * generated mapper. Each statement reads two array elements and invalidates
+   * another one.
+   *
+   * @param cm
+   *        The code model to use
+   * @param aBlock
+   *        The block to fill
+   * @param aArray
+   *        An int array variable accessible from the block
+   * @param nStatements
+   *        Number of statements
+   */
+  public static void fillFlatBlock (@Nonnull final JCodeModel cm,
+                                    @Nonnull final JBlock aBlock,
+                                    @Nonnull final JVar aArray,
+                                    final int nStatements)
+  {
+    final JVar [] aVars = new JVar [100];
+    for (int i = 0; i < aVars.length; ++i)
+      aVars[i] = aBlock.decl (cm.INT, "v" + i, JExpr.lit (i));
+    for (int i = 0; i < nStatements; ++i)
+    {
+      final JVar aRead = aVars[(i + 1) % aVars.length];
+      final IJExpression aLength = JExpr.ref (aArray, "length").hintType (cm.INT);
+      aBlock.assign (aVars[i % aVars.length], aArray.component (aRead).plus (aArray.component (aRead)).plus (aLength));
+    }
+  }
+}
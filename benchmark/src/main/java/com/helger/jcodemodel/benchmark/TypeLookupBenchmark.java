@@ -0,0 +1,127 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+
+/**
+ * Benchmarks {@link JCodeModel#ref(Class)}, {@link JCodeModel#ref(String)},
+ * {@link JCodeModel#_getClass(String)} and
+ * {@link AbstractJClass#narrow(AbstractJClass)} on a model that already
+ * contains the referenced classes.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class TypeLookupBenchmark
+{
+  private JCodeModel m_aModel;
+  private AbstractJClass m_aList;
+  private AbstractJClass m_aMap;
+  private AbstractJClass m_aString;
+  private AbstractJClass m_aInteger;
+
+  @Setup
+  public void setup ()
+  {
+    m_aModel = SyntheticModel.createModel (2, 10, 2);
+    m_aList = m_aModel.ref (List.class);
+    m_aMap = m_aModel.ref (Map.class);
+    m_aString = m_aModel.ref (String.class);
+    m_aInteger = m_aModel.ref (Integer.class);
+  }
+
+  @Benchmark
+  public AbstractJClass refClass ()
+  {
+    return m_aModel.ref (Map.class);
+  }
+
+  @Benchmark
+  public JDefinedClass getDefinedClassByName ()
+  {
+    return m_aModel._getClass ("org.example.bench.p1.Generated5");
+  }
+
+  @Benchmark
+  public AbstractJClass refJdkClassByName ()
+  {
+    return m_aModel.ref ("java.util.concurrent.ConcurrentHashMap");
+  }
+
+  @Benchmark
+  public AbstractJClass refUnknownClassByName ()
+  {
+    return m_aModel.ref ("org.example.unknown.DoesNotExist");
+  }
+
+  @Benchmark
+  public AbstractJClass narrowSingle ()
+  {
+    return m_aList.narrow (m_aString);
+  }
+
+  @Benchmark
+  public AbstractJClass narrowNested ()
+  {
+    return m_aMap.narrow (m_aString, m_aList.narrow (m_aInteger));
+  }
+}
@@ -76,10 +76,17 @@ public abstract class AbstractCodeWriter implements Closeable
     // we can't have Encoder in method signature
     private final CharsetEncoder _encoder;
 
-    private JavaUnicodeEscapeWriter (@Nonnull final OutputStreamWriter bw)
+    /**
+     * true if the encoding is one of the Unicode encodings, that can encode
+     * every character except for single surrogates.
+     */
+    private final boolean _unicode;
+
+    private JavaUnicodeEscapeWriter (@Nonnull final Writer bw, @Nonnull final Charset encoding)
     {
       super (bw);
-      _encoder = Charset.forName (bw.getEncoding ()).newEncoder ();
+      _encoder = encoding.newEncoder ();
+      _unicode = _encoder.charset ().name ().startsWith ("UTF-");
     }
 
     @Override
@@ -93,6 +100,10 @@ public abstract class AbstractCodeWriter implements Closeable
       if (ch < 0x80)
         return false;
 
+      // avoid the expensive encoder check for Unicode encodings
+      if (_unicode)
+        return ch >= 0xD800 && ch <= 0xDFFF;
+
       return !_encoder.canEncode ((char) ch);
     }
   }
@@ -154,7 +165,7 @@ public abstract class AbstractCodeWriter implements Closeable
     // create writer
     try
     {
-      return new JavaUnicodeEscapeWriter (bw);
+      return createUnicodeEscapeWriter (bw, Charset.forName (bw.getEncoding ()));
     }
     catch (final Throwable t)
     {
@@ -162,6 +173,22 @@ public abstract class AbstractCodeWriter implements Closeable
     }
   }
 
+  /**
+   * Create a writer that escapes all characters that can't be represented in
+   * the passed encoding, as well as control characters.
+   *
+   * @param w
+   *        The writer that receives the escaped characters.
+   * @param encoding
+   *        The encoding the characters are finally stored in.
+   * @return The escaping writer. Never <code>null</code>.
+   */
+  @Nonnull
+  protected static Writer createUnicodeEscapeWriter (@Nonnull final Writer w, @Nonnull final Charset encoding)
+  {
+    return new JavaUnicodeEscapeWriter (w, encoding);
+  }
+
   /**
    * Called by CodeModel at the end of the process.
    */
@@ -202,6 +202,9 @@ public abstract class AbstractJClass extends AbstractJType
    * getBaseClass( ArrayList&lt;? extends BigInteger&gt;, List ) = List&lt;? extends BigInteger&gt;
    * </code>
    * </pre>
+   * <p>
+   * The results are memoized per {@link JCodeModel} and are discarded whenever
+   * the super class or the interfaces of a class of the model change.
    *
    * @param baseType
    *        The class whose parameterization we are interested in.
@@ -210,6 +213,15 @@ public abstract class AbstractJClass extends AbstractJType
    */
   @Nullable
   public final AbstractJClass getBaseClass (@Nonnull final AbstractJClass baseType)
+  {
+    return owner ()._getBaseClass (this, baseType);
+  }
+
+  /**
+   * The uncached implementation of {@link #getBaseClass(AbstractJClass)}.
+   */
+  @Nullable
+  final AbstractJClass _findBaseClass (@Nonnull final AbstractJClass baseType)
   {
     if (erasure ().equals (baseType))
       return this;
@@ -239,6 +251,37 @@ public abstract class AbstractJClass extends AbstractJType
     return getBaseClass (owner ().ref (baseType));
   }
 
+  /**
+   * Checks if this class is the passed class, or extends or implements it
+   * directly or indirectly. Type arguments are ignored, so
+   * <code>ArrayList&lt;String&gt;</code> is assignable to
+   * <code>List&lt;Integer&gt;</code>.
+   *
+   * @param baseType
+   *        The class to check against.
+   * @return <code>true</code> if {@link #getBaseClass(AbstractJClass)} finds
+   *         the erasure of {@code baseType} in this class.
+   */
+  public final boolean isAssignableTo (@Nonnull final AbstractJClass baseType)
+  {
+    return getBaseClass (baseType.erasure ()) != null;
+  }
+
+  /**
+   * Checks if this class is the passed class, or extends or implements it
+   * directly or indirectly.
+   *
+   * @param baseType
+   *        The class to check against.
+   * @return <code>true</code> if this class is assignable to the class
+   *         referenced by {@code baseType}.
+   * @see #isAssignableTo(AbstractJClass)
+   */
+  public final boolean isAssignableTo (@Nonnull final Class <?> baseType)
+  {
+    return isAssignableTo (owner ().ref (baseType));
+  }
+
   @Override
   @Nonnull
   public JArrayClass array ()
@@ -280,7 +323,7 @@ public abstract class AbstractJClass extends AbstractJType
   @Nonnull
   public JNarrowedClass narrow (final AbstractJClass clazz)
   {
-    return new JNarrowedClass (this, clazz);
+    return JNarrowedClass._create (this, Collections.singletonList (clazz));
   }
 
   @Nonnull
@@ -294,7 +337,7 @@ public abstract class AbstractJClass extends AbstractJType
   {
     if (clazz.length == 0)
       return this;
-    return new JNarrowedClass (this, Arrays.asList (clazz.clone ()));
+    return JNarrowedClass._create (this, Arrays.asList (clazz.clone ()));
   }
 
   @Nonnull
@@ -302,7 +345,7 @@ public abstract class AbstractJClass extends AbstractJType
   {
     if (clazz.isEmpty ())
       return this;
-    return new JNarrowedClass (this, new ArrayList <AbstractJClass> (clazz));
+    return JNarrowedClass._create (this, new ArrayList <AbstractJClass> (clazz));
   }
 
   /**
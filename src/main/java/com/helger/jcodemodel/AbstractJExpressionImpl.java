@@ -40,6 +40,9 @@
  */
 package com.helger.jcodemodel;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import javax.annotation.Nonnull;
 
 import com.helger.jcodemodel.optimize.ExpressionAccessor;
@@ -58,6 +61,61 @@ public abstract class AbstractJExpressionImpl implements IJExpression
     return expression.forAllSubExpressions (callback);
   }
 
+  /**
+   * The hash codes calculated by a thread between
+   * {@link #beginHashCodeCaching()} and {@link #endHashCodeCaching()}.
+   */
+  private static final class HashCodeCache
+  {
+    private int m_nDepth;
+    private Map <AbstractJExpressionImpl, Integer> m_aHashCodes = new IdentityHashMap <AbstractJExpressionImpl, Integer> ();
+  }
+
+  private static final ThreadLocal <HashCodeCache> s_aHashCodeCache = new ThreadLocal <HashCodeCache> ();
+
+  /**
+   * Cache the hash codes of expressions calculated by the current thread until
+   * {@link #endHashCodeCaching()} is called, so that the hash codes of large
+   * expression trees are not recalculated recursively over and over again.
+   * Calls may be nested. The expressions must not be modified by other threads
+   * in the meantime.
+   */
+  public static void beginHashCodeCaching ()
+  {
+    HashCodeCache aCache = s_aHashCodeCache.get ();
+    if (aCache == null)
+    {
+      aCache = new HashCodeCache ();
+      s_aHashCodeCache.set (aCache);
+    }
+    aCache.m_nDepth++;
+  }
+
+  /**
+   * Stop caching the hash codes calculated by the current thread. Must be
+   * called once for every call of {@link #beginHashCodeCaching()}.
+   */
+  public static void endHashCodeCaching ()
+  {
+    final HashCodeCache aCache = s_aHashCodeCache.get ();
+    if (aCache == null)
+      throw new IllegalStateException ("Hash code caching was not started");
+    if (--aCache.m_nDepth == 0)
+      s_aHashCodeCache.remove ();
+  }
+
+  /**
+   * Must be called after an expression (or anything its hash code depends on)
+   * was modified. A modified sub expression cannot notify the expressions
+   * containing it, so all hash codes cached by the current thread are dropped.
+   */
+  static void onExpressionModified ()
+  {
+    final HashCodeCache aCache = s_aHashCodeCache.get ();
+    if (aCache != null && !aCache.m_aHashCodes.isEmpty ())
+      aCache.m_aHashCodes = new IdentityHashMap <AbstractJExpressionImpl, Integer> ();
+  }
+
   private AbstractJType _hintType;
   private String _hintName;
 
@@ -488,6 +546,38 @@ public abstract class AbstractJExpressionImpl implements IJExpression
     return null;
   }
 
+  /**
+   * Get the hash code calculated by {@link #calcHashCode()}. Between
+   * {@link #beginHashCodeCaching()} and {@link #endHashCodeCaching()} it is
+   * only recalculated if an expression was modified in between.
+   *
+   * @return The hash code of this expression
+   */
+  final int getCachedHashCode ()
+  {
+    final HashCodeCache aCache = s_aHashCodeCache.get ();
+    if (aCache == null)
+      return calcHashCode ();
+    Integer aHashCode = aCache.m_aHashCodes.get (this);
+    if (aHashCode == null)
+    {
+      aHashCode = Integer.valueOf (calcHashCode ());
+      aCache.m_aHashCodes.put (this, aHashCode);
+    }
+    return aHashCode.intValue ();
+  }
+
+  /**
+   * Calculate the hash code for {@link #getCachedHashCode()}. Must be
+   * overridden by all subclasses using {@link #getCachedHashCode()}.
+   *
+   * @return The hash code of this expression
+   */
+  int calcHashCode ()
+  {
+    return super.hashCode ();
+  }
+
   // TODO remove this default and implement for all subclasses!
   public boolean forAllSubExpressions (final ExpressionCallback callback)
   {
@@ -0,0 +1,473 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * An {@link IJCodeModelBuildListener} that aggregates the metrics of all
+ * builds into histograms with power of two buckets, keeps the slowest classes
+ * and sums up the metrics per package. All methods are thread-safe, so one
+ * instance can be shared by multiple code models.
+ */
+public class HistogramBuildListener implements IJCodeModelBuildListener
+{
+  /**
+   * A histogram of non-negative values. Bucket 0 counts the value 0 and bucket
+   * <code>i &gt; 0</code> counts the values from <code>2^(i-1)</code> to
+   * <code>2^i - 1</code>.
+   */
+  public static final class Histogram
+  {
+    public static final int BUCKET_COUNT = 64;
+
+    private final long [] m_aBuckets = new long [BUCKET_COUNT];
+    private long m_nCount;
+    private long m_nSum;
+    private long m_nMin = Long.MAX_VALUE;
+    private long m_nMax;
+
+    Histogram ()
+    {}
+
+    Histogram (@Nonnull final Histogram aOther)
+    {
+      System.arraycopy (aOther.m_aBuckets, 0, m_aBuckets, 0, BUCKET_COUNT);
+      m_nCount = aOther.m_nCount;
+      m_nSum = aOther.m_nSum;
+      m_nMin = aOther.m_nMin;
+      m_nMax = aOther.m_nMax;
+    }
+
+    void add (final long nValue)
+    {
+      final long n = Math.max (nValue, 0);
+      m_aBuckets[BUCKET_COUNT - Long.numberOfLeadingZeros (n)]++;
+      m_nCount++;
+      m_nSum += n;
+      m_nMin = Math.min (m_nMin, n);
+      m_nMax = Math.max (m_nMax, n);
+    }
+
+    @Nonnegative
+    public long getCount ()
+    {
+      return m_nCount;
+    }
+
+    @Nonnegative
+    public long getSum ()
+    {
+      return m_nSum;
+    }
+
+    /**
+     * @return The smallest value or 0 if the histogram is empty.
+     */
+    @Nonnegative
+    public long getMin ()
+    {
+      return m_nCount == 0 ? 0 : m_nMin;
+    }
+
+    @Nonnegative
+    public long getMax ()
+    {
+      return m_nMax;
+    }
+
+    @Nonnegative
+    public long getMean ()
+    {
+      return m_nCount == 0 ? 0 : m_nSum / m_nCount;
+    }
+
+    /**
+     * @param nBucket
+     *        The bucket index from 0 to {@link #BUCKET_COUNT} - 1.
+     * @return The number of values in the bucket.
+     */
+    @Nonnegative
+    public long getBucketCount (@Nonnegative final int nBucket)
+    {
+      return m_aBuckets[nBucket];
+    }
+
+    /**
+     * @param nBucket
+     *        The bucket index from 0 to {@link #BUCKET_COUNT} - 1.
+     * @return The largest value that is counted in the bucket.
+     */
+    @Nonnegative
+    public static long getBucketUpperBound (@Nonnegative final int nBucket)
+    {
+      if (nBucket == BUCKET_COUNT - 1)
+        return Long.MAX_VALUE;
+      return (1L << nBucket) - 1;
+    }
+
+    /**
+     * Get an upper bound for a percentile.
+     *
+     * @param dPercentile
+     *        The percentile between 0 and 100.
+     * @return The upper bound of the bucket that contains the percentile, but
+     *         at most the largest value. 0 if the histogram is empty.
+     */
+    @Nonnegative
+    public long getPercentile (final double dPercentile)
+    {
+      if (dPercentile < 0 || dPercentile > 100)
+        throw new IllegalArgumentException ("Invalid percentile " + dPercentile);
+      final long nRank = (long) Math.ceil (m_nCount * dPercentile / 100);
+      long nSeen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++)
+      {
+        nSeen += m_aBuckets[i];
+        if (nSeen >= nRank && nSeen > 0)
+          return Math.min (getBucketUpperBound (i), m_nMax);
+      }
+      return m_nMax;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return "count=" +
+             m_nCount +
+             " min=" +
+             getMin () +
+             " mean=" +
+             getMean () +
+             " p50<=" +
+             getPercentile (50) +
+             " p99<=" +
+             getPercentile (99) +
+             " max=" +
+             m_nMax;
+    }
+  }
+
+  /**
+   * The total time spent on a single class.
+   */
+  public static final class ClassTiming
+  {
+    private final String m_sClassName;
+    private final long m_nNanos;
+
+    ClassTiming (@Nonnull final String sClassName, final long nNanos)
+    {
+      m_sClassName = sClassName;
+      m_nNanos = nNanos;
+    }
+
+    @Nonnull
+    public String getClassName ()
+    {
+      return m_sClassName;
+    }
+
+    @Nonnegative
+    public long getNanos ()
+    {
+      return m_nNanos;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return m_sClassName + "=" + m_nNanos + "ns";
+    }
+  }
+
+  /**
+   * The sums of all builds of a package.
+   */
+  public static final class PackageTotals
+  {
+    private int m_nClasses;
+    private long m_nNanos;
+    private long m_nChars;
+
+    PackageTotals ()
+    {}
+
+    PackageTotals (@Nonnull final PackageTotals aOther)
+    {
+      m_nClasses = aOther.m_nClasses;
+      m_nNanos = aOther.m_nNanos;
+      m_nChars = aOther.m_nChars;
+    }
+
+    @Nonnegative
+    public int getClasses ()
+    {
+      return m_nClasses;
+    }
+
+    @Nonnegative
+    public long getNanos ()
+    {
+      return m_nNanos;
+    }
+
+    @Nonnegative
+    public long getChars ()
+    {
+      return m_nChars;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return "classes=" + m_nClasses + " nanos=" + m_nNanos + " chars=" + m_nChars;
+    }
+  }
+
+  private static final Comparator <ClassTiming> FASTEST_FIRST = new Comparator <ClassTiming> ()
+  {
+    public int compare (final ClassTiming aTiming1, final ClassTiming aTiming2)
+    {
+      return aTiming1.m_nNanos < aTiming2.m_nNanos ? -1 : aTiming1.m_nNanos == aTiming2.m_nNanos ? 0 : 1;
+    }
+  };
+
+  private final int m_nMaxSlowestClasses;
+  private final Histogram m_aCollectNanos = new Histogram ();
+  private final Histogram m_aPrintNanos = new Histogram ();
+  private final Histogram m_aWriteNanos = new Histogram ();
+  private final Histogram m_aClassNanos = new Histogram ();
+  private final Histogram m_aClassChars = new Histogram ();
+  private final Histogram m_aClassImports = new Histogram ();
+  private final Histogram m_aBuildNanos = new Histogram ();
+  private final PriorityQueue <ClassTiming> m_aSlowestClasses;
+  private final Map <String, PackageTotals> m_aPackageTotals = new LinkedHashMap <String, PackageTotals> ();
+
+  /**
+   * Creates a listener that keeps the 10 slowest classes.
+   */
+  public HistogramBuildListener ()
+  {
+    this (10);
+  }
+
+  /**
+   * @param nMaxSlowestClasses
+   *        The number of slowest classes to keep. May be 0.
+   */
+  public HistogramBuildListener (@Nonnegative final int nMaxSlowestClasses)
+  {
+    if (nMaxSlowestClasses < 0)
+      throw new IllegalArgumentException ("Invalid number of classes " + nMaxSlowestClasses);
+    m_nMaxSlowestClasses = nMaxSlowestClasses;
+    m_aSlowestClasses = new PriorityQueue <ClassTiming> (nMaxSlowestClasses + 1, FASTEST_FIRST);
+  }
+
+  public void onBuildStarted (@Nonnull final JCodeModel aCodeModel)
+  {}
+
+  public synchronized void onClassBuilt (@Nonnull final JDefinedClass aClass,
+                                         final long nCollectNanos,
+                                         final long nPrintNanos,
+                                         final long nWriteNanos,
+                                         final long nChars,
+                                         final int nImports)
+  {
+    final long nNanos = nCollectNanos + nPrintNanos + nWriteNanos;
+    m_aCollectNanos.add (nCollectNanos);
+    m_aPrintNanos.add (nPrintNanos);
+    m_aWriteNanos.add (nWriteNanos);
+    m_aClassNanos.add (nNanos);
+    m_aClassChars.add (nChars);
+    m_aClassImports.add (nImports);
+
+    if (m_nMaxSlowestClasses > 0 &&
+        (m_aSlowestClasses.size () < m_nMaxSlowestClasses || m_aSlowestClasses.peek ().m_nNanos < nNanos))
+    {
+      m_aSlowestClasses.add (new ClassTiming (aClass.fullName (), nNanos));
+      if (m_aSlowestClasses.size () > m_nMaxSlowestClasses)
+        m_aSlowestClasses.poll ();
+    }
+  }
+
+  public synchronized void onPackageBuilt (@Nonnull final JPackage aPackage,
+                                           final int nClasses,
+                                           final long nNanos,
+                                           final long nChars)
+  {
+    PackageTotals aTotals = m_aPackageTotals.get (aPackage.name ());
+    if (aTotals == null)
+    {
+      aTotals = new PackageTotals ();
+      m_aPackageTotals.put (aPackage.name (), aTotals);
+    }
+    aTotals.m_nClasses += nClasses;
+    aTotals.m_nNanos += nNanos;
+    aTotals.m_nChars += nChars;
+  }
+
+  public synchronized void onBuildFinished (@Nonnull final JCodeModel aCodeModel, final long nNanos)
+  {
+    m_aBuildNanos.add (nNanos);
+  }
+
+  /**
+   * @return A copy of the time spent collecting the imports per class.
+   */
+  @Nonnull
+  public synchronized Histogram getCollectNanos ()
+  {
+    return new Histogram (m_aCollectNanos);
+  }
+
+  /**
+   * @return A copy of the time spent printing per class.
+   */
+  @Nonnull
+  public synchronized Histogram getPrintNanos ()
+  {
+    return new Histogram (m_aPrintNanos);
+  }
+
+  /**
+   * @return A copy of the time spent in the code writer per class.
+   */
+  @Nonnull
+  public synchronized Histogram getWriteNanos ()
+  {
+    return new Histogram (m_aWriteNanos);
+  }
+
+  /**
+   * @return A copy of the total time per class.
+   */
+  @Nonnull
+  public synchronized Histogram getClassNanos ()
+  {
+    return new Histogram (m_aClassNanos);
+  }
+
+  /**
+   * @return A copy of the number of characters per class.
+   */
+  @Nonnull
+  public synchronized Histogram getClassChars ()
+  {
+    return new Histogram (m_aClassChars);
+  }
+
+  /**
+   * @return A copy of the number of import statements per class.
+   */
+  @Nonnull
+  public synchronized Histogram getClassImports ()
+  {
+    return new Histogram (m_aClassImports);
+  }
+
+  /**
+   * @return A copy of the wall clock time per build.
+   */
+  @Nonnull
+  public synchronized Histogram getBuildNanos ()
+  {
+    return new Histogram (m_aBuildNanos);
+  }
+
+  /**
+   * @return The slowest classes of all builds, the slowest first. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public synchronized List <ClassTiming> getSlowestClasses ()
+  {
+    final List <ClassTiming> ret = new ArrayList <ClassTiming> (m_aSlowestClasses);
+    Collections.sort (ret, Collections.reverseOrder (FASTEST_FIRST));
+    return ret;
+  }
+
+  /**
+   * @return A copy of the totals per package name, in the order in which the
+   *         packages were built first. Never <code>null</code>.
+   */
+  @Nonnull
+  public synchronized Map <String, PackageTotals> getPackageTotals ()
+  {
+    final Map <String, PackageTotals> ret = new LinkedHashMap <String, PackageTotals> ();
+    for (final Map.Entry <String, PackageTotals> aEntry : m_aPackageTotals.entrySet ())
+      ret.put (aEntry.getKey (), new PackageTotals (aEntry.getValue ()));
+    return ret;
+  }
+
+  /**
+   * Print a human readable summary of all metrics.
+   *
+   * @param aPS
+   *        The stream to print to.
+   */
+  public synchronized void dump (@Nonnull final PrintStream aPS)
+  {
+    aPS.println ("builds [ns]:   " + m_aBuildNanos);
+    aPS.println ("collect [ns]:  " + m_aCollectNanos);
+    aPS.println ("print [ns]:    " + m_aPrintNanos);
+    aPS.println ("write [ns]:    " + m_aWriteNanos);
+    aPS.println ("class [ns]:    " + m_aClassNanos);
+    aPS.println ("class [chars]: " + m_aClassChars);
+    aPS.println ("imports:       " + m_aClassImports);
+    aPS.println ("slowest classes:");
+    for (final ClassTiming aTiming : getSlowestClasses ())
+      aPS.println ("  " + aTiming);
+    aPS.println ("packages:");
+    for (final Map.Entry <String, PackageTotals> aEntry : m_aPackageTotals.entrySet ())
+      aPS.println ("  " + (aEntry.getKey ().length () == 0 ? "<unnamed>" : aEntry.getKey ()) + ": " + aEntry.getValue ());
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Receives timings and sizes while a {@link JCodeModel} is built. All methods
+ * are called from the thread that writes to the code writers, so an
+ * implementation used for a single build at a time does not need to be
+ * thread-safe.
+ * <p>
+ * All times are in nanoseconds. The number of characters is counted before
+ * the encoding of the code writer is applied.
+ *
+ * @see JCodeModel#setBuildListener(IJCodeModelBuildListener)
+ * @see HistogramBuildListener
+ */
+public interface IJCodeModelBuildListener
+{
+  /**
+   * Called before the first file is written.
+   *
+   * @param aCodeModel
+   *        The code model that is built.
+   */
+  void onBuildStarted (@Nonnull JCodeModel aCodeModel);
+
+  /**
+   * Called after a top-level class was written.
+   *
+   * @param aClass
+   *        The class that was written.
+   * @param nCollectNanos
+   *        The time spent traversing the class to collect the imports. In
+   *        single pass mode this includes recording the output.
+   * @param nPrintNanos
+   *        The time spent printing the imports and the class.
+   * @param nWriteNanos
+   *        The time spent in the code writer, including closing the file.
+   * @param nChars
+   *        The number of characters written.
+   * @param nImports
+   *        The number of import statements.
+   */
+  void onClassBuilt (@Nonnull JDefinedClass aClass,
+                     @Nonnegative long nCollectNanos,
+                     @Nonnegative long nPrintNanos,
+                     @Nonnegative long nWriteNanos,
+                     @Nonnegative long nChars,
+                     @Nonnegative int nImports);
+
+  /**
+   * Called after all classes, the package-info and the resources of a package
+   * were written.
+   *
+   * @param aPackage
+   *        The package that was written.
+   * @param nClasses
+   *        The number of classes written.
+   * @param nNanos
+   *        The sum of collect, print and write times of all classes.
+   * @param nChars
+   *        The number of characters written for all classes.
+   */
+  void onPackageBuilt (@Nonnull JPackage aPackage,
+                       @Nonnegative int nClasses,
+                       @Nonnegative long nNanos,
+                       @Nonnegative long nChars);
+
+  /**
+   * Called after the whole code model was written and the code writers were
+   * closed.
+   *
+   * @param aCodeModel
+   *        The code model that was built.
+   * @param nNanos
+   *        The wall clock time of the whole build.
+   */
+  void onBuildFinished (@Nonnull JCodeModel aCodeModel, @Nonnegative long nNanos);
+}
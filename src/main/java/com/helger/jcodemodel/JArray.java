@@ -92,6 +92,7 @@ public class JArray extends AbstractJExpressionImpl
     if (_exprs == null)
       _exprs = new ArrayList <IJExpression> ();
     _exprs.add (e);
+    onExpressionModified ();
     return this;
   }
 
@@ -196,6 +197,7 @@ public class JArray extends AbstractJExpressionImpl
         public void set (final IJExpression newExpression)
         {
           _size = newExpression;
+          onExpressionModified ();
         }
 
         public IJExpression get ()
@@ -214,6 +216,7 @@ public class JArray extends AbstractJExpressionImpl
         public void set (final IJExpression newExpression)
         {
           _exprs.set (finalI, newExpression);
+          onExpressionModified ();
         }
 
         public IJExpression get ()
@@ -126,7 +126,12 @@ public class JArrayCompRef extends AbstractJExpressionAssignmentTargetImpl
   @Override
   String derivedName ()
   {
-    return _array.expressionName () + "ElementAt" + upper (_index.expressionName ());
+    final String arrayName = _array.expressionName ();
+    final String indexName = _index.expressionName ();
+    // e.g. literal indices have no name
+    if (arrayName == null || indexName == null)
+      return null;
+    return arrayName + "ElementAt" + upper (indexName);
   }
 
   @Override
@@ -137,6 +142,7 @@ public class JArrayCompRef extends AbstractJExpressionAssignmentTargetImpl
       public void set (final IJExpression newExpression)
       {
         _array = newExpression;
+        onExpressionModified ();
       }
 
       public IJExpression get ()
@@ -150,6 +156,7 @@ public class JArrayCompRef extends AbstractJExpressionAssignmentTargetImpl
       public void set (final IJExpression newExpression)
       {
         _index = newExpression;
+        onExpressionModified ();
       }
 
       public IJExpression get ()
@@ -167,6 +167,7 @@ public class JAssignment extends AbstractJExpressionImpl implements IJExpression
       public void set (final IJExpression newExpression)
       {
         _rhs = newExpression;
+        onExpressionModified ();
       }
 
       public IJExpression get ()
@@ -42,7 +42,9 @@ package com.helger.jcodemodel;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -135,12 +137,32 @@ public class JBlock implements IJGenerable, IJStatement
 
   public void remove (final Object o)
   {
-    m_aContentList.remove (o);
+    final int index = m_aContentList.indexOf (o);
+    if (index >= 0)
+      remove (index);
   }
 
   public void remove (@Nonnegative final int index)
   {
     m_aContentList.remove (index);
+    // keep the insertion position in front of the same element
+    if (index < m_nPos)
+      m_nPos--;
+  }
+
+  /**
+   * Replace a statement or declaration of this block.
+   *
+   * @param index
+   *        The index of the element to replace.
+   * @param aStatementOrDeclaration
+   *        The new {@link IJStatement} or {@link IJDeclaration}.
+   */
+  public void replace (@Nonnegative final int index, @Nonnull final Object aStatementOrDeclaration)
+  {
+    if (aStatementOrDeclaration == null)
+      throw new NullPointerException ("statementOrDeclaration");
+    m_aContentList.set (index, aStatementOrDeclaration);
   }
 
   /**
@@ -292,6 +314,55 @@ public class JBlock implements IJGenerable, IJStatement
     return this;
   }
 
+  /**
+   * Insert variable declarations before several elements of this block in one
+   * pass, which takes time linear in the size of the block rather than in the
+   * size of the block times the number of inserted variables.
+   *
+   * @param vars
+   *        Maps existing elements of this block to the variables to insert
+   *        before them, in the order of insertion. Elements are looked up by
+   *        {@link Map#get(Object)}, so pass an
+   *        {@link java.util.IdentityHashMap} to distinguish equal statements.
+   * @return this
+   * @throws IllegalArgumentException
+   *         if a key is not an element of this block. The block is not
+   *         modified in that case.
+   */
+  @Nonnull
+  public JBlock insertBefore (@Nonnull final Map <Object, ? extends List <JVar>> vars)
+  {
+    if (vars.isEmpty ())
+      return this;
+    final List <Object> newContents = new ArrayList <Object> (m_aContentList.size () + vars.size ());
+    final Map <List <JVar>, Boolean> inserted = new IdentityHashMap <List <JVar>, Boolean> ();
+    int nNewPos = m_nPos;
+    for (int i = 0; i < m_aContentList.size (); i++)
+    {
+      final Object element = m_aContentList.get (i);
+      final List <JVar> before = vars.get (element);
+      if (before != null)
+      {
+        newContents.addAll (before);
+        inserted.put (before, Boolean.TRUE);
+        // keep the insertion position right before the same element
+        if (i <= m_nPos)
+          nNewPos += before.size ();
+      }
+      newContents.add (element);
+    }
+    if (inserted.size () < vars.size ())
+      for (final Map.Entry <Object, ? extends List <JVar>> entry : vars.entrySet ())
+        if (!inserted.containsKey (entry.getValue ()))
+          throw new IllegalArgumentException ("Not an element of this block: " + entry.getKey ());
+    m_aContentList.clear ();
+    m_aContentList.addAll (newContents);
+    m_nPos = nNewPos;
+    m_bBracesRequired = true;
+    m_bIndentRequired = true;
+    return this;
+  }
+
   /**
    * Creates an assignment statement and adds it to this block.
    *
@@ -45,11 +45,20 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -57,7 +66,6 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import com.helger.jcodemodel.util.NameUtilities;
-import com.helger.jcodemodel.util.SecureLoader;
 import com.helger.jcodemodel.writer.FileCodeWriter;
 import com.helger.jcodemodel.writer.ProgressCodeWriter;
 
@@ -90,6 +98,15 @@ import com.helger.jcodemodel.writer.ProgressCodeWriter;
  * <p>
  * Most of the time you'd want to populate new type definitions in a
  * {@link JCodeModel}. See {@link #_class(String, EClassType)}.
+ * <h2>Concurrent construction</h2>
+ * <p>
+ * Packages, top-level classes and class references may be created from
+ * multiple threads at the same time, so independent parts of a model can be
+ * populated in parallel. Creating the same class twice still throws a
+ * {@link JClassAlreadyExistsException} in exactly one of the threads. Each
+ * created {@link JDefinedClass} must only be modified by one thread at a time.
+ * The build methods write the packages and classes sorted by name, so the
+ * output does not depend on the order in which they were created.
  */
 public final class JCodeModel
 {
@@ -128,11 +145,51 @@ public final class JCodeModel
     primitiveToBox = Collections.unmodifiableMap (m2);
   }
 
+  /**
+   * The number of classes each formatting thread of
+   * {@link #build(AbstractCodeWriter, AbstractCodeWriter, int)} may format
+   * ahead of the writer.
+   */
+  public static final int PENDING_CLASSES_PER_THREAD = 4;
+
   /** The packages that this JCodeWriter contains. */
-  private final Map <String, JPackage> _packages = new HashMap <String, JPackage> ();
+  private final ConcurrentMap <String, JPackage> _packages = new ConcurrentHashMap <String, JPackage> ();
 
   /** All JReferencedClasses are pooled here. */
-  private final Map <Class <?>, JReferencedClass> _refClasses = new HashMap <Class <?>, JReferencedClass> ();
+  private final ConcurrentMap <Class <?>, JReferencedClass> _refClasses = new ConcurrentHashMap <Class <?>, JReferencedClass> ();
+
+  /**
+   * All JNarrowedClasses created by narrowing are pooled here, so that equal
+   * parameterizations share a single instance.
+   */
+  private final ConcurrentMap <JNarrowedClass, JNarrowedClass> _narrowedClasses = new ConcurrentHashMap <JNarrowedClass, JNarrowedClass> ();
+
+  /** All JDirectClasses are pooled here. */
+  private final ConcurrentMap <String, JDirectClass> _directClasses = new ConcurrentHashMap <String, JDirectClass> ();
+
+  /**
+   * The results of {@link #ref(String)}, including the classes that could not
+   * be resolved.
+   */
+  private final ConcurrentMap <String, AbstractJClass> _refClassesByName = new ConcurrentHashMap <String, AbstractJClass> ();
+
+  /**
+   * The memoized results of {@link AbstractJClass#getBaseClass(AbstractJClass)}.
+   * Only entries of the current {@link #_baseClassGeneration} are valid.
+   */
+  private final ConcurrentMap <BaseClassKey, BaseClassEntry> _baseClasses = new ConcurrentHashMap <BaseClassKey, BaseClassEntry> ();
+
+  /**
+   * Incremented whenever the super class or the interfaces of a class of this
+   * model change.
+   */
+  private final AtomicInteger _baseClassGeneration = new AtomicInteger ();
+
+  /** The listener notified by all build methods. May be null. */
+  private volatile IJCodeModelBuildListener _buildListener;
+
+  /** The strategy used by {@link #ref(String)}. */
+  private volatile IJClassResolver _classResolver = EClassResolver.REFLECTION;
 
   /** Obtains a reference to the special "null" type. */
   public final JNullType NULL = new JNullType (this);
@@ -196,7 +253,10 @@ public final class JCodeModel
     if (p == null)
     {
       p = new JPackage (name, this);
-      _packages.put (name, p);
+      // Another thread may have been faster
+      final JPackage aExisting = _packages.putIfAbsent (name, p);
+      if (aExisting != null)
+        p = aExisting;
     }
     return p;
   }
@@ -209,11 +269,24 @@ public final class JCodeModel
 
   /**
    * Returns an iterator that walks the packages defined using this code writer.
+   * The packages are sorted by name.
    */
   @Nonnull
   public Iterator <JPackage> packages ()
   {
-    return _packages.values ().iterator ();
+    return Arrays.asList (_getSortedPackages ()).iterator ();
+  }
+
+  /**
+   * @return A snapshot of all packages sorted by name, so that the output of
+   *         the build does not depend on the creation order.
+   */
+  @Nonnull
+  private JPackage [] _getSortedPackages ()
+  {
+    final JPackage [] ret = _packages.values ().toArray (new JPackage [_packages.size ()]);
+    Arrays.sort (ret);
+    return ret;
   }
 
   /**
@@ -278,7 +351,16 @@ public final class JCodeModel
   @Nonnull
   public AbstractJClass directClass (@Nonnull final String name)
   {
-    return new JDirectClass (this, name);
+    JDirectClass ret = _directClasses.get (name);
+    if (ret == null)
+    {
+      ret = new JDirectClass (this, name);
+      // Another thread may have been faster
+      final JDirectClass aExisting = _directClasses.putIfAbsent (name, ret);
+      if (aExisting != null)
+        ret = aExisting;
+    }
+    return ret;
   }
 
   /**
@@ -320,8 +402,7 @@ public final class JCodeModel
    */
   public boolean buildsErrorTypeRefs ()
   {
-    final JPackage [] pkgs = _packages.values ().toArray (new JPackage [_packages.size ()]);
-    // avoid concurrent modification exception
+    final JPackage [] pkgs = _getSortedPackages ();
     for (final JPackage pkg : pkgs)
     {
       if (pkg.buildsErrorTypeRefs ())
@@ -426,18 +507,210 @@ public final class JCodeModel
    */
   public void build (@Nonnull final AbstractCodeWriter source, @Nonnull final AbstractCodeWriter resource) throws IOException
   {
+    final long nStart = System.nanoTime ();
+    final JCodeModelBuildRecorder aRecorder = _onBuildStarted ();
+    try
+    {
+      final JPackage [] pkgs = _getSortedPackages ();
+      final JPackage.FormatterPool aFormatters = new JPackage.FormatterPool ();
+      for (final JPackage pkg : pkgs)
+        pkg.build (source, resource, aRecorder, aFormatters);
+    }
+    finally
+    {
+      source.close ();
+      resource.close ();
+    }
+    _onBuildFinished (nStart);
+  }
+
+  @Nullable
+  private JCodeModelBuildRecorder _onBuildStarted ()
+  {
+    final IJCodeModelBuildListener aListener = _buildListener;
+    if (aListener == null)
+      return null;
+    aListener.onBuildStarted (this);
+    return new JCodeModelBuildRecorder (aListener);
+  }
+
+  private void _onBuildFinished (final long nStartNanos)
+  {
+    final IJCodeModelBuildListener aListener = _buildListener;
+    if (aListener != null)
+      aListener.onBuildFinished (this, System.nanoTime () - nStartNanos);
+  }
+
+  /**
+   * Writes a finished top-level class right away, instead of waiting for
+   * {@link #build(AbstractCodeWriter, AbstractCodeWriter)}. Afterwards the
+   * method bodies and initializers of the class and its nested classes are
+   * released to save memory. The class can still be used as a type in other
+   * classes, but it cannot be modified anymore and it is skipped by all build
+   * methods. Use the same code writer for the final build, which writes all
+   * remaining classes and closes the code writer.
+   * <p>
+   * All methods of {@link JDefinedClass} that modify the class throw an
+   * {@link IllegalStateException} afterwards. Changes to the objects the class
+   * keeps, like its fields, the signatures of its methods or the modifiers
+   * returned by {@link JDefinedClass#mods()}, are not detected and are lost.
+   *
+   * @param aClass
+   *        The top-level class to write. May not be <code>null</code>.
+   * @param source
+   *        Code writer for the Java source file. It is not closed.
+   * @throws IOException
+   *         If writing fails
+   */
+  public void emit (@Nonnull final JDefinedClass aClass, @Nonnull final AbstractCodeWriter source) throws IOException
+  {
+    if (aClass.owner () != this)
+      throw new IllegalArgumentException ("The class " + aClass.fullName () + " is not part of this code model");
+    if (aClass.isAnonymous () || aClass.outer () != null)
+      throw new IllegalArgumentException ("The class " + aClass.fullName () + " is not a top-level class");
+    if (aClass.isEmitted ())
+      throw new IllegalStateException ("The class " + aClass.fullName () + " was already emitted");
+
+    final IJCodeModelBuildListener aListener = _buildListener;
+    aClass.getPackage ().emit (source, aClass, aListener == null ? null : new JCodeModelBuildRecorder (aListener));
+    aClass.markEmitted ();
+  }
+
+  /**
+   * Generates Java source code and formats the classes concurrently on the
+   * passed executor. The formatted classes are written to the code writers in
+   * the same order as in {@link #build(AbstractCodeWriter, AbstractCodeWriter)}
+   * from the calling thread only, so the output is identical and the code
+   * writers don't need to be thread-safe.
+   * <p>
+   * The model may not be modified while the build is running.
+   * <p>
+   * All classes are scheduled for formatting at once. Use
+   * {@link #build(AbstractCodeWriter, AbstractCodeWriter, Executor, int)} to
+   * limit the memory used by formatted classes that were not yet written.
+   *
+   * @param source
+   *        Code writer for the Java source files.
+   * @param resource
+   *        Code writer for the resource files.
+   * @param executor
+   *        The executor used to format the classes. It is not shut down by this
+   *        method.
+   */
+  public void build (@Nonnull final AbstractCodeWriter source,
+                     @Nonnull final AbstractCodeWriter resource,
+                     @Nonnull final Executor executor) throws IOException
+  {
+    build (source, resource, executor, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Generates Java source code as a pipeline: the classes are formatted into
+   * memory on the passed executor while the calling thread, which is the only
+   * one using the code writers, writes the finished classes in the same order
+   * as {@link #build(AbstractCodeWriter, AbstractCodeWriter)}. At most
+   * {@code nMaxPendingClasses} classes are formatted or waiting to be written
+   * at any time, so slow I/O throttles the formatting instead of filling the
+   * memory, while formatting and writing still overlap.
+   * <p>
+   * The model may not be modified while the build is running.
+   *
+   * @param source
+   *        Code writer for the Java source files.
+   * @param resource
+   *        Code writer for the resource files.
+   * @param executor
+   *        The executor used to format the classes. It is not shut down by this
+   *        method.
+   * @param nMaxPendingClasses
+   *        The maximum number of classes that are formatted ahead of the
+   *        writer. Must be &ge; 1.
+   */
+  public void build (@Nonnull final AbstractCodeWriter source,
+                     @Nonnull final AbstractCodeWriter resource,
+                     @Nonnull final Executor executor,
+                     @Nonnegative final int nMaxPendingClasses) throws IOException
+  {
+    if (nMaxPendingClasses < 1)
+      throw new IllegalArgumentException ("At least one pending class is required: " + nMaxPendingClasses);
+
+    final long nStart = System.nanoTime ();
+    final JCodeModelBuildRecorder aRecorder = _onBuildStarted ();
+    final LinkedList <Future <JPackage.RenderedClass>> aPending = new LinkedList <Future <JPackage.RenderedClass>> ();
     try
     {
-      final JPackage [] pkgs = _packages.values ().toArray (new JPackage [_packages.size ()]);
-      // avoid concurrent modification exception
+      final JPackage [] pkgs = _getSortedPackages ();
+      final List <List <JDefinedClass>> aClassesPerPackage = new ArrayList <List <JDefinedClass>> (pkgs.length);
+      final List <JDefinedClass> aAllClasses = new ArrayList <JDefinedClass> ();
       for (final JPackage pkg : pkgs)
-        pkg.build (source, resource);
+      {
+        final List <JDefinedClass> aClasses = pkg._getClassesToBuild ();
+        aClassesPerPackage.add (aClasses);
+        aAllClasses.addAll (aClasses);
+      }
+
+      final JPackage.FormatterPool aFormatters = new JPackage.FormatterPool ();
+      int nNextToSchedule = 0;
+      for (int i = 0; i < pkgs.length; i++)
+      {
+        for (final JDefinedClass c : aClassesPerPackage.get (i))
+        {
+          // keep the formatters busy
+          while (nNextToSchedule < aAllClasses.size () && aPending.size () < nMaxPendingClasses)
+            aPending.add (JPackage._scheduleClass (executor, aAllClasses.get (nNextToSchedule++), aFormatters));
+
+          pkgs[i]._writeRenderedClass (source, c, aPending.removeFirst (), aRecorder);
+        }
+        pkgs[i]._buildPackageInfoAndResources (source, resource, aRecorder, aFormatters);
+      }
     }
     finally
     {
+      // Don't waste any time on classes that are no longer needed
+      for (final Future <JPackage.RenderedClass> aFuture : aPending)
+        aFuture.cancel (false);
       source.close ();
       resource.close ();
     }
+    _onBuildFinished (nStart);
+  }
+
+  /**
+   * Generates Java source code and formats the classes using the provided
+   * number of threads. Each thread formats at most
+   * {@value #PENDING_CLASSES_PER_THREAD} classes ahead of the writer.
+   *
+   * @param source
+   *        Code writer for the Java source files.
+   * @param resource
+   *        Code writer for the resource files.
+   * @param nThreads
+   *        The number of formatting threads. Must be &ge; 1. If it is 1 the
+   *        serial {@link #build(AbstractCodeWriter, AbstractCodeWriter)} is
+   *        used.
+   * @see #build(AbstractCodeWriter, AbstractCodeWriter, Executor, int)
+   */
+  public void build (@Nonnull final AbstractCodeWriter source,
+                     @Nonnull final AbstractCodeWriter resource,
+                     @Nonnegative final int nThreads) throws IOException
+  {
+    if (nThreads < 1)
+      throw new IllegalArgumentException ("At least one thread is required: " + nThreads);
+
+    if (nThreads == 1)
+      build (source, resource);
+    else
+    {
+      final ExecutorService aExecutor = Executors.newFixedThreadPool (nThreads);
+      try
+      {
+        build (source, resource, aExecutor, nThreads * PENDING_CLASSES_PER_THREAD);
+      }
+      finally
+      {
+        aExecutor.shutdownNow ();
+      }
+    }
   }
 
   /**
@@ -448,13 +721,60 @@ public final class JCodeModel
   public int countArtifacts ()
   {
     int r = 0;
-    final JPackage [] pkgs = _packages.values ().toArray (new JPackage [_packages.size ()]);
-    // avoid concurrent modification exception
+    final JPackage [] pkgs = _getSortedPackages ();
     for (final JPackage pkg : pkgs)
       r += pkg.countArtifacts ();
     return r;
   }
 
+  /**
+   * Get the memoized use of the passed base type in the passed class.
+   *
+   * @param aClass
+   *        The class whose super types are searched
+   * @param aBaseType
+   *        The class whose parameterization we are interested in.
+   * @return The same as {@link AbstractJClass#getBaseClass(AbstractJClass)}
+   */
+  @Nullable
+  AbstractJClass _getBaseClass (@Nonnull final AbstractJClass aClass, @Nonnull final AbstractJClass aBaseType)
+  {
+    final BaseClassKey aKey = new BaseClassKey (aClass, aBaseType);
+    // Read before the lookup, so that a result computed while the hierarchy
+    // changes is never valid
+    final int nGeneration = _baseClassGeneration.get ();
+    BaseClassEntry aEntry = _baseClasses.get (aKey);
+    if (aEntry == null || aEntry.m_nGeneration != nGeneration)
+    {
+      aEntry = new BaseClassEntry (nGeneration, aClass._findBaseClass (aBaseType));
+      _baseClasses.put (aKey, aEntry);
+    }
+    return aEntry.m_aBaseClass;
+  }
+
+  /**
+   * Invalidate all memoized base classes. Must be called whenever the super
+   * class or the interfaces of a class of this model change.
+   */
+  void _invalidateBaseClasses ()
+  {
+    _baseClassGeneration.incrementAndGet ();
+  }
+
+  /**
+   * Get the pooled instance that is equal to the passed narrowed class.
+   *
+   * @param aNarrowedClass
+   *        The newly created narrowed class
+   * @return The passed instance, if no equal narrowed class was pooled before.
+   */
+  @Nonnull
+  JNarrowedClass _internNarrowedClass (@Nonnull final JNarrowedClass aNarrowedClass)
+  {
+    final JNarrowedClass ret = _narrowedClasses.putIfAbsent (aNarrowedClass, aNarrowedClass);
+    return ret != null ? ret : aNarrowedClass;
+  }
+
   /**
    * Obtains a reference to an existing class from its Class object.
    * <p>
@@ -473,7 +793,10 @@ public final class JCodeModel
       if (clazz.isArray ())
         return new JArrayClass (this, _ref (clazz.getComponentType ()));
       jrc = new JReferencedClass (clazz);
-      _refClasses.put (clazz, jrc);
+      // Another thread may have been faster
+      final JReferencedClass aExisting = _refClasses.putIfAbsent (clazz, jrc);
+      if (aExisting != null)
+        jrc = aExisting;
     }
     return jrc;
   }
@@ -490,35 +813,86 @@ public final class JCodeModel
    * Obtains a reference to an existing class from its fully-qualified class
    * name.
    * <p>
-   * First, this method attempts to load the class of the given name. If that
-   * fails, we assume that the class is derived straight from {@link Object},
-   * and return a {@link AbstractJClass}.
+   * First, this method attempts to load the class of the given name with the
+   * class resolver. If that fails, we assume that the class is derived straight
+   * from {@link Object}, and return a {@link JDirectClass}. The result is
+   * cached, so each name is resolved only once.
+   *
+   * @see #setClassResolver(IJClassResolver)
    */
   @Nonnull
   public AbstractJClass ref (@Nonnull final String fullyQualifiedClassName)
   {
-    try
-    {
-      // try the context class loader first
-      return ref (SecureLoader.getContextClassLoader ().loadClass (fullyQualifiedClassName));
-    }
-    catch (final ClassNotFoundException e)
+    AbstractJClass ret = _refClassesByName.get (fullyQualifiedClassName);
+    if (ret == null)
     {
-      // fall through
+      final Class <?> aClass = _classResolver.resolveClass (fullyQualifiedClassName);
+      if (aClass != null)
+        ret = ref (aClass);
+      else
+      {
+        // assume it's not visible to us.
+        ret = directClass (fullyQualifiedClassName);
+      }
+      // If another thread was faster, it resolved an identical result
+      _refClassesByName.putIfAbsent (fullyQualifiedClassName, ret);
     }
+    return ret;
+  }
 
-    // then the default mechanism.
-    try
-    {
-      return ref (Class.forName (fullyQualifiedClassName));
-    }
-    catch (final ClassNotFoundException e1)
-    {
-      // fall through
-    }
+  /**
+   * @return The strategy used by {@link #ref(String)} to find classes. Never
+   *         <code>null</code>. Defaults to {@link EClassResolver#REFLECTION}.
+   */
+  @Nonnull
+  public IJClassResolver getClassResolver ()
+  {
+    return _classResolver;
+  }
 
-    // assume it's not visible to us.
-    return new JDirectClass (this, fullyQualifiedClassName);
+  /**
+   * Set the strategy used by {@link #ref(String)} to find classes. This clears
+   * all cached results of {@link #ref(String)}.
+   *
+   * @param classResolver
+   *        The class resolver to use. May not be <code>null</code>.
+   * @return this
+   */
+  @Nonnull
+  public JCodeModel setClassResolver (@Nonnull final IJClassResolver classResolver)
+  {
+    if (classResolver == null)
+      throw new NullPointerException ("classResolver");
+    _classResolver = classResolver;
+    _refClassesByName.clear ();
+    return this;
+  }
+
+  /**
+   * @return The listener that receives the metrics of all builds. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public IJCodeModelBuildListener getBuildListener ()
+  {
+    return _buildListener;
+  }
+
+  /**
+   * Set the listener that receives timings and sizes of all subsequent builds,
+   * including {@link #emit(JDefinedClass, AbstractCodeWriter)}.
+   *
+   * @param buildListener
+   *        The listener to use. May be <code>null</code> to disable the
+   *        instrumentation.
+   * @return this
+   * @see HistogramBuildListener
+   */
+  @Nonnull
+  public JCodeModel setBuildListener (@Nullable final IJCodeModelBuildListener buildListener)
+  {
+    _buildListener = buildListener;
+    return this;
   }
 
   /**
@@ -685,6 +1059,57 @@ public final class JCodeModel
     }
   }
 
+  /**
+   * A memoized base class lookup, valid as long as the base class generation
+   * of the model did not change.
+   */
+  private static final class BaseClassEntry
+  {
+    private final int m_nGeneration;
+    private final AbstractJClass m_aBaseClass;
+
+    BaseClassEntry (final int nGeneration, @Nullable final AbstractJClass aBaseClass)
+    {
+      m_nGeneration = nGeneration;
+      m_aBaseClass = aBaseClass;
+    }
+  }
+
+  /**
+   * The key of the base class cache: a class together with the erased base
+   * type that was looked up in it.
+   */
+  private static final class BaseClassKey
+  {
+    private final AbstractJClass m_aClass;
+    private final AbstractJClass m_aBaseType;
+    private final int m_nHashCode;
+
+    BaseClassKey (@Nonnull final AbstractJClass aClass, @Nonnull final AbstractJClass aBaseType)
+    {
+      m_aClass = aClass;
+      m_aBaseType = aBaseType;
+      m_nHashCode = aClass.hashCode () * 31 + aBaseType.hashCode ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof BaseClassKey))
+        return false;
+      final BaseClassKey rhs = (BaseClassKey) o;
+      return m_aClass.equals (rhs.m_aClass) && m_aBaseType.equals (rhs.m_aBaseType);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_nHashCode;
+    }
+  }
+
   /**
    * References to existing classes.
    * <p>
@@ -698,25 +1123,39 @@ public final class JCodeModel
   private class JReferencedClass extends AbstractJClass implements IJDeclaration
   {
     private final Class <?> m_aClass;
+    private final String m_sName;
+    private final String m_sFullName;
+
+    // Lazily resolved and cached, because they are used for every reference to
+    // this class while formatting. Volatile, because the model may be used from
+    // multiple threads.
+    private volatile JPackage m_aPackage;
+    private volatile AbstractJClass m_aSuperClass;
+    private volatile boolean m_bSuperClassResolved;
+    private volatile List <AbstractJClass> m_aInterfaces;
+    private volatile AbstractJClass m_aOuter;
+    private volatile boolean m_bOuterResolved;
 
     JReferencedClass (@Nonnull final Class <?> _clazz)
     {
       super (JCodeModel.this);
       m_aClass = _clazz;
       assert !m_aClass.isArray ();
+      m_sName = _clazz.getSimpleName ();
+      m_sFullName = NameUtilities.getFullName (_clazz);
     }
 
     @Override
     public String name ()
     {
-      return m_aClass.getSimpleName ();
+      return m_sName;
     }
 
     @Override
     @Nonnull
     public String fullName ()
     {
-      return NameUtilities.getFullName (m_aClass);
+      return m_sFullName;
     }
 
     @Override
@@ -728,66 +1167,71 @@ public final class JCodeModel
     @Override
     public AbstractJClass outer ()
     {
-      final Class <?> p = m_aClass.getDeclaringClass ();
-      if (p == null)
-        return null;
-      return ref (p);
+      if (!m_bOuterResolved)
+      {
+        final Class <?> p = m_aClass.getDeclaringClass ();
+        m_aOuter = p == null ? null : ref (p);
+        m_bOuterResolved = true;
+      }
+      return m_aOuter;
     }
 
     @Override
     @Nonnull
     public JPackage _package ()
     {
-      final String name = fullName ();
-
-      // this type is array
-      if (name.indexOf ('[') != -1)
-        return JCodeModel.this._package ("");
+      JPackage ret = m_aPackage;
+      if (ret == null)
+      {
+        final String name = fullName ();
 
-      // other normal case
-      final int idx = name.lastIndexOf ('.');
-      if (idx < 0)
-        return JCodeModel.this._package ("");
-      return JCodeModel.this._package (name.substring (0, idx));
+        // this type is array
+        if (name.indexOf ('[') != -1)
+          ret = JCodeModel.this._package ("");
+        else
+        {
+          // other normal case
+          final int idx = name.lastIndexOf ('.');
+          if (idx < 0)
+            ret = JCodeModel.this._package ("");
+          else
+            ret = JCodeModel.this._package (name.substring (0, idx));
+        }
+        m_aPackage = ret;
+      }
+      return ret;
     }
 
     @Override
     public AbstractJClass _extends ()
     {
-      final Class <?> sp = m_aClass.getSuperclass ();
-      if (sp == null)
+      if (!m_bSuperClassResolved)
       {
-        if (isInterface ())
-          return owner ().ref (Object.class);
-        return null;
+        final Class <?> sp = m_aClass.getSuperclass ();
+        if (sp == null)
+          m_aSuperClass = isInterface () ? owner ().ref (Object.class) : null;
+        else
+          m_aSuperClass = ref (sp);
+        m_bSuperClassResolved = true;
       }
-      return ref (sp);
+      return m_aSuperClass;
     }
 
     @Override
     public Iterator <AbstractJClass> _implements ()
     {
-      final Class <?> [] interfaces = m_aClass.getInterfaces ();
-      return new Iterator <AbstractJClass> ()
+      List <AbstractJClass> ret = m_aInterfaces;
+      if (ret == null)
       {
-        private int idx = 0;
-
-        public boolean hasNext ()
-        {
-          return idx < interfaces.length;
-        }
-
-        @Nonnull
-        public AbstractJClass next ()
-        {
-          return JCodeModel.this.ref (interfaces[idx++]);
-        }
-
-        public void remove ()
-        {
-          throw new UnsupportedOperationException ();
-        }
-      };
+        final Class <?> [] interfaces = m_aClass.getInterfaces ();
+        final AbstractJClass [] aRefs = new AbstractJClass [interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i)
+          aRefs[i] = JCodeModel.this.ref (interfaces[i]);
+        // The iterator of an unmodifiable list does not support remove
+        ret = Collections.unmodifiableList (Arrays.asList (aRefs));
+        m_aInterfaces = ret;
+      }
+      return ret.iterator ();
     }
 
     @Override
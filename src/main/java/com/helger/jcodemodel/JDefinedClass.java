@@ -44,6 +44,7 @@ import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -120,6 +121,20 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
    */
   private final List <JMethod> m_aMethods = new ArrayList <JMethod> ();
 
+  /**
+   * Constructors indexed by their number of parameters, so that
+   * {@link #getConstructor(AbstractJType[])} does not need to check all
+   * constructors.
+   */
+  private final Map <Integer, List <JMethod>> m_aConstructorIndex = new HashMap <Integer, List <JMethod>> ();
+
+  /**
+   * Methods indexed by their name, so that
+   * {@link #getMethod(String, AbstractJType[])} does not need to check all
+   * methods.
+   */
+  private final Map <String, List <JMethod>> m_aMethodIndex = new HashMap <String, List <JMethod>> ();
+
   /**
    * Nested classes as a map from name to JDefinedClass. The name is all
    * capitalized in a case sensitive file system (
@@ -138,6 +153,12 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
    */
   private boolean m_bHideFile = false;
 
+  /**
+   * Flag that controls whether this class was already written by
+   * {@link JCodeModel#emit(JDefinedClass, AbstractCodeWriter)}.
+   */
+  private boolean m_bEmitted = false;
+
   /**
    * Client-app specific metadata associated with this user-created class.
    */
@@ -275,6 +296,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JDefinedClass _extends (@Nonnull final AbstractJClass superClass)
   {
+    _checkNotEmitted ();
     if (m_eClassType == EClassType.INTERFACE)
     {
       if (superClass.isInterface ())
@@ -297,6 +319,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
     }
 
     m_aSuperClass = superClass;
+    owner ()._invalidateBaseClasses ();
     return this;
   }
 
@@ -328,7 +351,9 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JDefinedClass _implements (@Nonnull final AbstractJClass iface)
   {
-    m_aInterfaces.add (iface);
+    _checkNotEmitted ();
+    if (m_aInterfaces.add (iface))
+      owner ()._invalidateBaseClasses ();
     return this;
   }
 
@@ -345,7 +370,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public Iterator <AbstractJClass> _implements ()
   {
-    return m_aInterfaces.iterator ();
+    return Collections.unmodifiableSet (m_aInterfaces).iterator ();
   }
 
   /**
@@ -378,6 +403,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
     JEnumConstant ec = m_aEnumConstantsByName.get (name);
     if (null == ec)
     {
+      _checkNotEmitted ();
       ec = new JEnumConstant (this, name);
       m_aEnumConstantsByName.put (name, ec);
     }
@@ -459,6 +485,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JFieldVar field (final int mods, final AbstractJType type, final String name, final IJExpression init)
   {
+    _checkNotEmitted ();
     final JFieldVar f = new JFieldVar (this, JMods.forField (mods), type, name, init);
     if (fields.containsKey (name))
       throw new IllegalArgumentException ("trying to create the same field twice: " + name);
@@ -554,6 +581,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
    */
   public void removeField (@Nonnull final JFieldVar field)
   {
+    _checkNotEmitted ();
     if (fields.remove (field.name ()) != field)
       throw new IllegalArgumentException ();
   }
@@ -566,6 +594,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JBlock init ()
   {
+    _checkNotEmitted ();
     if (m_aStaticInit == null)
       m_aStaticInit = new JBlock ();
     return m_aStaticInit;
@@ -579,6 +608,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JBlock instanceInit ()
   {
+    _checkNotEmitted ();
     if (m_aInstanceInit == null)
       m_aInstanceInit = new JBlock ();
     return m_aInstanceInit;
@@ -593,18 +623,21 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JMethod constructor (final int mods)
   {
+    _checkNotEmitted ();
     final JMethod c = new JMethod (mods, this);
     m_aConstructors.add (c);
+    _addToIndex (m_aConstructorIndex, Integer.valueOf (0), c);
     return c;
   }
 
   /**
-   * Returns an iterator that walks the constructors defined in this class.
+   * Returns an iterator that walks the constructors defined in this class. The
+   * iterator is read-only.
    */
   @Nonnull
   public Iterator <JMethod> constructors ()
   {
-    return m_aConstructors.iterator ();
+    return Collections.unmodifiableList (m_aConstructors).iterator ();
   }
 
   /**
@@ -615,12 +648,28 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nullable
   public JMethod getConstructor (@Nonnull final AbstractJType [] argTypes)
   {
-    for (final JMethod m : m_aConstructors)
-      if (m.hasSignature (argTypes))
-        return m;
+    final List <JMethod> aCandidates = m_aConstructorIndex.get (Integer.valueOf (argTypes.length));
+    if (aCandidates != null)
+      for (final JMethod m : aCandidates)
+        if (m.hasSignature (argTypes))
+          return m;
     return null;
   }
 
+  /**
+   * Removes a constructor from this class.
+   *
+   * @throws IllegalArgumentException
+   *         if the given method is not a constructor of this class.
+   */
+  public void removeConstructor (@Nonnull final JMethod constructor)
+  {
+    _checkNotEmitted ();
+    if (!m_aConstructors.remove (constructor))
+      throw new IllegalArgumentException ();
+    _removeFromIndex (m_aConstructorIndex, Integer.valueOf (constructor.params ().size ()), constructor);
+  }
+
   /**
    * Add a method to the list of method members of this JDefinedClass instance.
    *
@@ -635,9 +684,11 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JMethod method (final int mods, final AbstractJType type, final String name)
   {
+    _checkNotEmitted ();
     // XXX problems caught in M constructor
     final JMethod m = new JMethod (this, mods, type, name);
     m_aMethods.add (m);
+    _addToIndex (m_aMethodIndex, name, m);
     return m;
   }
 
@@ -648,12 +699,13 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   }
 
   /**
-   * Returns the set of methods defined in this class.
+   * Returns the set of methods defined in this class. The returned
+   * {@link Collection} is a read-only live view.
    */
   @Nonnull
   public Collection <JMethod> methods ()
   {
-    return m_aMethods;
+    return Collections.unmodifiableList (m_aMethods);
   }
 
   /**
@@ -664,15 +716,78 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nullable
   public JMethod getMethod (final String name, final AbstractJType [] argTypes)
   {
-    for (final JMethod m : m_aMethods)
+    final List <JMethod> aCandidates = m_aMethodIndex.get (name);
+    if (aCandidates != null)
+      for (final JMethod m : aCandidates)
+        if (m.hasSignature (argTypes))
+          return m;
+    return null;
+  }
+
+  /**
+   * Removes a method from this class.
+   *
+   * @throws IllegalArgumentException
+   *         if the given method is not a method of this class.
+   */
+  public void removeMethod (@Nonnull final JMethod method)
+  {
+    _checkNotEmitted ();
+    if (!m_aMethods.remove (method))
+      throw new IllegalArgumentException ();
+    _removeFromIndex (m_aMethodIndex, method.name (), method);
+  }
+
+  private static <K> void _addToIndex (@Nonnull final Map <K, List <JMethod>> aIndex,
+                                       @Nonnull final K aKey,
+                                       @Nonnull final JMethod aMethod)
+  {
+    List <JMethod> aList = aIndex.get (aKey);
+    if (aList == null)
     {
-      if (!m.name ().equals (name))
-        continue;
+      // Usually there is only one method per key
+      aList = new ArrayList <JMethod> (1);
+      aIndex.put (aKey, aList);
+    }
+    aList.add (aMethod);
+  }
+
+  private static <K> boolean _removeFromIndex (@Nonnull final Map <K, List <JMethod>> aIndex,
+                                               @Nonnull final K aKey,
+                                               @Nonnull final JMethod aMethod)
+  {
+    final List <JMethod> aList = aIndex.get (aKey);
+    if (aList == null || !aList.remove (aMethod))
+      return false;
+    if (aList.isEmpty ())
+      aIndex.remove (aKey);
+    return true;
+  }
+
+  /**
+   * Called by {@link JMethod} after it was renamed, to keep the method index
+   * up to date.
+   */
+  void onMethodRenamed (@Nonnull final JMethod method, @Nonnull final String oldName)
+  {
+    // Only re-index methods that were not removed from this class
+    if (!method.isConstructor () && _removeFromIndex (m_aMethodIndex, oldName, method))
+      _addToIndex (m_aMethodIndex, method.name (), method);
+  }
 
-      if (m.hasSignature (argTypes))
-        return m;
+  /**
+   * Called by {@link JMethod} after a parameter was added, to keep the
+   * constructor index up to date.
+   */
+  void onMethodParamAdded (@Nonnull final JMethod method)
+  {
+    if (method.isConstructor ())
+    {
+      // Only re-index constructors that were not removed from this class
+      final int nParams = method.params ().size ();
+      if (_removeFromIndex (m_aConstructorIndex, Integer.valueOf (nParams - 1), method))
+        _addToIndex (m_aConstructorIndex, Integer.valueOf (nParams), method);
     }
-    return null;
   }
 
   public boolean isClass ()
@@ -708,6 +823,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JDefinedClass _class (final int mods, @Nonnull final String name, @Nonnull final EClassType classTypeVal) throws JClassAlreadyExistsException
   {
+    _checkNotEmitted ();
     String sRealName;
     if (owner ().isCaseSensitiveFileSystem)
       sRealName = name.toUpperCase ();
@@ -765,6 +881,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JDocComment javadoc ()
   {
+    _checkNotEmitted ();
     if (m_aJDoc == null)
       m_aJDoc = new JDocComment (owner ());
     return m_aJDoc;
@@ -778,6 +895,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
    */
   public void hide ()
   {
+    _checkNotEmitted ();
     m_bHideFile = true;
   }
 
@@ -786,6 +904,41 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
     return m_bHideFile;
   }
 
+  /**
+   * @return <code>true</code> if this class was already written by
+   *         {@link JCodeModel#emit(JDefinedClass, AbstractCodeWriter)}. Such a
+   *         class is not written again by {@link JCodeModel#build}, its bodies
+   *         are released and it can only be used as a reference.
+   */
+  public boolean isEmitted ()
+  {
+    return m_bEmitted;
+  }
+
+  /**
+   * Mark this class and all nested classes as emitted and release the method
+   * bodies and initializers, which are no longer needed.
+   */
+  void markEmitted ()
+  {
+    m_bEmitted = true;
+    m_aStaticInit = null;
+    m_aInstanceInit = null;
+    for (final JMethod m : m_aConstructors)
+      m.releaseBody ();
+    for (final JMethod m : m_aMethods)
+      m.releaseBody ();
+    if (m_aClasses != null)
+      for (final JDefinedClass dc : m_aClasses.values ())
+        dc.markEmitted ();
+  }
+
+  private void _checkNotEmitted ()
+  {
+    if (m_bEmitted)
+      throw new IllegalStateException ("The class " + fullName () + " was already emitted and cannot be modified");
+  }
+
   /**
    * Returns an iterator that walks the nested classes defined in this class.
    */
@@ -923,6 +1076,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
    */
   public void direct (@Nullable final String string)
   {
+    _checkNotEmitted ();
     if (m_sDirectBlock == null)
       m_sDirectBlock = string;
     else
@@ -949,18 +1103,21 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JTypeVar generify (@Nonnull final String name)
   {
+    _checkNotEmitted ();
     return m_aGenerifiable.generify (name);
   }
 
   @Nonnull
   public JTypeVar generify (@Nonnull final String name, @Nonnull final Class <?> bound)
   {
+    _checkNotEmitted ();
     return m_aGenerifiable.generify (name, bound);
   }
 
   @Nonnull
   public JTypeVar generify (@Nonnull final String name, @Nonnull final AbstractJClass bound)
   {
+    _checkNotEmitted ();
     return m_aGenerifiable.generify (name, bound);
   }
 
@@ -1005,6 +1162,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public JAnnotationUse annotate (@Nonnull final AbstractJClass clazz)
   {
+    _checkNotEmitted ();
     if (m_aAnnotations == null)
       m_aAnnotations = new ArrayList <JAnnotationUse> ();
     final JAnnotationUse a = new JAnnotationUse (clazz);
@@ -1015,6 +1173,7 @@ public class JDefinedClass extends AbstractJClass implements IJDeclaration, IJCl
   @Nonnull
   public <W extends IJAnnotationWriter <?>> W annotate2 (@Nonnull final Class <W> clazz)
   {
+    _checkNotEmitted ();
     return TypedAnnotationWriter.create (clazz, this);
   }
 
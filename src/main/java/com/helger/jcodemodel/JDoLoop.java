@@ -42,15 +42,20 @@ package com.helger.jcodemodel;
 
 import javax.annotation.Nonnull;
 
+import com.helger.jcodemodel.optimize.ExpressionAccessor;
+import com.helger.jcodemodel.optimize.ExpressionCallback;
+import com.helger.jcodemodel.optimize.ExpressionContainer;
+import com.helger.jcodemodel.optimize.Loop;
+
 /**
  * Do loops
  */
-public class JDoLoop implements IJStatement
+public class JDoLoop implements IJStatement, Loop
 {
   /**
    * Test part of Do statement for determining exit state
    */
-  private final IJExpression _test;
+  private IJExpression _test;
 
   /**
    * JBlock of statements which makes up body of this Do statement
@@ -73,6 +78,41 @@ public class JDoLoop implements IJStatement
     return _test;
   }
 
+  @Nonnull
+  public ExpressionContainer statementsExecutedOnce ()
+  {
+    return new ExpressionContainer ()
+    {
+      public boolean forAllSubExpressions (final ExpressionCallback callback)
+      {
+        return true;
+      }
+    };
+  }
+
+  @Nonnull
+  public ExpressionContainer statementsExecutedOnEachIteration ()
+  {
+    return new ExpressionContainer ()
+    {
+      public boolean forAllSubExpressions (final ExpressionCallback callback)
+      {
+        return AbstractJExpressionImpl.visitWithSubExpressions (callback, new ExpressionAccessor ()
+        {
+          public void set (final IJExpression newExpression)
+          {
+            _test = newExpression;
+          }
+
+          public IJExpression get ()
+          {
+            return _test;
+          }
+        });
+      }
+    };
+  }
+
   @Nonnull
   public JBlock body ()
   {
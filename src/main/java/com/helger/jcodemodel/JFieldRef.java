@@ -206,6 +206,12 @@ public class JFieldRef extends AbstractJExpressionAssignmentTargetImpl implement
 
   @Override
   public int hashCode ()
+  {
+    return getCachedHashCode ();
+  }
+
+  @Override
+  int calcHashCode ()
   {
     return getHashCode (this, _object, name ());
   }
@@ -225,7 +231,10 @@ public class JFieldRef extends AbstractJExpressionAssignmentTargetImpl implement
   {
     if (_object instanceof IJExpression)
     {
-      return ((IJExpression) _object).expressionName () + StringUtils.upper (name ());
+      final String objectName = ((IJExpression) _object).expressionName ();
+      // e.g. this has no name
+      if (objectName != null)
+        return objectName + StringUtils.upper (name ());
     }
     return name ();
   }
@@ -240,6 +249,7 @@ public class JFieldRef extends AbstractJExpressionAssignmentTargetImpl implement
         public void set (final IJExpression newExpression)
         {
           _object = newExpression;
+          onExpressionModified ();
         }
 
         public IJExpression get ()
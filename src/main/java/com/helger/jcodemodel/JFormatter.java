@@ -41,6 +41,7 @@
 package com.helger.jcodemodel;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -59,7 +60,7 @@ import com.helger.jcodemodel.util.NullWriter;
 
 /**
  * This is a utility class for managing indentation and other basic formatting
- * for PrintWriter.
+ * for a Writer.
  */
 public class JFormatter implements Closeable
 {
@@ -72,6 +73,25 @@ public class JFormatter implements Closeable
     return formatter.m_bContainsErrorTypes;
   }
 
+  /** The line separator, as printed by {@link PrintWriter#println()}. */
+  private static final String LINE_SEPARATOR = System.getProperty ("line.separator");
+
+  /** The size of the output buffer used by {@link #write(JDefinedClass)}. */
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  /**
+   * The results of {@link #_calcNeedSpace(char, char)} for all pairs of
+   * US-ASCII characters, indexed by <code>c1 * 128 + c2</code>.
+   */
+  private static final boolean [] NEED_SPACE = new boolean [128 * 128];
+
+  static
+  {
+    for (char c1 = 0; c1 < 128; c1++)
+      for (char c2 = 0; c2 < 128; c2++)
+        NEED_SPACE[c1 << 7 | c2] = _calcNeedSpace (c1, c2);
+  }
+
   private static enum EMode
   {
     /**
@@ -91,7 +111,25 @@ public class JFormatter implements Closeable
      * Only used by {@link JFormatter#containsErrorTypes(JDefinedClass)
      * containsErrorTypes} method
      */
-    FIND_ERROR_TYPES
+    FIND_ERROR_TYPES,
+
+    /**
+     * Collect all the type names and identifiers like {@link #COLLECTING} and
+     * record the output at the same time. The recorded output is replayed in
+     * {@link #PRINTING} mode after the imports are known, so that the code
+     * model is only traversed once.
+     */
+    RECORDING
+  }
+
+  /**
+   * Recorded operations that are not plain text.
+   */
+  private static enum ERecordedOp
+  {
+    NEWLINE,
+    INDENT,
+    OUTDENT
   }
 
   public static final String DEFAULT_INDENT_SPACE = "    ";
@@ -111,12 +149,31 @@ public class JFormatter implements Closeable
    **/
   private final Map <String, Usages> m_aCollectedReferences = new HashMap <String, Usages> ();
 
+  /**
+   * {@link Usages} objects that were released by {@link #reset(Writer)} and
+   * can be reused.
+   */
+  private final List <Usages> m_aUnusedUsages = new ArrayList <Usages> ();
+
   /**
    * set of imported types (including package java types, even though we won't
    * generate imports for them)
    */
   private final Set <AbstractJClass> m_aImportedClasses = new HashSet <AbstractJClass> ();
 
+  /**
+   * The output recorded in {@link EMode#RECORDING} mode. Contains
+   * {@link String}s and {@link Character}s to be printed,
+   * {@link AbstractJClass}es to be printed as types and {@link ERecordedOp}s.
+   */
+  private final List <Object> m_aRecordedOutput = new ArrayList <Object> ();
+
+  /**
+   * If <code>true</code>, {@link #write(JDefinedClass)} traverses the code
+   * model only once and records the output while collecting the types.
+   */
+  private boolean m_bSinglePass = true;
+
   /**
    * The current running mode. Set to PRINTING so that a casual client can use a
    * formatter just like before.
@@ -136,7 +193,30 @@ public class JFormatter implements Closeable
   /**
    * Stream associated with this JFormatter
    */
-  private final PrintWriter m_aPW;
+  private Writer m_aWriter;
+
+  /**
+   * Output that was not yet passed to {@link #m_aWriter}. Only used while a
+   * whole class is written, because other callers may expect to see the output
+   * immediately. Lazily created.
+   */
+  private char [] m_aBuffer;
+  private int m_nBufferLength;
+  private boolean m_bBuffering = false;
+
+  /** <code>true</code> if writing failed. */
+  private boolean m_bError = false;
+
+  /** The metrics of the last {@link #write(JDefinedClass)} */
+  private long m_nStartNanos;
+  private long m_nCollectNanos;
+  private long m_nPrintNanos;
+  private long m_nWriteNanos;
+  private long m_nCharsWritten;
+  private int m_nImports;
+
+  /** The indentation prefix per level. Lazily filled. */
+  private String [] m_aIndentStrings = new String [8];
 
   private char m_cLastChar = 0;
   private boolean m_bAtBeginningOfLine = true;
@@ -151,24 +231,39 @@ public class JFormatter implements Closeable
   /**
    * Creates a JFormatter.
    *
-   * @param aPW
-   *        {@link PrintWriter} to {@link JFormatter} to use. May not be
+   * @param aWriter
+   *        {@link Writer} to {@link JFormatter} to use. May not be
    *        <code>null</code>.
    * @param sIndentSpace
    *        Incremental indentation string, similar to tab value. May not be
    *        <code>null</code>.
    */
-  public JFormatter (@Nonnull final PrintWriter aPW, @Nonnull final String sIndentSpace)
+  public JFormatter (@Nonnull final Writer aWriter, @Nonnull final String sIndentSpace)
   {
-    if (aPW == null)
-      throw new NullPointerException ("PrintWriter");
+    if (aWriter == null)
+      throw new NullPointerException ("Writer");
     if (sIndentSpace == null)
       throw new NullPointerException ("Indent space");
 
-    m_aPW = aPW;
+    m_aWriter = aWriter;
     m_sIndentSpace = sIndentSpace;
   }
 
+  /**
+   * Creates a JFormatter.
+   *
+   * @param aPW
+   *        {@link PrintWriter} to {@link JFormatter} to use. May not be
+   *        <code>null</code>.
+   * @param sIndentSpace
+   *        Incremental indentation string, similar to tab value. May not be
+   *        <code>null</code>.
+   */
+  public JFormatter (@Nonnull final PrintWriter aPW, @Nonnull final String sIndentSpace)
+  {
+    this ((Writer) aPW, sIndentSpace);
+  }
+
   /**
    * Creates a formatter with default incremental indentations of four spaces.
    */
@@ -182,15 +277,87 @@ public class JFormatter implements Closeable
    */
   public JFormatter (@Nonnull final Writer aWriter)
   {
-    this (aWriter instanceof PrintWriter ? (PrintWriter) aWriter : new PrintWriter (aWriter));
+    this (aWriter, DEFAULT_INDENT_SPACE);
   }
 
   /**
-   * Closes this formatter.
+   * Closes the writer of this formatter and releases the references to it and
+   * to the formatted code model.
    */
   public void close ()
   {
-    m_aPW.close ();
+    try
+    {
+      m_aWriter.close ();
+    }
+    catch (final IOException ex)
+    {
+      m_bError = true;
+    }
+    _clear ();
+  }
+
+  /**
+   * Like {@link PrintWriter} this class never throws an {@link IOException}.
+   * Use this method to check whether writing failed.
+   *
+   * @return <code>true</code> if the writer threw an {@link IOException} since
+   *         this formatter was created or reset.
+   */
+  public boolean checkError ()
+  {
+    return m_bError;
+  }
+
+  /**
+   * Make this formatter write to another writer, as if it was newly created.
+   * The internal collections are cleared and kept, so a formatter that is
+   * reused for many classes causes less garbage than a new formatter per
+   * class. The indentation string and the single pass setting are kept.
+   *
+   * @param aWriter
+   *        The new writer. May not be <code>null</code>.
+   * @return this
+   */
+  @Nonnull
+  public JFormatter reset (@Nonnull final Writer aWriter)
+  {
+    if (aWriter == null)
+      throw new NullPointerException ("Writer");
+
+    _clear ();
+    m_aWriter = aWriter;
+    m_bError = false;
+    return this;
+  }
+
+  private void _clear ()
+  {
+    for (final Usages aUsages : m_aCollectedReferences.values ())
+    {
+      aUsages.clear ();
+      m_aUnusedUsages.add (aUsages);
+    }
+    m_aCollectedReferences.clear ();
+    m_aImportedClasses.clear ();
+    m_aRecordedOutput.clear ();
+    m_eMode = EMode.PRINTING;
+    m_nIndentLevel = 0;
+    m_cLastChar = 0;
+    m_bAtBeginningOfLine = true;
+    m_aPckJavaLang = null;
+    m_bContainsErrorTypes = false;
+    // Don't keep the last output alive in formatters kept for reuse
+    m_aWriter = NullWriter.getInstance ();
+  }
+
+  @Nonnull
+  private Usages _createUsages ()
+  {
+    final int nUnused = m_aUnusedUsages.size ();
+    if (nUnused == 0)
+      return new Usages ();
+    return m_aUnusedUsages.remove (nUnused - 1);
   }
 
   /**
@@ -199,7 +366,35 @@ public class JFormatter implements Closeable
    */
   public boolean isPrinting ()
   {
-    return m_eMode == EMode.PRINTING;
+    return m_eMode == EMode.PRINTING || m_eMode == EMode.RECORDING;
+  }
+
+  /**
+   * @return <code>true</code> if a class is written with a single traversal of
+   *         the code model, <code>false</code> if the code model is traversed
+   *         once for collecting the imports and once for printing.
+   */
+  public boolean isSinglePass ()
+  {
+    return m_bSinglePass;
+  }
+
+  /**
+   * Define whether a class should be written with a single traversal of the
+   * code model. In single pass mode the output is recorded while the imports
+   * are collected, which avoids the second traversal at the cost of keeping the
+   * output of one class in memory. The generated code is identical in both
+   * modes. The default is <code>true</code>.
+   *
+   * @param bSinglePass
+   *        <code>true</code> to enable single pass mode
+   * @return this
+   */
+  @Nonnull
+  public JFormatter setSinglePass (final boolean bSinglePass)
+  {
+    m_bSinglePass = bSinglePass;
+    return this;
   }
 
   /**
@@ -208,7 +403,10 @@ public class JFormatter implements Closeable
   @Nonnull
   public JFormatter outdent ()
   {
-    m_nIndentLevel--;
+    if (m_eMode == EMode.RECORDING)
+      m_aRecordedOutput.add (ERecordedOp.OUTDENT);
+    else
+      m_nIndentLevel--;
     return this;
   }
 
@@ -218,11 +416,21 @@ public class JFormatter implements Closeable
   @Nonnull
   public JFormatter indent ()
   {
-    m_nIndentLevel++;
+    if (m_eMode == EMode.RECORDING)
+      m_aRecordedOutput.add (ERecordedOp.INDENT);
+    else
+      m_nIndentLevel++;
     return this;
   }
 
   private static boolean _needSpace (final char c1, final char c2)
+  {
+    if (c1 < 128 && c2 < 128)
+      return NEED_SPACE[c1 << 7 | c2];
+    return _calcNeedSpace (c1, c2);
+  }
+
+  private static boolean _calcNeedSpace (final char c1, final char c2)
   {
     if ((c1 == ']') && (c2 == '{'))
       return true;
@@ -287,17 +495,115 @@ public class JFormatter implements Closeable
     return false;
   }
 
+  @Nonnull
+  private String _getIndentString (final int nLevel)
+  {
+    if (nLevel >= m_aIndentStrings.length)
+    {
+      final String [] aNew = new String [Math.max (nLevel + 1, m_aIndentStrings.length * 2)];
+      System.arraycopy (m_aIndentStrings, 0, aNew, 0, m_aIndentStrings.length);
+      m_aIndentStrings = aNew;
+    }
+    String ret = m_aIndentStrings[nLevel];
+    if (ret == null)
+    {
+      final StringBuilder aSB = new StringBuilder (nLevel * m_sIndentSpace.length ());
+      for (int i = 0; i < nLevel; i++)
+        aSB.append (m_sIndentSpace);
+      ret = aSB.toString ();
+      m_aIndentStrings[nLevel] = ret;
+    }
+    return ret;
+  }
+
   private void _spaceIfNeeded (final char c)
   {
     if (m_bAtBeginningOfLine)
     {
-      for (int i = 0; i < m_nIndentLevel; i++)
-        m_aPW.print (m_sIndentSpace);
+      if (m_nIndentLevel > 0)
+        _write (_getIndentString (m_nIndentLevel));
       m_bAtBeginningOfLine = false;
     }
     else
       if ((m_cLastChar != 0) && _needSpace (m_cLastChar, c))
-        m_aPW.print (' ');
+        _write (' ');
+  }
+
+  private void _write (final char c)
+  {
+    if (m_bBuffering)
+    {
+      if (m_nBufferLength == m_aBuffer.length)
+        _flushBuffer ();
+      m_aBuffer[m_nBufferLength++] = c;
+    }
+    else
+      if (!m_bError)
+        try
+        {
+          m_aWriter.write (c);
+        }
+        catch (final IOException ex)
+        {
+          m_bError = true;
+        }
+  }
+
+  private void _write (@Nonnull final String s)
+  {
+    final int nLength = s.length ();
+    if (m_bBuffering)
+    {
+      if (m_nBufferLength + nLength > m_aBuffer.length)
+        _flushBuffer ();
+      if (nLength <= m_aBuffer.length)
+      {
+        s.getChars (0, nLength, m_aBuffer, m_nBufferLength);
+        m_nBufferLength += nLength;
+      }
+      else
+      {
+        // Too large for the buffer
+        final long nStart = System.nanoTime ();
+        _writeUnbuffered (s);
+        m_nWriteNanos += System.nanoTime () - nStart;
+        m_nCharsWritten += nLength;
+      }
+    }
+    else
+      _writeUnbuffered (s);
+  }
+
+  private void _writeUnbuffered (@Nonnull final String s)
+  {
+    if (!m_bError)
+      try
+      {
+        m_aWriter.write (s);
+      }
+      catch (final IOException ex)
+      {
+        m_bError = true;
+      }
+  }
+
+  private void _flushBuffer ()
+  {
+    if (m_nBufferLength > 0 && !m_bError)
+    {
+      final long nStart = System.nanoTime ();
+      try
+      {
+        m_aWriter.write (m_aBuffer, 0, m_nBufferLength);
+      }
+      catch (final IOException ex)
+      {
+        m_bError = true;
+      }
+      m_nWriteNanos += System.nanoTime () - nStart;
+      m_nCharsWritten += m_nBufferLength;
+    }
+    m_nBufferLength = 0;
   }
 
   /**
@@ -314,15 +620,18 @@ public class JFormatter implements Closeable
     {
       if (c == CLOSE_TYPE_ARGS)
       {
-        m_aPW.print ('>');
+        _write ('>');
       }
       else
       {
         _spaceIfNeeded (c);
-        m_aPW.print (c);
+        _write (c);
       }
       m_cLastChar = c;
     }
+    else
+      if (m_eMode == EMode.RECORDING)
+        m_aRecordedOutput.add (Character.valueOf (c));
     return this;
   }
 
@@ -339,9 +648,12 @@ public class JFormatter implements Closeable
     if (m_eMode == EMode.PRINTING && s.length () > 0)
     {
       _spaceIfNeeded (s.charAt (0));
-      m_aPW.print (s);
+      _write (s);
       m_cLastChar = s.charAt (s.length () - 1);
     }
+    else
+      if (m_eMode == EMode.RECORDING && s.length () > 0)
+        m_aRecordedOutput.add (s);
     return this;
   }
 
@@ -388,20 +700,29 @@ public class JFormatter implements Closeable
           }
         }
         break;
+      case RECORDING:
+        m_aRecordedOutput.add (aType);
+        _collectType (aType);
+        break;
       case COLLECTING:
-        final String shortName = aType.name ();
-        Usages usage = m_aCollectedReferences.get (shortName);
-        if (usage == null)
-        {
-          usage = new Usages ();
-          m_aCollectedReferences.put (shortName, usage);
-        }
-        usage.addReferencedType (aType);
+        _collectType (aType);
         break;
     }
     return this;
   }
 
+  private void _collectType (@Nonnull final AbstractJClass aType)
+  {
+    final String shortName = aType.name ();
+    Usages usage = m_aCollectedReferences.get (shortName);
+    if (usage == null)
+    {
+      usage = _createUsages ();
+      m_aCollectedReferences.put (shortName, usage);
+    }
+    usage.addReferencedType (aType);
+  }
+
   /**
    * Print an identifier
    */
@@ -413,22 +734,31 @@ public class JFormatter implements Closeable
       case PRINTING:
         print (id);
         break;
+      case RECORDING:
+        print (id);
+        _collectId (id);
+        break;
       case COLLECTING:
-        // see if there is a type name that collides with this id
-        Usages usage = m_aCollectedReferences.get (id);
-        if (usage == null)
-        {
-          // not a type, but we need to create a place holder to
-          // see if there might be a collision with a type
-          usage = new Usages ();
-          m_aCollectedReferences.put (id, usage);
-        }
-        usage.setVariableName ();
+        _collectId (id);
         break;
     }
     return this;
   }
 
+  private void _collectId (@Nonnull final String id)
+  {
+    // see if there is a type name that collides with this id
+    Usages usage = m_aCollectedReferences.get (id);
+    if (usage == null)
+    {
+      // not a type, but we need to create a place holder to
+      // see if there might be a collision with a type
+      usage = _createUsages ();
+      m_aCollectedReferences.put (id, usage);
+    }
+    usage.setVariableName ();
+  }
+
   /**
    * Print a new line into the stream
    */
@@ -437,10 +767,13 @@ public class JFormatter implements Closeable
   {
     if (m_eMode == EMode.PRINTING)
     {
-      m_aPW.println ();
+      _write (LINE_SEPARATOR);
       m_cLastChar = 0;
       m_bAtBeginningOfLine = true;
     }
+    else
+      if (m_eMode == EMode.RECORDING)
+        m_aRecordedOutput.add (ERecordedOp.NEWLINE);
     return this;
   }
 
@@ -520,11 +853,84 @@ public class JFormatter implements Closeable
    * Generates the whole source code out of the specified class.
    */
   void write (@Nonnull final JDefinedClass c)
+  {
+    if (m_aBuffer == null)
+      m_aBuffer = new char [BUFFER_SIZE];
+    m_bBuffering = true;
+    m_nWriteNanos = 0;
+    m_nCharsWritten = 0;
+    m_nImports = 0;
+    m_nStartNanos = System.nanoTime ();
+    try
+    {
+      _write (c);
+    }
+    finally
+    {
+      _flushBuffer ();
+      m_bBuffering = false;
+      m_nPrintNanos = System.nanoTime () - m_nStartNanos - m_nCollectNanos - m_nWriteNanos;
+    }
+  }
+
+  /**
+   * @return The time in nanoseconds the last {@link #write(JDefinedClass)}
+   *         spent collecting the imports.
+   */
+  long getCollectNanos ()
+  {
+    return m_nCollectNanos;
+  }
+
+  /**
+   * @return The time in nanoseconds the last {@link #write(JDefinedClass)}
+   *         spent printing, without the time spent in the writer.
+   */
+  long getPrintNanos ()
+  {
+    return m_nPrintNanos;
+  }
+
+  /**
+   * @return The time in nanoseconds the last {@link #write(JDefinedClass)}
+   *         spent in the writer.
+   */
+  long getWriteNanos ()
+  {
+    return m_nWriteNanos;
+  }
+
+  /**
+   * @return The number of characters written by the last
+   *         {@link #write(JDefinedClass)}.
+   */
+  long getCharsWritten ()
+  {
+    return m_nCharsWritten;
+  }
+
+  /**
+   * @return The number of import statements written by the last
+   *         {@link #write(JDefinedClass)}.
+   */
+  int getImportCount ()
+  {
+    return m_nImports;
+  }
+
+  private void _write (@Nonnull final JDefinedClass c)
   {
     m_aPckJavaLang = c.owner ()._package ("java.lang");
 
     // first collect all the types and identifiers
-    m_eMode = EMode.COLLECTING;
+    if (m_bSinglePass)
+    {
+      // and record the output at the same time
+      m_eMode = EMode.RECORDING;
+      m_aRecordedOutput.clear ();
+    }
+    else
+      m_eMode = EMode.COLLECTING;
     declaration (c);
 
     // collate type names and identifiers to determine which types can be
@@ -553,6 +959,7 @@ public class JFormatter implements Closeable
 
     // the class itself that we will be generating is always accessible
     m_aImportedClasses.add (c);
+    m_nCollectNanos = System.nanoTime () - m_nStartNanos;
 
     // then print the declaration
     m_eMode = EMode.PRINTING;
@@ -583,13 +990,49 @@ public class JFormatter implements Closeable
 
         print ("import").print (clazz.fullName ()).print (';').newline ();
         bAnyImport = true;
+        m_nImports++;
       }
     }
 
     if (bAnyImport)
       newline ();
 
-    declaration (c);
+    if (m_bSinglePass)
+      _replayRecordedOutput ();
+    else
+      declaration (c);
+  }
+
+  /**
+   * Print everything recorded in {@link EMode#RECORDING} mode.
+   */
+  private void _replayRecordedOutput ()
+  {
+    for (final Object aOp : m_aRecordedOutput)
+    {
+      if (aOp instanceof String)
+        print ((String) aOp);
+      else
+        if (aOp instanceof Character)
+          print (((Character) aOp).charValue ());
+        else
+          if (aOp instanceof AbstractJClass)
+            type ((AbstractJClass) aOp);
+          else
+            switch ((ERecordedOp) aOp)
+            {
+              case NEWLINE:
+                newline ();
+                break;
+              case INDENT:
+                indent ();
+                break;
+              case OUTDENT:
+                outdent ();
+                break;
+            }
+    }
+    m_aRecordedOutput.clear ();
   }
 
   /**
@@ -772,14 +1215,11 @@ public class JFormatter implements Closeable
       {
         // make sure that there's no other class with this name within the
         // same package
-        for (final JDefinedClass n : enclosingClass._package ().classes ())
-        {
-          // even if this is the only "String" class we use,
-          // if the class called "String" is in the same package,
-          // we still need to import it.
-          if (n.name ().equals (singleRef.name ()))
-            return true; // collision
-        }
+        // even if this is the only "String" class we use,
+        // if the class called "String" is in the same package,
+        // we still need to import it.
+        if (enclosingClass._package ()._getClass (singleRef.name ()) != null)
+          return true; // collision
       }
 
       return false;
@@ -810,6 +1250,12 @@ public class JFormatter implements Closeable
       return _referencedClasses;
     }
 
+    public void clear ()
+    {
+      _referencedClasses.clear ();
+      _isVariableName = false;
+    }
+
     public void setVariableName ()
     {
       // FIXME: Strangely special processing of inner-classes references
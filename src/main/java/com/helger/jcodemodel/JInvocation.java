@@ -181,6 +181,39 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
     return _isConstructor;
   }
 
+  /**
+   * @return The expression or type the method is invoked on. May be
+   *         <code>null</code> for unqualified invocations and constructors.
+   */
+  @Nullable
+  public IJGenerable object ()
+  {
+    return _object;
+  }
+
+  /**
+   * @return The invoked method, if the invocation was created from a
+   *         {@link JMethod}. <code>null</code> for invocations by name and for
+   *         constructors.
+   */
+  @Nullable
+  public JMethod method ()
+  {
+    return _method;
+  }
+
+  /**
+   * @return The name of the invoked method. <code>null</code> for
+   *         constructors.
+   */
+  @Nullable
+  public String methodName ()
+  {
+    if (_methodName != null)
+      return _methodName;
+    return _method != null ? _method.name () : null;
+  }
+
   /**
    * Add an expression to this invocation's argument list
    *
@@ -193,6 +226,7 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
     if (arg == null)
       throw new IllegalArgumentException ("argument may not be null");
     _args.add (arg);
+    onExpressionModified ();
     return this;
   }
 
@@ -297,6 +331,7 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
     if (_typeVariables == null)
       _typeVariables = new ArrayList <JTypeVar> (3);
     _typeVariables.add (v);
+    onExpressionModified ();
     return this;
   }
 
@@ -313,6 +348,7 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
     if (_typeVariables == null)
       _typeVariables = new ArrayList <JTypeVar> (3);
     _typeVariables.add (v);
+    onExpressionModified ();
     return this;
   }
 
@@ -341,11 +377,6 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
     }
   }
 
-  private String methodName ()
-  {
-    return _methodName != null ? _methodName : _method.name ();
-  }
-
   public void generate (@Nonnull final JFormatter f)
   {
     if (_isConstructor)
@@ -442,6 +473,12 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
 
   @Override
   public int hashCode ()
+  {
+    return getCachedHashCode ();
+  }
+
+  @Override
+  int calcHashCode ()
   {
     HashCodeGenerator hashCodeGenerator = new HashCodeGenerator (this).append (_object).append (_isConstructor);
     if (!_isConstructor)
@@ -497,6 +534,7 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
         public void set (final IJExpression newExpression)
         {
           _object = newExpression;
+          onExpressionModified ();
         }
 
         public IJExpression get ()
@@ -514,6 +552,7 @@ public class JInvocation extends AbstractJExpressionImpl implements IJStatement,
         public void set (final IJExpression newExpression)
         {
           _args.set (finalI, newExpression);
+          onExpressionModified ();
         }
 
         public IJExpression get ()
@@ -90,6 +90,11 @@ public class JMethod extends AbstractJGenerifiableImpl implements IJAnnotatable,
    */
   private JBlock m_aBody;
 
+  /**
+   * <code>true</code> if the body was released after the class was emitted.
+   */
+  private boolean m_bBodyReleased;
+
   private final JDefinedClass m_aOuter;
 
   /**
@@ -213,6 +218,7 @@ public class JMethod extends AbstractJGenerifiableImpl implements IJAnnotatable,
   {
     final JVar aVar = new JVar (JMods.forVar (mods), type, name, null);
     m_aParams.add (aVar);
+    m_aOuter.onMethodParamAdded (this);
     return aVar;
   }
 
@@ -378,7 +384,11 @@ public class JMethod extends AbstractJGenerifiableImpl implements IJAnnotatable,
    */
   public void name (final String n)
   {
+    final String sOldName = m_sName;
     m_sName = n;
+    m_aOuter.onMethodRenamed (this, sOldName);
+    // The name is part of the hash code of invocations
+    AbstractJExpressionImpl.onExpressionModified ();
   }
 
   /**
@@ -456,6 +466,15 @@ public class JMethod extends AbstractJGenerifiableImpl implements IJAnnotatable,
     return true;
   }
 
+  /**
+   * Release the body of this method after its class was emitted.
+   */
+  void releaseBody ()
+  {
+    m_aBody = null;
+    m_bBodyReleased = true;
+  }
+
   /**
    * Get the block that makes up body of this method
    *
@@ -464,6 +483,8 @@ public class JMethod extends AbstractJGenerifiableImpl implements IJAnnotatable,
   @Nonnull
   public JBlock body ()
   {
+    if (m_bBodyReleased)
+      throw new IllegalStateException ("The body of method " + m_sName + " was released, because its class was emitted");
     if (m_aBody == null)
       m_aBody = new JBlock ();
     return m_aBody;
@@ -64,6 +64,29 @@ public class JNarrowedClass extends AbstractJClass
    */
   private final List <? extends AbstractJClass> _args;
 
+  /**
+   * Lazily calculated hash code. 0 if not yet calculated.
+   */
+  private int _hashCode;
+
+  /**
+   * Create a narrowed class or reuse an equal one created before in the same
+   * code model.
+   *
+   * @param basis
+   *        A generic class with type parameters.
+   * @param args
+   *        Arguments to those parameters. Must not be modified afterwards.
+   * @return The narrowed class. Never <code>null</code>.
+   */
+  @Nonnull
+  static JNarrowedClass _create (@Nonnull final AbstractJClass basis, @Nonnull final List <? extends AbstractJClass> args)
+  {
+    final JNarrowedClass ret = new JNarrowedClass (basis, args);
+    final JCodeModel aOwner = basis.owner ();
+    return aOwner == null ? ret : aOwner._internNarrowedClass (ret);
+  }
+
   public JNarrowedClass (@Nonnull final AbstractJClass basis, @Nonnull final AbstractJClass arg)
   {
     this (basis, Collections.singletonList (arg));
@@ -94,7 +117,7 @@ public class JNarrowedClass extends AbstractJClass
 
     final List <AbstractJClass> newArgs = new ArrayList <AbstractJClass> (_args);
     newArgs.add (clazz);
-    return new JNarrowedClass (_basis, newArgs);
+    return _create (_basis, newArgs);
   }
 
   @Override
@@ -106,7 +129,7 @@ public class JNarrowedClass extends AbstractJClass
     final List <AbstractJClass> newArgs = new ArrayList <AbstractJClass> (_args);
     for (final AbstractJClass aClass : clazz)
       newArgs.add (aClass);
-    return new JNarrowedClass (_basis, newArgs);
+    return _create (_basis, newArgs);
   }
 
   @Override
@@ -272,7 +295,8 @@ public class JNarrowedClass extends AbstractJClass
   @Override
   public List <? extends AbstractJClass> getTypeParameters ()
   {
-    return _args;
+    // Instances are shared, so the arguments must not be modified
+    return Collections.unmodifiableList (_args);
   }
 
   @Override
@@ -290,7 +314,7 @@ public class JNarrowedClass extends AbstractJClass
     }
 
     if (different)
-      return new JNarrowedClass (b, clazz);
+      return _create (b, clazz);
     return this;
   }
 
@@ -314,6 +338,12 @@ public class JNarrowedClass extends AbstractJClass
   @Override
   public int hashCode ()
   {
-    return _basis.hashCode () * 37 + _args.hashCode ();
+    int ret = _hashCode;
+    if (ret == 0)
+    {
+      ret = _basis.hashCode () * 37 + _args.hashCode ();
+      _hashCode = ret;
+    }
+    return ret;
   }
 }
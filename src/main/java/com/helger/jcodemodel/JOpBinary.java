@@ -129,6 +129,12 @@ public class JOpBinary extends AbstractJExpressionImpl
 
   @Override
   public int hashCode ()
+  {
+    return getCachedHashCode ();
+  }
+
+  @Override
+  int calcHashCode ()
   {
     return getHashCode (this, _left, _op, _right);
   }
@@ -184,6 +190,7 @@ public class JOpBinary extends AbstractJExpressionImpl
       public void set (final IJExpression newExpression)
       {
         _left = newExpression;
+        onExpressionModified ();
       }
 
       public IJExpression get ()
@@ -199,6 +206,7 @@ public class JOpBinary extends AbstractJExpressionImpl
         public void set (final IJExpression newExpression)
         {
           _right = newExpression;
+          onExpressionModified ();
         }
 
         public IJExpression get ()
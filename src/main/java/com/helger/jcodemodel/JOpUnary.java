@@ -45,10 +45,13 @@ import static com.helger.jcodemodel.util.HashCodeGenerator.getHashCode;
 
 import javax.annotation.Nonnull;
 
+import com.helger.jcodemodel.optimize.ExpressionAccessor;
+import com.helger.jcodemodel.optimize.ExpressionCallback;
+
 public class JOpUnary extends AbstractJExpressionImpl
 {
   private final String _op;
-  private final IJExpression _e;
+  private IJExpression _e;
   private final boolean opFirst;
 
   protected JOpUnary (@Nonnull final String op, @Nonnull final IJExpression e)
@@ -109,4 +112,22 @@ public class JOpUnary extends AbstractJExpressionImpl
   {
     return getHashCode (this, _op, _e, Boolean.valueOf (opFirst));
   }
+
+  @Override
+  public boolean forAllSubExpressions (final ExpressionCallback callback)
+  {
+    return visitWithSubExpressions (callback, new ExpressionAccessor ()
+    {
+      public void set (final IJExpression newExpression)
+      {
+        _e = newExpression;
+        onExpressionModified ();
+      }
+
+      public IJExpression get ()
+      {
+        return _e;
+      }
+    });
+  }
 }
@@ -44,20 +44,28 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -75,21 +83,22 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
   private final JCodeModel m_aOwner;
 
   /**
-   * List of classes contained within this package keyed by their name.
+   * List of classes contained within this package keyed by their name. Use
+   * {@link #_getSortedClasses()} to iterate them in a deterministic order.
    */
-  private final Map <String, JDefinedClass> m_aClasses = new TreeMap <String, JDefinedClass> ();
+  private final ConcurrentMap <String, JDefinedClass> m_aClasses = new ConcurrentHashMap <String, JDefinedClass> ();
 
   /**
    * List of resources files inside this package.
    */
-  private final Set <AbstractJResourceFile> m_aResources = new HashSet <AbstractJResourceFile> ();
+  private final Set <AbstractJResourceFile> m_aResources = Collections.synchronizedSet (new HashSet <AbstractJResourceFile> ());
 
   /**
    * All {@link AbstractJClass}s in this package keyed the upper case class
    * name. This field is non-null only on Windows, to detect "Foo" and "foo" as
    * a collision.
    */
-  private final Map <String, JDefinedClass> m_aUpperCaseClassMap;
+  private final ConcurrentMap <String, JDefinedClass> m_aUpperCaseClassMap;
 
   /**
    * Lazily created list of package annotations.
@@ -125,7 +134,7 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
     if (m_aOwner.isCaseSensitiveFileSystem)
       m_aUpperCaseClassMap = null;
     else
-      m_aUpperCaseClassMap = new HashMap <String, JDefinedClass> ();
+      m_aUpperCaseClassMap = new ConcurrentHashMap <String, JDefinedClass> ();
 
     m_sName = sName;
   }
@@ -185,21 +194,27 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
   @Nonnull
   public JDefinedClass _class (final int nMods, @Nonnull final String sName, @Nonnull final EClassType eClassType) throws JClassAlreadyExistsException
   {
-    if (m_aClasses.containsKey (sName))
-      throw new JClassAlreadyExistsException (m_aClasses.get (sName));
+    final JDefinedClass aExistingClass = m_aClasses.get (sName);
+    if (aExistingClass != null)
+      throw new JClassAlreadyExistsException (aExistingClass);
 
     // XXX problems caught in the NC constructor
     final JDefinedClass c = new JDefinedClass (this, nMods, sName, eClassType);
 
+    // Register atomically, as another thread may create the same class
+    final JDefinedClass aConcurrentClass = m_aClasses.putIfAbsent (sName, c);
+    if (aConcurrentClass != null)
+      throw new JClassAlreadyExistsException (aConcurrentClass);
+
     if (m_aUpperCaseClassMap != null)
     {
-      final String sUpperName = sName.toUpperCase ();
-      final JDefinedClass dc = m_aUpperCaseClassMap.get (sUpperName);
+      final JDefinedClass dc = m_aUpperCaseClassMap.putIfAbsent (sName.toUpperCase (), c);
       if (dc != null)
+      {
+        m_aClasses.remove (sName, c);
         throw new JClassAlreadyExistsException (dc);
-      m_aUpperCaseClassMap.put (sUpperName, c);
+      }
     }
-    m_aClasses.put (sName, c);
     return c;
   }
 
@@ -408,13 +423,22 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
   }
 
   /**
-   * Returns an iterator that walks the top-level classes defined in this
-   * package.
+   * Returns the top-level classes defined in this package, sorted by name.
    */
   @Nonnull
   public Collection <JDefinedClass> classes ()
   {
-    return m_aClasses.values ();
+    return Collections.unmodifiableList (_getSortedClasses ());
+  }
+
+  /**
+   * @return A snapshot of all classes of this package sorted by name, so that
+   *         the output of the build does not depend on the creation order.
+   */
+  @Nonnull
+  private List <JDefinedClass> _getSortedClasses ()
+  {
+    return new ArrayList <JDefinedClass> (new TreeMap <String, JDefinedClass> (m_aClasses).values ());
   }
 
   /**
@@ -514,26 +538,231 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
     f.print (m_sName);
   }
 
-  void build (final AbstractCodeWriter src, final AbstractCodeWriter res) throws IOException
+  void build (@Nonnull final AbstractCodeWriter src,
+              @Nonnull final AbstractCodeWriter res,
+              @Nullable final JCodeModelBuildRecorder aRecorder,
+              @Nonnull final FormatterPool aFormatters) throws IOException
   {
     // write classes
-    for (final JDefinedClass c : m_aClasses.values ())
+    for (final JDefinedClass c : _getClassesToBuild ())
+      _writeClass (src, c, aRecorder, aFormatters);
+
+    _buildPackageInfoAndResources (src, res, aRecorder, aFormatters);
+  }
+
+  /**
+   * Write a single class of this package.
+   */
+  void emit (@Nonnull final AbstractCodeWriter src,
+             @Nonnull final JDefinedClass c,
+             @Nullable final JCodeModelBuildRecorder aRecorder) throws IOException
+  {
+    if (!c.isHidden ())
+      _writeClass (src, c, aRecorder, new FormatterPool ());
+  }
+
+  private void _writeClass (@Nonnull final AbstractCodeWriter src,
+                            @Nonnull final JDefinedClass c,
+                            @Nullable final JCodeModelBuildRecorder aRecorder,
+                            @Nonnull final FormatterPool aFormatters) throws IOException
+  {
+    final long nOpenStart = System.nanoTime ();
+    final JFormatter f = _createJavaSourceFileWriter (src, c.name (), aFormatters);
+    final long nOpenNanos = System.nanoTime () - nOpenStart;
+    f.write (c);
+    final long nCloseStart = System.nanoTime ();
+    _close (f, c.name ());
+    if (aRecorder != null)
+      aRecorder.onClassBuilt (c,
+                              f.getCollectNanos (),
+                              f.getPrintNanos (),
+                              nOpenNanos + f.getWriteNanos () + System.nanoTime () - nCloseStart,
+                              f.getCharsWritten (),
+                              f.getImportCount ());
+  }
+
+  /**
+   * The formatters of one build. A formatter is reused for all files of the
+   * build instead of allocating one with all its collections for each file, and
+   * it is dropped together with the pool when the build is done.
+   */
+  static final class FormatterPool
+  {
+    private final ConcurrentLinkedQueue <JFormatter> m_aFree = new ConcurrentLinkedQueue <JFormatter> ();
+
+    /**
+     * @param w
+     *        The writer to write to.
+     * @return A formatter that is not used by anyone else until it is
+     *         released. Never <code>null</code>.
+     */
+    @Nonnull
+    JFormatter acquire (@Nonnull final Writer w)
+    {
+      final JFormatter f = m_aFree.poll ();
+      if (f == null)
+        return new JFormatter (w);
+      return f.reset (w);
+    }
+
+    /**
+     * @param f
+     *        A closed formatter that was acquired from this pool.
+     */
+    void release (@Nonnull final JFormatter f)
+    {
+      m_aFree.offer (f);
+    }
+  }
+
+  /**
+   * A class formatted by
+   * {@link JPackage#_scheduleClass(Executor, JDefinedClass, FormatterPool)}
+   * together with the metrics of the formatting.
+   */
+  static final class RenderedClass
+  {
+    private final String m_sSource;
+    private final long m_nCollectNanos;
+    private final long m_nPrintNanos;
+    private final int m_nImports;
+
+    RenderedClass (@Nonnull final String sSource, final long nCollectNanos, final long nPrintNanos, final int nImports)
+    {
+      m_sSource = sSource;
+      m_nCollectNanos = nCollectNanos;
+      m_nPrintNanos = nPrintNanos;
+      m_nImports = nImports;
+    }
+  }
+
+  /**
+   * @return The classes of this package that are written by the build, in the
+   *         order in which they are written. Never <code>null</code>.
+   */
+  @Nonnull
+  List <JDefinedClass> _getClassesToBuild ()
+  {
+    final List <JDefinedClass> ret = new ArrayList <JDefinedClass> (m_aClasses.size ());
+    for (final JDefinedClass c : _getSortedClasses ())
     {
-      if (c.isHidden ())
+      if (c.isHidden () || c.isEmitted ())
       {
         // don't generate this file
         continue;
       }
+      ret.add (c);
+    }
+    return ret;
+  }
+
+  /**
+   * Schedule the formatting of the passed class on the passed executor. The
+   * class is rendered into a String.
+   *
+   * @param aExecutor
+   *        The executor to run the formatting on. May not be <code>null</code>.
+   * @param c
+   *        The class to format. May not be <code>null</code>.
+   * @param aFormatters
+   *        The formatters of the build. May not be <code>null</code>.
+   * @return The pending formatting result. Never <code>null</code>.
+   */
+  @Nonnull
+  static Future <RenderedClass> _scheduleClass (@Nonnull final Executor aExecutor,
+                                                @Nonnull final JDefinedClass c,
+                                                @Nonnull final FormatterPool aFormatters)
+  {
+    final FutureTask <RenderedClass> aTask = new FutureTask <RenderedClass> (new Callable <RenderedClass> ()
+    {
+      public RenderedClass call ()
+      {
+        final StringWriter aSW = new StringWriter ();
+        final JFormatter f = aFormatters.acquire (aSW);
+        f.write (c);
+        f.close ();
+        // Writing to memory counts as printing
+        final RenderedClass ret = new RenderedClass (aSW.toString (),
+                                                     f.getCollectNanos (),
+                                                     f.getPrintNanos () + f.getWriteNanos (),
+                                                     f.getImportCount ());
+        aFormatters.release (f);
+        return ret;
+      }
+    });
+    aExecutor.execute (aTask);
+    return aTask;
+  }
+
+  /**
+   * Write a class of this package from the result of
+   * {@link #_scheduleClass(Executor, JDefinedClass, FormatterPool)}. Blocks
+   * until the
+   * formatting is done.
+   */
+  void _writeRenderedClass (@Nonnull final AbstractCodeWriter src,
+                            @Nonnull final JDefinedClass c,
+                            @Nonnull final Future <RenderedClass> aRenderedClass,
+                            @Nullable final JCodeModelBuildRecorder aRecorder) throws IOException
+  {
+    final RenderedClass aRendered = _getRenderedClass (aRenderedClass);
+    final long nWriteStart = System.nanoTime ();
+    final Writer w = new BufferedWriter (src.openSource (this, c.name () + ".java"));
+    try
+    {
+      w.write (aRendered.m_sSource);
+    }
+    finally
+    {
+      w.close ();
+    }
+    if (aRecorder != null)
+      aRecorder.onClassBuilt (c,
+                              aRendered.m_nCollectNanos,
+                              aRendered.m_nPrintNanos,
+                              System.nanoTime () - nWriteStart,
+                              aRendered.m_sSource.length (),
+                              aRendered.m_nImports);
+  }
 
-      final JFormatter f = _createJavaSourceFileWriter (src, c.name ());
-      f.write (c);
-      f.close ();
+  @Nonnull
+  private static RenderedClass _getRenderedClass (@Nonnull final Future <RenderedClass> aFuture) throws IOException
+  {
+    try
+    {
+      return aFuture.get ();
     }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new InterruptedIOException ("Interrupted while waiting for a class to be formatted");
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      if (aCause instanceof Error)
+        throw (Error) aCause;
+      final IOException ioex = new IOException ("Failed to format class");
+      ioex.initCause (aCause);
+      throw ioex;
+    }
+  }
 
+  /**
+   * Write the package-info and all resources of this package and finally
+   * report the totals of the package.
+   */
+  void _buildPackageInfoAndResources (@Nonnull final AbstractCodeWriter src,
+                                      @Nonnull final AbstractCodeWriter res,
+                                      @Nullable final JCodeModelBuildRecorder aRecorder,
+                                      @Nonnull final FormatterPool aFormatters) throws IOException
+  {
     // write package annotations
     if (m_aAnnotations != null || m_aJavaDoc != null)
     {
-      final JFormatter f = _createJavaSourceFileWriter (src, "package-info");
+      final JFormatter f = _createJavaSourceFileWriter (src, "package-info", aFormatters);
 
       if (m_aJavaDoc != null)
         f.generable (m_aJavaDoc);
@@ -546,7 +775,8 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
       }
       f.declaration (this);
 
-      f.close ();
+      _close (f, "package-info");
+      aFormatters.release (f);
     }
 
     // write resources
@@ -563,6 +793,9 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
         os.close ();
       }
     }
+
+    if (aRecorder != null)
+      aRecorder.onPackageBuilt (this);
   }
 
   boolean buildsErrorTypeRefs ()
@@ -570,7 +803,7 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
     // check classes
     for (final JDefinedClass c : m_aClasses.values ())
     {
-      if (c.isHidden ())
+      if (c.isHidden () || c.isEmitted ())
       {
         // don't check this file
         continue;
@@ -587,7 +820,7 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
     int ret = 0;
     for (final JDefinedClass c : m_aClasses.values ())
     {
-      if (c.isHidden ())
+      if (c.isHidden () || c.isEmitted ())
       {
         // don't generate this file
         continue;
@@ -607,9 +840,22 @@ public class JPackage implements IJDeclaration, IJGenerable, IJClassContainer, I
   }
 
   @Nonnull
-  private JFormatter _createJavaSourceFileWriter (@Nonnull final AbstractCodeWriter src, @Nonnull final String className) throws IOException
+  private JFormatter _createJavaSourceFileWriter (@Nonnull final AbstractCodeWriter src,
+                                                  @Nonnull final String className,
+                                                  @Nonnull final FormatterPool aFormatters) throws IOException
   {
     final Writer bw = new BufferedWriter (src.openSource (this, className + ".java"));
-    return new JFormatter (new PrintWriter (bw));
+    return aFormatters.acquire (bw);
+  }
+
+  /**
+   * Close the formatter of a source file and report write errors, which the
+   * formatter itself does not throw.
+   */
+  private void _close (@Nonnull final JFormatter f, @Nonnull final String className) throws IOException
+  {
+    f.close ();
+    if (f.checkError ())
+      throw new IOException ("Failed to write " + className + ".java in package '" + m_sName + "'");
   }
 }
@@ -51,7 +51,7 @@ public class JReturn implements IJStatement
   /**
    * {@link IJExpression} to return; may be null.
    */
-  private final IJExpression _expr;
+  private IJExpression _expr;
 
   /**
    * JReturn constructor
@@ -70,6 +70,18 @@ public class JReturn implements IJStatement
     return _expr;
   }
 
+  /**
+   * Change the returned expression.
+   *
+   * @param expr
+   *        The new expression. May be <code>null</code> for a <code>void</code>
+   *        return.
+   */
+  public void expr (@Nullable final IJExpression expr)
+  {
+    _expr = expr;
+  }
+
   public void state (@Nonnull final JFormatter f)
   {
     f.print ("return");
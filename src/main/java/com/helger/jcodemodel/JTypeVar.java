@@ -99,6 +99,7 @@ public class JTypeVar extends AbstractJClass implements IJDeclaration
       throw new IllegalArgumentException ("bound may not be null");
 
     m_aBounds.add (bound);
+    owner ()._invalidateBaseClasses ();
     return this;
   }
 
@@ -118,6 +118,16 @@ public class JVar extends AbstractJExpressionAssignmentTargetImpl implements IJD
     return this;
   }
 
+  /**
+   * @return The expression this variable is initialized to. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public IJExpression init ()
+  {
+    return m_aInitExpr;
+  }
+
   /**
    * Get the name of this variable
    *
@@ -137,6 +147,8 @@ public class JVar extends AbstractJExpressionAssignmentTargetImpl implements IJD
     if (!JJavaName.isJavaIdentifier (name))
       throw new IllegalArgumentException ("Illegal variable name '" + name + "'");
     m_sName = name;
+    // The name is part of the hash code of field references
+    onExpressionModified ();
   }
 
   /**
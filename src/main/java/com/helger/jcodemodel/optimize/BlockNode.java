@@ -41,7 +41,9 @@
 package com.helger.jcodemodel.optimize;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.helger.jcodemodel.JBlock;
 
@@ -56,6 +58,7 @@ final class BlockNode implements Comparable <BlockNode>
   private final BlockNode _parent;
   private final int _index;
   private List <BlockNode> _children;
+  private Map <Object, Integer> _statementIndices;
 
   private BlockNode (final JBlock block, final BlockNode parent, final int index)
   {
@@ -79,6 +82,25 @@ final class BlockNode implements Comparable <BlockNode>
     return new BlockNode (this, block);
   }
 
+  /**
+   * @param statement
+   *        An element of the block
+   * @return The position of the element within the block, as of the first
+   *         call of this method.
+   */
+  int statementIndex (final Object statement)
+  {
+    if (_statementIndices == null)
+    {
+      final List <Object> contents = _block.getContents ();
+      _statementIndices = new IdentityHashMap <Object, Integer> (contents.size ());
+      for (int i = 0; i < contents.size (); i++)
+        _statementIndices.put (contents.get (i), Integer.valueOf (i));
+    }
+    final Integer index = _statementIndices.get (statement);
+    return index != null ? index.intValue () : -1;
+  }
+
   public int compareTo (final BlockNode o)
   {
     if (this == o)
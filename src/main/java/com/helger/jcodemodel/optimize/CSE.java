@@ -46,11 +46,14 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.helger.jcodemodel.AbstractJExpressionImpl;
 import com.helger.jcodemodel.AbstractJType;
 import com.helger.jcodemodel.IJAssignmentTarget;
 import com.helger.jcodemodel.IJExpression;
@@ -81,6 +84,13 @@ import com.helger.jcodemodel.JVar;
  * {@code expressionFilter} parameter of
  * {@link #optimize(JBlock, ExpressionFilter)} method).
  * <p>
+ * Alternatively a {@link PurityModel} describes which methods are free of side
+ * effects, see {@link #optimize(JBlock, PurityModel)}. Then only invocations of
+ * pure and read-only methods are eliminated, and field reads, array element
+ * reads and read-only invocations are not reused across invocations of
+ * impure methods. Read-only invocations are also not reused across writes to
+ * fields or array elements.
+ * <p>
  * I know theory of compiler optimizations a bit, classic PRE (partial
  * redundancy elimination) algorithm, but decided that it would be simplier to
  * implement custom utility for the needs, even that to adapt the code model for
@@ -90,7 +100,10 @@ import com.helger.jcodemodel.JVar;
  * myself.
  * <p>
  * Algorithm is scope-based, unlike PRE which is control-flow based (account
- * branching and unconditional jumps).
+ * branching and unconditional jumps). Each scope has its own hash table of
+ * available expressions, and the expressions are indexed by the variables they
+ * read, so the running time is about linear in the size of the block times the
+ * loop nesting depth.
  * <p>
  * Algorithm could produce code that doesn't compile (because it doesn't track
  * taken variable names, and even couldn't do that, because there could be
@@ -101,6 +114,7 @@ import com.helger.jcodemodel.JVar;
  * @author Roman Leventov &lt;leventov@ya.ru&gt;
  * @see #optimize(JBlock)
  * @see #optimize(JBlock, ExpressionFilter)
+ * @see #optimize(JBlock, PurityModel)
  */
 public final class CSE
 {
@@ -121,56 +135,114 @@ public final class CSE
 
   public static void optimize (final JBlock block, final ExpressionFilter filter)
   {
-    final CSE cse = new CSE (filter, new ArrayList <ExpressionState> (), block);
-    cse.extractSubExpressions (cse._outContext);
-    final List <ExpressionState> sortedSubExpressions = sortSubExpressions (cse._commonSubExpressions);
-    final Map <String, Integer> nameCounts = new HashMap <String, Integer> ();
-    for (final ExpressionState state : sortedSubExpressions)
+    optimize (block, filter, null);
+  }
+
+  /**
+   * Eliminate common field reads, array element reads and invocations of
+   * methods which are pure or read-only according to the passed model.
+   *
+   * @param block
+   *        The block to optimize
+   * @param purityModel
+   *        Side effect model of the invoked methods
+   */
+  public static void optimize (final JBlock block, final PurityModel purityModel)
+  {
+    optimize (block, purityModel, purityModel);
+  }
+
+  /**
+   * @param block
+   *        The block to optimize
+   * @param filter
+   *        Selects the expressions to eliminate
+   * @param purityModel
+   *        Side effect model of the invoked methods, which invalidates the
+   *        selected expressions on impure invocations. May be
+   *        <code>null</code> to only invalidate on assignments.
+   */
+  public static void optimize (final JBlock block, final ExpressionFilter filter, final PurityModel purityModel)
+  {
+    AbstractJExpressionImpl.beginHashCodeCaching ();
+    try
     {
-      final ExpressionState definitionBase = state.definitionBase ();
-      final JBlock definitionBlock = definitionBase._definitionBlock._block;
-      final IJExpression expr = state._expression;
-      final String basicExprName = expr.expressionName ();
-      String exprName = basicExprName;
-      Integer nameCount = nameCounts.get (exprName);
-      if (nameCount != null)
-      {
-        nameCount = Integer.valueOf (nameCount.intValue () + 1);
-        exprName += nameCount;
-      }
-      else
-      {
-        nameCount = Integer.valueOf (1);
-      }
-      final JVar var = new JVar (JMods.forVar (JMod.FINAL), expr.expressionType (), exprName, expr);
-      if (expr instanceof JFieldRef)
-      {
-        ((JFieldRef) expr).explicitThis (true);
-      }
-      final boolean anyUpdated = state.forAllSites (new ExpressionCallback ()
+      final CSE cse = new CSE (filter, purityModel, new ArrayList <ExpressionState> (), block);
+      cse.extractSubExpressions (cse._outContext);
+      final List <ExpressionState> sortedSubExpressions = sortSubExpressions (cse._commonSubExpressions);
+      final Map <String, Integer> nameCounts = new HashMap <String, Integer> ();
+      // Variables are inserted per block in one pass after all are created
+      final Map <JBlock, Map <Object, List <JVar>>> insertions = new IdentityHashMap <JBlock, Map <Object, List <JVar>>> ();
+      for (final ExpressionState state : sortedSubExpressions)
       {
-        public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+        final ExpressionState definitionBase = state.definitionBase ();
+        final JBlock definitionBlock = definitionBase._definitionBlock._block;
+        final IJExpression expr = state._expression;
+        final String basicExprName = expr.expressionName ();
+        // no variable can be declared, e.g. for a[0]
+        if (basicExprName == null || expr.expressionType () == null)
+          continue;
+        String exprName = basicExprName;
+        Integer nameCount = nameCounts.get (exprName);
+        if (nameCount != null)
         {
-          // do nothing
-          return true;
+          nameCount = Integer.valueOf (nameCount.intValue () + 1);
+          exprName += nameCount;
         }
-
-        public boolean visitExpression (final IJExpression expr2, final ExpressionAccessor accessor)
+        else
+        {
+          nameCount = Integer.valueOf (1);
+        }
+        final JVar var = new JVar (JMods.forVar (JMod.FINAL), expr.expressionType (), exprName, expr);
+        if (expr instanceof JFieldRef)
+        {
+          ((JFieldRef) expr).explicitThis (true);
+        }
+        final boolean anyUpdated = state.forAllSites (new ExpressionCallback ()
         {
-          if (accessor.get ().equals (expr2))
+          public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
           {
-            accessor.set (var);
+            // do nothing
             return true;
           }
-          return false;
+
+          public boolean visitExpression (final IJExpression expr2, final ExpressionAccessor accessor)
+          {
+            if (accessor.get ().equals (expr2))
+            {
+              accessor.set (var);
+              return true;
+            }
+            return false;
+          }
+        });
+        if (anyUpdated)
+        {
+          nameCounts.put (basicExprName, nameCount);
+          Map <Object, List <JVar>> blockInsertions = insertions.get (definitionBlock);
+          if (blockInsertions == null)
+          {
+            blockInsertions = new IdentityHashMap <Object, List <JVar>> ();
+            insertions.put (definitionBlock, blockInsertions);
+          }
+          List <JVar> vars = blockInsertions.get (definitionBase._definitionBefore);
+          if (vars == null)
+          {
+            vars = new ArrayList <JVar> (2);
+            blockInsertions.put (definitionBase._definitionBefore, vars);
+          }
+          vars.add (var);
         }
-      });
-      if (anyUpdated)
+      }
+      for (final Map.Entry <JBlock, Map <Object, List <JVar>>> entry : insertions.entrySet ())
       {
-        nameCounts.put (basicExprName, nameCount);
-        definitionBlock.insertBefore (var, definitionBase._definitionBefore);
+        entry.getKey ().insertBefore (entry.getValue ());
       }
     }
+    finally
+    {
+      AbstractJExpressionImpl.endHashCodeCaching ();
+    }
   }
 
   private static List <ExpressionState> sortSubExpressions (final Collection <ExpressionState> commonSubExpressions)
@@ -214,19 +286,9 @@ public final class CSE
         cmp = block1.compareTo (block2);
         if (cmp != 0)
           return cmp;
-        final List <Object> statements = block1._block.getContents ();
-        final Object def1Before = o1.getKey ()._definitionBefore;
-        final Object def2Before = o2.getKey ()._definitionBefore;
-        if (def1Before == def2Before)
-          return 0;
-        for (final Object statement : statements)
-        {
-          if (statement == def1Before)
-            return -1;
-          if (statement == def2Before)
-            return 1;
-        }
-        return 0;
+        final int def1Before = block1.statementIndex (o1.getKey ()._definitionBefore);
+        final int def2Before = block1.statementIndex (o2.getKey ()._definitionBefore);
+        return def1Before < def2Before ? -1 : def1Before == def2Before ? 0 : 1;
       }
     });
     final List <ExpressionState> sortedSubExpressions = new ArrayList <ExpressionState> (rootsAsList.size ());
@@ -238,26 +300,66 @@ public final class CSE
   }
 
   private final ExpressionFilter _filter;
+  private final PurityModel _purityModel;
   private final Collection <ExpressionState> _commonSubExpressions;
   final BlockNode _block;
-  private Context _outContext = new Context ();
-  private Context _currentContext = new Context ();
+  /**
+   * Only collect the modifications made by the block, see
+   * {@link #processLoop(Loop)}
+   */
+  private final boolean _scanOnly;
+  private final Context _outContext = new Context ();
+  private final Context _currentContext = new Context ();
+  /**
+   * States of the current context by the assignment targets they read, so
+   * that an assignment only visits the states it invalidates
+   */
+  private final Map <IJAssignmentTarget, List <ExpressionState>> _dependentStates = new HashMap <IJAssignmentTarget, List <ExpressionState>> ();
+  /**
+   * States of the current context which read fields or array elements, but
+   * invoke no read-only method
+   */
+  private final List <ExpressionState> _fieldReadingStates = new ArrayList <ExpressionState> ();
+  /**
+   * States of the current context which invoke read-only methods
+   */
+  private final List <ExpressionState> _invokingStates = new ArrayList <ExpressionState> ();
   private final Set <IJAssignmentTarget> _modified = new HashSet <IJAssignmentTarget> ();
+  /**
+   * A field or array element was written in this block
+   */
+  private boolean _memoryWritten;
+  /**
+   * An impure method was invoked in this block
+   */
+  private boolean _impureInvoked;
 
-  CSE (final ExpressionFilter filter, final Collection <ExpressionState> commonSubExpressions, final JBlock block)
+  CSE (final ExpressionFilter filter,
+       final PurityModel purityModel,
+       final Collection <ExpressionState> commonSubExpressions,
+       final JBlock block)
   {
     _filter = filter;
+    _purityModel = purityModel;
     _commonSubExpressions = commonSubExpressions;
     _block = BlockNode.root (block);
+    _scanOnly = false;
     optimize ();
   }
 
   CSE (final CSE parent, final JBlock block)
+  {
+    this (parent, parent._block.child (block), parent._scanOnly);
+    optimize ();
+  }
+
+  private CSE (final CSE parent, final BlockNode block, final boolean scanOnly)
   {
     _filter = parent._filter;
+    _purityModel = parent._purityModel;
     _commonSubExpressions = parent._commonSubExpressions;
-    _block = parent._block.child (block);
-    optimize ();
+    _block = block;
+    _scanOnly = scanOnly;
   }
 
   private void optimize ()
@@ -287,19 +389,30 @@ public final class CSE
     }
     extractSubExpressions (_currentContext);
     _currentContext.clear ();
+    _dependentStates.clear ();
+    _fieldReadingStates.clear ();
+    _invokingStates.clear ();
   }
 
   private void processLoop (final Loop loop)
   {
     processExpressionContainer (loop.statementsExecutedOnce (), _block, loop);
 
-    // this run to gather modified
-    final CSE loopCSE = new CSE (this, loop.body ());
-    loopCSE.processExpressionContainer (loop.statementsExecutedOnEachIteration (), _block, loop);
+    // Expressions are only loop invariant if no iteration modifies them, so
+    // gather the modifications of the whole loop first. This pass creates no
+    // states, so a statement is scanned once per enclosing loop, instead of
+    // being optimized twice per enclosing loop.
+    final CSE modifications = new CSE (this, BlockNode.root (loop.body ()), true);
+    modifications.optimize ();
+    modifications.processExpressionContainer (loop.statementsExecutedOnEachIteration (), _block, loop);
+    if (_scanOnly)
+    {
+      applySubModifications (modifications);
+      return;
+    }
 
-    loopCSE._outContext = new Context ();
-    loopCSE._currentContext = new Context ();
-    // this run to gather outContext with respect to full modified
+    final CSE loopCSE = new CSE (this, _block.child (loop.body ()), false);
+    loopCSE.applySubModifications (modifications);
     loopCSE.optimize ();
     loopCSE.processExpressionContainer (loop.statementsExecutedOnEachIteration (), _block, loop);
 
@@ -385,13 +498,19 @@ public final class CSE
     {
       invalidate (modified);
     }
+    if (subCSE._impureInvoked)
+      invalidateMemory (true);
+    else
+      if (subCSE._memoryWritten)
+        invalidateMemory (false);
   }
 
   private void applyState (final Object blockElement, final ExpressionState state, final boolean mustBeDefinedHere)
   {
-    if (modified (state._expression, _modified))
+    if (modified (state._expression))
     {
-      _currentContext.add (state, _block, blockElement, mustBeDefinedHere);
+      if (_currentContext.add (state, _block, blockElement, mustBeDefinedHere))
+        indexCurrentState (_currentContext.get (state._expression));
     }
     else
     {
@@ -403,21 +522,49 @@ public final class CSE
                                            final BlockNode block,
                                            final Object currentStatement)
   {
+    // Impure invocations, whose arguments are still being visited, with the
+    // number of remaining sub-expressions. The call itself happens after the
+    // last of them. Sub-expressions are counted rather than collected, because
+    // the same expression object may occur several times.
+    final LinkedList <int []> pendingInvocations = new LinkedList <int []> ();
     exprContainer.forAllSubExpressions (new ExpressionCallback ()
     {
+      private void completeInvocations ()
+      {
+        while (!pendingInvocations.isEmpty () && pendingInvocations.getLast ()[0] == 0)
+        {
+          pendingInvocations.removeLast ();
+          invalidateMemory (true);
+        }
+        for (final int [] remaining : pendingInvocations)
+          remaining[0]--;
+      }
+
       public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
       {
+        completeInvocations ();
         invalidate (assignmentTarget);
+        if (_purityModel != null &&
+            (assignmentTarget instanceof JFieldRef || assignmentTarget instanceof JArrayCompRef))
+        {
+          invalidateMemory (false);
+        }
         return true;
       }
 
       public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
       {
-        if (_filter.test (expr))
+        completeInvocations ();
+        if (_purityModel != null && _purityModel.isImpureInvocation (expr))
+        {
+          pendingInvocations.add (new int [] { countSubExpressions (expr) });
+        }
+        if (!_scanOnly && _filter.test (expr))
         {
-          if (modified (expr, _modified))
+          if (modified (expr))
           {
-            _currentContext.add (expr, block, currentStatement, accessor);
+            if (_currentContext.add (expr, block, currentStatement, accessor))
+              indexCurrentState (_currentContext.get (expr));
           }
           else
           {
@@ -427,22 +574,137 @@ public final class CSE
         return true;
       }
     });
+    while (!pendingInvocations.isEmpty ())
+    {
+      pendingInvocations.removeLast ();
+      invalidateMemory (true);
+    }
+    // The statement itself is not visited
+    if (_purityModel != null &&
+        exprContainer instanceof IJExpression &&
+        _purityModel.isImpureInvocation ((IJExpression) exprContainer))
+    {
+      invalidateMemory (true);
+    }
+  }
+
+  private static int countSubExpressions (final IJExpression expr)
+  {
+    final int [] ret = { 0 };
+    expr.forAllSubExpressions (new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        ret[0]++;
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr2, final ExpressionAccessor accessor)
+      {
+        ret[0]++;
+        return true;
+      }
+    });
+    return ret[0];
+  }
+
+  /**
+   * Invalidate expressions which read memory, after an impure invocation or a
+   * write to a field or array element.
+   *
+   * @param includeFieldReads
+   *        <code>true</code> after an impure invocation, which could have
+   *        written any field or array element
+   */
+  private void invalidateMemory (final boolean includeFieldReads)
+  {
+    _memoryWritten = true;
+    for (final ExpressionState state : _invokingStates)
+      closeState (state);
+    _invokingStates.clear ();
+    if (includeFieldReads)
+    {
+      _impureInvoked = true;
+      for (final ExpressionState state : _fieldReadingStates)
+        closeState (state);
+      _fieldReadingStates.clear ();
+    }
+  }
+
+  private boolean modified (final IJExpression expr)
+  {
+    if (modified (expr, _modified))
+      return true;
+    if (_purityModel == null || !_memoryWritten)
+      return false;
+    return _purityModel.readsMutableState (expr, _impureInvoked);
   }
 
   private void invalidate (final IJAssignmentTarget assignmentTarget)
   {
     _modified.add (assignmentTarget);
-    final Set <IJAssignmentTarget> assignmentTargetAsSingletonSet = Collections.singleton (assignmentTarget);
-    for (final Iterator <ExpressionState> iterator = _currentContext.values ().iterator (); iterator.hasNext ();)
+    final List <ExpressionState> dependentStates = _dependentStates.remove (assignmentTarget);
+    if (dependentStates != null)
     {
-      final ExpressionState state = iterator.next ();
-      if (modified (state._expression, assignmentTargetAsSingletonSet))
+      for (final ExpressionState state : dependentStates)
+        closeState (state);
+    }
+  }
+
+  /**
+   * Remove a state from the current context, if it is still there. The
+   * indices are not updated on removal, so they may contain states which were
+   * already closed, or replaced by a new state for the same expression.
+   */
+  private void closeState (final ExpressionState state)
+  {
+    if (_currentContext.get (state._expression) == state)
+    {
+      _currentContext.remove (state._expression);
+      if (state.size () > 1)
+        _commonSubExpressions.add (state);
+    }
+  }
+
+  private void indexCurrentState (final ExpressionState state)
+  {
+    final IJExpression expr = state._expression;
+    if (expr instanceof IJAssignmentTarget)
+      addDependentState ((IJAssignmentTarget) expr, state);
+    expr.forAllSubExpressions (new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
       {
-        iterator.remove ();
-        if (state.size () > 1)
-          _commonSubExpressions.add (state);
+        // do nothing
+        return true;
       }
+
+      public boolean visitExpression (final IJExpression expr2, final ExpressionAccessor accessor)
+      {
+        if (expr2 instanceof IJAssignmentTarget)
+          addDependentState ((IJAssignmentTarget) expr2, state);
+        return true;
+      }
+    });
+    if (_purityModel != null)
+    {
+      if (_purityModel.readsMutableState (expr, false))
+        _invokingStates.add (state);
+      else
+        if (_purityModel.readsMutableState (expr, true))
+          _fieldReadingStates.add (state);
+    }
+  }
+
+  private void addDependentState (final IJAssignmentTarget assignmentTarget, final ExpressionState state)
+  {
+    List <ExpressionState> states = _dependentStates.get (assignmentTarget);
+    if (states == null)
+    {
+      states = new ArrayList <ExpressionState> (2);
+      _dependentStates.put (assignmentTarget, states);
     }
+    states.add (state);
   }
 
   static boolean modified (final IJExpression expr, final Set <IJAssignmentTarget> modified)
@@ -0,0 +1,650 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.helger.jcodemodel.IJAssignmentTarget;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.IJGenerable;
+import com.helger.jcodemodel.JAtom;
+import com.helger.jcodemodel.JAtomDouble;
+import com.helger.jcodemodel.JAtomFloat;
+import com.helger.jcodemodel.JAtomInt;
+import com.helger.jcodemodel.JAtomLong;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCase;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JExprStatementWrapper;
+import com.helger.jcodemodel.JOp;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JOpBinary;
+import com.helger.jcodemodel.JOpTernary;
+import com.helger.jcodemodel.JOpUnary;
+import com.helger.jcodemodel.JOpUnaryTight;
+import com.helger.jcodemodel.JReturn;
+import com.helger.jcodemodel.JStringLiteral;
+import com.helger.jcodemodel.JSwitch;
+import com.helger.jcodemodel.JSynchronizedBlock;
+import com.helger.jcodemodel.JThrow;
+import com.helger.jcodemodel.JVar;
+
+/**
+ * Constant folding for Java <i>source</i> code.
+ * <p>
+ * Unary, binary and ternary operations whose operands are all literals are
+ * replaced with the literal of their result, for example <code>3 + 4</code>
+ * with <code>7</code> or <code>"a" + 1</code> with <code>"a1"</code>. The
+ * results are computed with the rules of the Java language (overflow, shift
+ * distances, binary numeric promotion and string conversion), so the generated
+ * code behaves exactly as before. Operations that throw at runtime, like an
+ * integer division by zero, are left alone. Additionally <code>&amp;&amp;</code>
+ * and <code>||</code> are reduced if one operand is a literal and dropping it
+ * does not skip the evaluation of the other operand.
+ * <p>
+ * Negative results are written as unary minus of the positive literal.
+ * Results of <code>Integer.MIN_VALUE</code> and <code>Long.MIN_VALUE</code>
+ * have no such form and are not folded.
+ * <p>
+ * Char literals are not evaluated. The condition of an <code>if</code>
+ * statement is only folded below its root, because a constant condition
+ * changes how the statement is generated.
+ *
+ * @see #optimize(JBlock)
+ * @see CSE
+ */
+public final class ConstantFolding
+{
+  private static final int KIND_INT = 0;
+  private static final int KIND_LONG = 1;
+  private static final int KIND_FLOAT = 2;
+  private static final int KIND_DOUBLE = 3;
+
+  /** Marker value for expressions that are not constant */
+  private static final Object NOT_CONSTANT = new Object ();
+
+  public static void optimize (@Nonnull final JBlock block)
+  {
+    new ConstantFolding ().foldBlock (block);
+  }
+
+  private static boolean isLiteral (final IJExpression expr)
+  {
+    return expr instanceof JAtomInt ||
+           expr instanceof JAtomLong ||
+           expr instanceof JAtomFloat ||
+           expr instanceof JAtomDouble ||
+           expr instanceof JStringLiteral ||
+           expr == JExpr.TRUE ||
+           expr == JExpr.FALSE ||
+           isNegatedLiteral (expr);
+  }
+
+  /**
+   * @return <code>true</code> for the form {@link #literal(Object)} uses for
+   *         negative numbers
+   */
+  private static boolean isNegatedLiteral (final IJExpression expr)
+  {
+    if (expr.getClass () != JOpUnary.class || !((JOpUnary) expr).op ().equals ("-"))
+      return false;
+    final IJExpression operand = ((JOpUnary) expr).expr ();
+    return operand instanceof JAtomInt ||
+           operand instanceof JAtomLong ||
+           operand instanceof JAtomFloat ||
+           operand instanceof JAtomDouble;
+  }
+
+  /**
+   * Negative numbers are created as unary minus of the positive literal,
+   * because the formatter prints e.g. <code>x - -3</code> as
+   * <code>x --3</code>.
+   *
+   * @return The literal expression, or <code>null</code> if the value can't be
+   *         written as a literal
+   */
+  private static IJExpression literal (final Object value)
+  {
+    if (value instanceof Integer)
+    {
+      final int v = ((Integer) value).intValue ();
+      if (v >= 0)
+        return JExpr.lit (v);
+      // -Integer.MIN_VALUE is not an int
+      return v == Integer.MIN_VALUE ? null : JOp.minus (JExpr.lit (-v));
+    }
+    if (value instanceof Long)
+    {
+      final long v = ((Long) value).longValue ();
+      if (v >= 0)
+        return JExpr.lit (v);
+      return v == Long.MIN_VALUE ? null : JOp.minus (JExpr.lit (-v));
+    }
+    if (value instanceof Float)
+    {
+      final float v = ((Float) value).floatValue ();
+      // sign bit, to catch -0.0f
+      if (Float.floatToIntBits (v) >= 0 || Float.isNaN (v) || Float.isInfinite (v))
+        return JExpr.lit (v);
+      return JOp.minus (JExpr.lit (-v));
+    }
+    if (value instanceof Double)
+    {
+      final double v = ((Double) value).doubleValue ();
+      if (Double.doubleToLongBits (v) >= 0 || Double.isNaN (v) || Double.isInfinite (v))
+        return JExpr.lit (v);
+      return JOp.minus (JExpr.lit (-v));
+    }
+    if (value instanceof Boolean)
+      return JExpr.lit (((Boolean) value).booleanValue ());
+    return JExpr.lit ((String) value);
+  }
+
+  private static int kind (final Object value)
+  {
+    if (value instanceof Integer)
+      return KIND_INT;
+    if (value instanceof Long)
+      return KIND_LONG;
+    if (value instanceof Float)
+      return KIND_FLOAT;
+    return KIND_DOUBLE;
+  }
+
+  private static Object unary (final String op, final Object value)
+  {
+    if (op.equals ("!"))
+      return value instanceof Boolean ? Boolean.valueOf (!((Boolean) value).booleanValue ()) : NOT_CONSTANT;
+    if (!(value instanceof Number))
+      return NOT_CONSTANT;
+    final Number n = (Number) value;
+    if (op.equals ("-"))
+    {
+      switch (kind (value))
+      {
+        case KIND_INT:
+          return Integer.valueOf (-n.intValue ());
+        case KIND_LONG:
+          return Long.valueOf (-n.longValue ());
+        case KIND_FLOAT:
+          return Float.valueOf (-n.floatValue ());
+        default:
+          return Double.valueOf (-n.doubleValue ());
+      }
+    }
+    if (op.equals ("~"))
+    {
+      if (value instanceof Integer)
+        return Integer.valueOf (~n.intValue ());
+      if (value instanceof Long)
+        return Long.valueOf (~n.longValue ());
+    }
+    return NOT_CONSTANT;
+  }
+
+  private static Object binary (final String op, final Object left, final Object right)
+  {
+    if (op.equals ("+") && (left instanceof String || right instanceof String))
+      return String.valueOf (left) + String.valueOf (right);
+    if (left instanceof Boolean && right instanceof Boolean)
+    {
+      final boolean l = ((Boolean) left).booleanValue ();
+      final boolean r = ((Boolean) right).booleanValue ();
+      if (op.equals ("&&") || op.equals ("&"))
+        return Boolean.valueOf (l & r);
+      if (op.equals ("||") || op.equals ("|"))
+        return Boolean.valueOf (l | r);
+      if (op.equals ("^") || op.equals ("!="))
+        return Boolean.valueOf (l ^ r);
+      if (op.equals ("=="))
+        return Boolean.valueOf (l == r);
+      return NOT_CONSTANT;
+    }
+    if (!(left instanceof Number) || !(right instanceof Number))
+      return NOT_CONSTANT;
+    final Number l = (Number) left;
+    final Number r = (Number) right;
+    if (op.equals ("<<") || op.equals (">>") || op.equals (">>>"))
+      return shift (op, l, r);
+    switch (Math.max (kind (left), kind (right)))
+    {
+      case KIND_INT:
+        return intOp (op, l.intValue (), r.intValue ());
+      case KIND_LONG:
+        return longOp (op, l.longValue (), r.longValue ());
+      case KIND_FLOAT:
+        return floatOp (op, l.floatValue (), r.floatValue ());
+      default:
+        return doubleOp (op, l.doubleValue (), r.doubleValue ());
+    }
+  }
+
+  private static Object shift (final String op, final Number left, final Number right)
+  {
+    final int leftKind = kind (left);
+    if (leftKind > KIND_LONG || kind (right) > KIND_LONG)
+      return NOT_CONSTANT;
+    // only the lowest 5 (int) or 6 (long) bits of the distance are used
+    final int distance = right.intValue ();
+    if (leftKind == KIND_INT)
+    {
+      final int l = left.intValue ();
+      return Integer.valueOf (op.equals ("<<") ? l << distance : op.equals (">>") ? l >> distance : l >>> distance);
+    }
+    final long l = left.longValue ();
+    return Long.valueOf (op.equals ("<<") ? l << distance : op.equals (">>") ? l >> distance : l >>> distance);
+  }
+
+  private static Object intOp (final String op, final int l, final int r)
+  {
+    if (op.equals ("+"))
+      return Integer.valueOf (l + r);
+    if (op.equals ("-"))
+      return Integer.valueOf (l - r);
+    if (op.equals ("*"))
+      return Integer.valueOf (l * r);
+    if (op.equals ("/"))
+      return r == 0 ? NOT_CONSTANT : Integer.valueOf (l / r);
+    if (op.equals ("%"))
+      return r == 0 ? NOT_CONSTANT : Integer.valueOf (l % r);
+    if (op.equals ("&"))
+      return Integer.valueOf (l & r);
+    if (op.equals ("|"))
+      return Integer.valueOf (l | r);
+    if (op.equals ("^"))
+      return Integer.valueOf (l ^ r);
+    return compare (op, l < r, l == r, l > r);
+  }
+
+  private static Object longOp (final String op, final long l, final long r)
+  {
+    if (op.equals ("+"))
+      return Long.valueOf (l + r);
+    if (op.equals ("-"))
+      return Long.valueOf (l - r);
+    if (op.equals ("*"))
+      return Long.valueOf (l * r);
+    if (op.equals ("/"))
+      return r == 0 ? NOT_CONSTANT : Long.valueOf (l / r);
+    if (op.equals ("%"))
+      return r == 0 ? NOT_CONSTANT : Long.valueOf (l % r);
+    if (op.equals ("&"))
+      return Long.valueOf (l & r);
+    if (op.equals ("|"))
+      return Long.valueOf (l | r);
+    if (op.equals ("^"))
+      return Long.valueOf (l ^ r);
+    return compare (op, l < r, l == r, l > r);
+  }
+
+  private static Object floatOp (final String op, final float l, final float r)
+  {
+    if (op.equals ("+"))
+      return Float.valueOf (l + r);
+    if (op.equals ("-"))
+      return Float.valueOf (l - r);
+    if (op.equals ("*"))
+      return Float.valueOf (l * r);
+    if (op.equals ("/"))
+      return Float.valueOf (l / r);
+    if (op.equals ("%"))
+      return Float.valueOf (l % r);
+    return compare (op, l < r, l == r, l > r);
+  }
+
+  private static Object doubleOp (final String op, final double l, final double r)
+  {
+    if (op.equals ("+"))
+      return Double.valueOf (l + r);
+    if (op.equals ("-"))
+      return Double.valueOf (l - r);
+    if (op.equals ("*"))
+      return Double.valueOf (l * r);
+    if (op.equals ("/"))
+      return Double.valueOf (l / r);
+    if (op.equals ("%"))
+      return Double.valueOf (l % r);
+    return compare (op, l < r, l == r, l > r);
+  }
+
+  /**
+   * The three flags are passed separately, because all of them are
+   * <code>false</code> for NaN.
+   */
+  private static Object compare (final String op, final boolean less, final boolean equal, final boolean greater)
+  {
+    if (op.equals ("<"))
+      return Boolean.valueOf (less);
+    if (op.equals ("<="))
+      return Boolean.valueOf (less || equal);
+    if (op.equals (">"))
+      return Boolean.valueOf (greater);
+    if (op.equals (">="))
+      return Boolean.valueOf (greater || equal);
+    if (op.equals ("=="))
+      return Boolean.valueOf (equal);
+    if (op.equals ("!="))
+      return Boolean.valueOf (!equal);
+    return NOT_CONSTANT;
+  }
+
+  private static Object ternary (final Object condition, final Object ifTrue, final Object ifFalse)
+  {
+    if (!(condition instanceof Boolean))
+      return NOT_CONSTANT;
+    final Object value = ((Boolean) condition).booleanValue () ? ifTrue : ifFalse;
+    if (ifTrue instanceof Number && ifFalse instanceof Number)
+    {
+      // binary numeric promotion of both alternatives
+      switch (Math.max (kind (ifTrue), kind (ifFalse)))
+      {
+        case KIND_INT:
+          return value;
+        case KIND_LONG:
+          return Long.valueOf (((Number) value).longValue ());
+        case KIND_FLOAT:
+          return Float.valueOf (((Number) value).floatValue ());
+        default:
+          return Double.valueOf (((Number) value).doubleValue ());
+      }
+    }
+    // Otherwise the type of the conditional would change
+    if (ifTrue.getClass () != ifFalse.getClass ())
+      return NOT_CONSTANT;
+    return value;
+  }
+
+  private final Map <IJExpression, Object> _values = new IdentityHashMap <IJExpression, Object> ();
+
+  private final ExpressionCallback _callback = new ExpressionCallback ()
+  {
+    public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+    {
+      // do nothing
+      return true;
+    }
+
+    public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+    {
+      final IJExpression folded = fold (expr);
+      if (folded != expr)
+        accessor.set (folded);
+      return true;
+    }
+  };
+
+  private ConstantFolding ()
+  {}
+
+  private IJExpression fold (final IJExpression expr)
+  {
+    final Object value = evaluate (expr);
+    if (value != NOT_CONSTANT && !isLiteral (expr))
+    {
+      final IJExpression literal = literal (value);
+      if (literal != null)
+        return literal;
+    }
+    if (value != NOT_CONSTANT)
+      return expr;
+    if (expr instanceof JOpBinary)
+    {
+      final JOpBinary binary = (JOpBinary) expr;
+      final boolean and = binary.op ().equals ("&&");
+      if (and || binary.op ().equals ("||"))
+      {
+        // "true && x", "x && true", "false || x" and "x || false" are "x"
+        final Boolean neutral = Boolean.valueOf (and);
+        final IJExpression right = (IJExpression) binary.right ();
+        if (neutral.equals (evaluate (binary.left ())))
+          return right;
+        if (neutral.equals (evaluate (right)))
+          return binary.left ();
+      }
+    }
+    return expr;
+  }
+
+  private Object evaluate (final IJExpression expr)
+  {
+    Object value = _values.get (expr);
+    if (value == null)
+    {
+      value = calcValue (expr.unwrapped ());
+      _values.put (expr, value);
+    }
+    return value;
+  }
+
+  private Object calcValue (final IJExpression expr)
+  {
+    if (expr instanceof JAtomInt)
+      return Integer.valueOf (((JAtomInt) expr).what ());
+    if (expr instanceof JAtomLong)
+      return Long.valueOf (((JAtomLong) expr).what ());
+    if (expr instanceof JAtomFloat)
+      return Float.valueOf (((JAtomFloat) expr).what ());
+    if (expr instanceof JAtomDouble)
+      return Double.valueOf (((JAtomDouble) expr).what ());
+    if (expr instanceof JStringLiteral)
+      return ((JStringLiteral) expr).what ();
+    if (expr instanceof JAtom)
+    {
+      final String what = ((JAtom) expr).what ();
+      if (what.equals ("true"))
+        return Boolean.TRUE;
+      if (what.equals ("false"))
+        return Boolean.FALSE;
+      return NOT_CONSTANT;
+    }
+    if (expr instanceof JOpUnaryTight)
+      return NOT_CONSTANT;
+    if (expr instanceof JOpUnary)
+    {
+      final JOpUnary unary = (JOpUnary) expr;
+      final Object value = evaluate (unary.expr ());
+      return value == NOT_CONSTANT ? NOT_CONSTANT : unary (unary.op (), value);
+    }
+    if (expr instanceof JOpBinary)
+    {
+      final JOpBinary binary = (JOpBinary) expr;
+      final IJGenerable right = binary.right ();
+      if (!(right instanceof IJExpression))
+        return NOT_CONSTANT;
+      final Object leftValue = evaluate (binary.left ());
+      if (leftValue == NOT_CONSTANT)
+        return NOT_CONSTANT;
+      // short circuit: the right operand is never evaluated
+      if (binary.op ().equals ("&&") && Boolean.FALSE.equals (leftValue))
+        return Boolean.FALSE;
+      if (binary.op ().equals ("||") && Boolean.TRUE.equals (leftValue))
+        return Boolean.TRUE;
+      final Object rightValue = evaluate ((IJExpression) right);
+      return rightValue == NOT_CONSTANT ? NOT_CONSTANT : binary (binary.op (), leftValue, rightValue);
+    }
+    if (expr instanceof JOpTernary)
+    {
+      final JOpTernary ternary = (JOpTernary) expr;
+      final Object condition = evaluate (ternary.expr1 ());
+      final Object ifTrue = evaluate ((IJExpression) ternary.expr2 ());
+      final Object ifFalse = evaluate ((IJExpression) ternary.expr3 ());
+      if (condition == NOT_CONSTANT || ifTrue == NOT_CONSTANT || ifFalse == NOT_CONSTANT)
+        return NOT_CONSTANT;
+      return ternary (condition, ifTrue, ifFalse);
+    }
+    return NOT_CONSTANT;
+  }
+
+  private void foldRoot (final ExpressionAccessor accessor)
+  {
+    if (accessor.get () != null && _callback.visitExpression (accessor.get (), accessor))
+      accessor.get ().forAllSubExpressions (_callback);
+  }
+
+  private void foldVar (final JVar var)
+  {
+    foldRoot (new ExpressionAccessor ()
+    {
+      public void set (final IJExpression newExpression)
+      {
+        var.init (newExpression);
+      }
+
+      public IJExpression get ()
+      {
+        return var.init ();
+      }
+    });
+  }
+
+  private void foldBlock (final JBlock block)
+  {
+    for (final Object blockElement : block.getContents ())
+    {
+      if (blockElement instanceof JVar)
+      {
+        foldVar ((JVar) blockElement);
+      }
+      else
+        if (blockElement instanceof JExprStatementWrapper <?>)
+        {
+          ((JExprStatementWrapper <?>) blockElement).expr ().forAllSubExpressions (_callback);
+        }
+        else
+          if (blockElement instanceof ExpressionContainer)
+          {
+            ((ExpressionContainer) blockElement).forAllSubExpressions (_callback);
+          }
+          else
+            if (blockElement instanceof BranchingStatement)
+            {
+              ((BranchingStatement) blockElement).apply (new BranchingStatementVisitor ()
+              {
+                public void visit (final ExpressionContainer conditionalExpression)
+                {
+                  conditionalExpression.forAllSubExpressions (_callback);
+                }
+
+                public void visit (final JBlock subBlock)
+                {
+                  foldBlock (subBlock);
+                }
+
+                public void visit (final List <JBlock> branches)
+                {
+                  for (final JBlock branch : branches)
+                    foldBlock (branch);
+                }
+              });
+            }
+            else
+              if (blockElement instanceof Loop)
+              {
+                foldLoop ((Loop) blockElement);
+              }
+              else
+                if (blockElement instanceof JBlock)
+                {
+                  foldBlock ((JBlock) blockElement);
+                }
+                else
+                {
+                  foldOtherStatement (blockElement);
+                }
+    }
+  }
+
+  private void foldLoop (final Loop loop)
+  {
+    if (loop instanceof JForLoop)
+    {
+      for (final Object init : ((JForLoop) loop).inits ())
+        if (init instanceof JVar)
+          foldVar ((JVar) init);
+    }
+    loop.statementsExecutedOnce ().forAllSubExpressions (_callback);
+    loop.statementsExecutedOnEachIteration ().forAllSubExpressions (_callback);
+    foldBlock (loop.body ());
+  }
+
+  private void foldOtherStatement (final Object statement)
+  {
+    if (statement instanceof JReturn)
+    {
+      final JReturn aReturn = (JReturn) statement;
+      foldRoot (new ExpressionAccessor ()
+      {
+        public void set (final IJExpression newExpression)
+        {
+          aReturn.expr (newExpression);
+        }
+
+        public IJExpression get ()
+        {
+          return aReturn.expr ();
+        }
+      });
+    }
+    else
+      if (statement instanceof JThrow)
+      {
+        ((JThrow) statement).expr ().forAllSubExpressions (_callback);
+      }
+      else
+        if (statement instanceof JSwitch)
+        {
+          ((JSwitch) statement).test ().forAllSubExpressions (_callback);
+          for (final Iterator <JCase> it = ((JSwitch) statement).cases (); it.hasNext ();)
+            foldBlock (it.next ().body ());
+        }
+        else
+          if (statement instanceof JSynchronizedBlock)
+          {
+            ((JSynchronizedBlock) statement).expr ().forAllSubExpressions (_callback);
+            foldBlock (((JSynchronizedBlock) statement).body ());
+          }
+  }
+}
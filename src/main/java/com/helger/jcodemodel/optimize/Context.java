@@ -47,30 +47,34 @@ import java.util.HashMap;
 final class Context extends HashMap <IJExpression, ExpressionState>
 {
 
-  void add (IJExpression expression,
-            BlockNode definitionBlock,
-            Object definitionBefore,
-            ExpressionAccessor... accessors)
+  boolean add (IJExpression expression,
+               BlockNode definitionBlock,
+               Object definitionBefore,
+               ExpressionAccessor... accessors)
   {
     ExpressionState state = get (expression);
-    if (state == null)
+    boolean created = state == null;
+    if (created)
     {
       state = new ExpressionState (expression, definitionBlock, definitionBefore, false);
       put (expression, state);
     }
     state.addSite (accessors);
+    return created;
   }
 
-  void add (ExpressionState state, BlockNode definitionBlock, Object definitionBefore, boolean mustBeDefinedHere)
+  boolean add (ExpressionState state, BlockNode definitionBlock, Object definitionBefore, boolean mustBeDefinedHere)
   {
     IJExpression expression = state._expression;
     ExpressionState s = get (expression);
-    if (s == null)
+    boolean created = s == null;
+    if (created)
     {
       s = new ExpressionState (expression, definitionBlock, definitionBefore, mustBeDefinedHere);
       put (expression, s);
     }
     s.link (state);
+    return created;
   }
 
   public boolean addIfPresent (IJExpression expression, ExpressionAccessor... accessors)
@@ -0,0 +1,640 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.IJAssignmentTarget;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JArray;
+import com.helger.jcodemodel.JArrayCompRef;
+import com.helger.jcodemodel.JAssignment;
+import com.helger.jcodemodel.JAtom;
+import com.helger.jcodemodel.JAtomDouble;
+import com.helger.jcodemodel.JAtomFloat;
+import com.helger.jcodemodel.JAtomInt;
+import com.helger.jcodemodel.JAtomLong;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JBreak;
+import com.helger.jcodemodel.JCast;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JContinue;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JEnumConstant;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JExprStatementWrapper;
+import com.helger.jcodemodel.JFieldRef;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JLabel;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JOpBinary;
+import com.helger.jcodemodel.JOpTernary;
+import com.helger.jcodemodel.JOpUnary;
+import com.helger.jcodemodel.JOpUnaryTight;
+import com.helger.jcodemodel.JReturn;
+import com.helger.jcodemodel.JStringLiteral;
+import com.helger.jcodemodel.JSynchronizedBlock;
+import com.helger.jcodemodel.JThrow;
+import com.helger.jcodemodel.JVar;
+
+/**
+ * Dead code elimination for Java <i>source</i> code.
+ * <p>
+ * The following parts of a method body are removed, until nothing changes any
+ * more:
+ * <ul>
+ * <li>statements following a <code>return</code>, <code>throw</code>,
+ * <code>break</code> or <code>continue</code> in the same block, or following
+ * a block or an <code>if</code> statement all of whose branches end with one
+ * <li><code>if</code> statements with a literal <code>true</code> or
+ * <code>false</code> condition are replaced with the block of the branch that
+ * is taken
+ * <li>empty blocks, and <code>if</code> statements without <code>else</code>
+ * whose branch is empty and whose condition has no side effects
+ * <li>local variables that are never referenced and whose initializer has no
+ * side effects
+ * </ul>
+ * Conditions are only recognized as constant if they are literals, so
+ * {@link ConstantFolding} should be run first.
+ * <p>
+ * Variables are only removed if every expression and statement of the body is
+ * understood. Code that may reference variables in ways that can't be tracked,
+ * like direct statements, anonymous or local classes, lambdas and
+ * <code>switch</code> statements, disables this part of the optimization for
+ * the whole body. Variables referenced by name through {@link JExpr#ref(String)}
+ * are considered used.
+ *
+ * @see #optimize(JMethod)
+ * @see #optimize(JBlock)
+ */
+public final class DeadCodeElimination
+{
+  public static void optimize (@Nonnull final JMethod method)
+  {
+    optimize (method.body ());
+  }
+
+  public static void optimize (@Nonnull final JBlock block)
+  {
+    final DeadCodeElimination dce = new DeadCodeElimination ();
+    do
+    {
+      dce._changed = false;
+      dce.pruneBlock (block);
+      dce.removeUnusedVariables (block);
+    } while (dce._changed);
+  }
+
+  private static boolean isConstant (final IJExpression expr, final boolean value)
+  {
+    return expr instanceof JAtom && ((JAtom) expr).what ().equals (value ? "true" : "false");
+  }
+
+  private static boolean isPrimitiveOrString (final AbstractJType type)
+  {
+    return type != null && (type.isPrimitive () || type.fullName ().equals ("java.lang.String"));
+  }
+
+  /**
+   * @return <code>true</code> if evaluating the expression can neither throw
+   *         nor have other side effects
+   */
+  static boolean isPure (final IJExpression expr)
+  {
+    if (expr == null)
+      return true;
+    final IJExpression e = expr.unwrapped ();
+    if (e instanceof JAtomInt ||
+        e instanceof JAtomLong ||
+        e instanceof JAtomFloat ||
+        e instanceof JAtomDouble ||
+        e instanceof JStringLiteral ||
+        e instanceof JVar)
+      return true;
+    if (e instanceof JAtom)
+      return isKnownAtom ((JAtom) e);
+    if (e instanceof JOpUnaryTight)
+      return false;
+    if (e instanceof JOpUnary)
+    {
+      // unboxing a null operand throws
+      final IJExpression operand = ((JOpUnary) e).expr ();
+      return isPrimitiveValue (operand) && isPure (operand);
+    }
+    if (e instanceof JOpBinary)
+    {
+      final JOpBinary binary = (JOpBinary) e;
+      final String op = binary.op ();
+      if (op.equals ("instanceof"))
+        return isPure (binary.left ());
+      final IJExpression left = binary.left ();
+      final IJExpression right = (IJExpression) binary.right ();
+      // integer division may throw
+      if (op.equals ("/") || op.equals ("%"))
+        return false;
+      if (op.equals ("+"))
+      {
+        // string conversion may call toString
+        if (!isPrimitiveOrString (left.expressionType ()) || !isPrimitiveOrString (right.expressionType ()))
+          return false;
+      }
+      else
+      {
+        final boolean leftPrimitive = isPrimitiveValue (left);
+        final boolean rightPrimitive = isPrimitiveValue (right);
+        // comparing two references does not unbox, anything else does
+        final boolean referenceComparison = (op.equals ("==") || op.equals ("!=")) &&
+                                            !leftPrimitive &&
+                                            !rightPrimitive;
+        if (!referenceComparison && (!leftPrimitive || !rightPrimitive))
+          return false;
+      }
+      return isPure (left) && isPure (right);
+    }
+    if (e instanceof JOpTernary)
+    {
+      final JOpTernary ternary = (JOpTernary) e;
+      return isPure (ternary.expr1 ()) &&
+             isPure ((IJExpression) ternary.expr2 ()) &&
+             isPure ((IJExpression) ternary.expr3 ());
+    }
+    if (e instanceof JCast)
+    {
+      final JCast cast = (JCast) e;
+      return cast.type ().isPrimitive () && isPrimitiveValue (cast.object ()) && isPure (cast.object ());
+    }
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if the expression is known to evaluate to a
+   *         primitive value, so that using it as an operand never unboxes
+   */
+  private static boolean isPrimitiveValue (final IJExpression expr)
+  {
+    final IJExpression e = expr.unwrapped ();
+    if (e instanceof JAtomInt || e instanceof JAtomLong || e instanceof JAtomFloat || e instanceof JAtomDouble)
+      return true;
+    if (e instanceof JAtom)
+    {
+      final String what = ((JAtom) e).what ();
+      return what.equals ("true") || what.equals ("false") || what.startsWith ("'");
+    }
+    if (e instanceof JVar)
+      return ((JVar) e).type ().isPrimitive ();
+    if (e instanceof JCast)
+      return ((JCast) e).type ().isPrimitive ();
+    if (e instanceof JOpUnary)
+      return isPrimitiveValue (((JOpUnary) e).expr ());
+    if (e instanceof JOpBinary)
+    {
+      final JOpBinary binary = (JOpBinary) e;
+      if (binary.op ().equals ("+"))
+        return isPrimitiveValue (binary.left ()) && isPrimitiveValue ((IJExpression) binary.right ());
+      // all other operators yield a primitive (or throw)
+      return true;
+    }
+    if (e instanceof JOpTernary)
+    {
+      final JOpTernary ternary = (JOpTernary) e;
+      return isPrimitiveValue ((IJExpression) ternary.expr2 ()) && isPrimitiveValue ((IJExpression) ternary.expr3 ());
+    }
+    return false;
+  }
+
+  private static boolean isKnownAtom (final JAtom atom)
+  {
+    final String what = atom.what ();
+    return what.equals ("true") ||
+           what.equals ("false") ||
+           what.equals ("null") ||
+           what.equals ("this") ||
+           what.equals ("super") ||
+           what.startsWith ("'");
+  }
+
+  private boolean _changed;
+
+  /** The variables referenced anywhere in the optimized block */
+  private final Map <JVar, Boolean> _referenced = new IdentityHashMap <JVar, Boolean> ();
+
+  /** The names referenced through field references without an object */
+  private final Set <String> _referencedNames = new HashSet <String> ();
+
+  /** Whether references might have been missed */
+  private boolean _untracked;
+
+  private final ExpressionCallback _referenceCollector = new ExpressionCallback ()
+  {
+    public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+    {
+      if (assignmentTarget instanceof JVar)
+        _referenced.put ((JVar) assignmentTarget, Boolean.TRUE);
+      return true;
+    }
+
+    public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+    {
+      collectReference (expr);
+      return true;
+    }
+  };
+
+  private DeadCodeElimination ()
+  {}
+
+  private void removeRange (final JBlock block, final int fromIndex)
+  {
+    for (int i = block.size () - 1; i >= fromIndex; i--)
+      block.remove (i);
+  }
+
+  /**
+   * @return <code>true</code> if the block never completes normally
+   */
+  private boolean pruneBlock (final JBlock block)
+  {
+    final List <Object> contents = block.getContents ();
+    for (int i = 0; i < contents.size (); i++)
+    {
+      Object blockElement = contents.get (i);
+      if (blockElement instanceof JConditional)
+      {
+        final JConditional conditional = (JConditional) blockElement;
+        if (isConstant (conditional.test (), true))
+          blockElement = conditional._then ();
+        else
+          if (isConstant (conditional.test (), false))
+            blockElement = conditional._else ();
+        if (blockElement != conditional)
+        {
+          block.replace (i, blockElement);
+          _changed = true;
+        }
+      }
+
+      boolean abrupt;
+      if (blockElement instanceof JBlock)
+      {
+        abrupt = pruneBlock ((JBlock) blockElement);
+        if (((JBlock) blockElement).isEmpty () && !(i > 0 && contents.get (i - 1) instanceof JLabel))
+        {
+          block.remove (i--);
+          _changed = true;
+          continue;
+        }
+      }
+      else
+        if (blockElement instanceof JConditional)
+        {
+          final JConditional conditional = (JConditional) blockElement;
+          final boolean [] abruptBranches = { false };
+          final boolean [] empty = { false };
+          conditional.apply (new BranchingStatementVisitor ()
+          {
+            public void visit (final ExpressionContainer conditionalExpression)
+            {}
+
+            public void visit (final JBlock subBlock)
+            {}
+
+            public void visit (final List <JBlock> branches)
+            {
+              boolean allAbrupt = true;
+              for (final JBlock branch : branches)
+                allAbrupt &= pruneBlock (branch);
+              // without "else" the statement completes normally if the
+              // condition is false
+              abruptBranches[0] = allAbrupt && branches.size () == 2;
+              empty[0] = branches.size () == 1 && branches.get (0).isEmpty ();
+            }
+          });
+          abrupt = abruptBranches[0];
+          if (empty[0] && isPure (conditional.test ()) && !(i > 0 && contents.get (i - 1) instanceof JLabel))
+          {
+            block.remove (i--);
+            _changed = true;
+            continue;
+          }
+        }
+        else
+        {
+          pruneNestedBlocks (blockElement);
+          abrupt = blockElement instanceof JReturn ||
+                   blockElement instanceof JThrow ||
+                   blockElement instanceof JBreak ||
+                   blockElement instanceof JContinue;
+        }
+
+      // A labeled statement completes normally if it contains a "break" to
+      // its label, so don't assume anything about it
+      if (abrupt && i > 0 && contents.get (i - 1) instanceof JLabel)
+        abrupt = false;
+
+      if (abrupt && i + 1 < contents.size ())
+      {
+        // everything after this statement is unreachable
+        removeRange (block, i + 1);
+        _changed = true;
+        return true;
+      }
+      if (abrupt)
+        return true;
+    }
+    return false;
+  }
+
+  private void pruneNestedBlocks (final Object statement)
+  {
+    if (statement instanceof BranchingStatement)
+    {
+      ((BranchingStatement) statement).apply (new BranchingStatementVisitor ()
+      {
+        public void visit (final ExpressionContainer conditionalExpression)
+        {}
+
+        public void visit (final JBlock subBlock)
+        {
+          pruneBlock (subBlock);
+        }
+
+        public void visit (final List <JBlock> branches)
+        {
+          for (final JBlock branch : branches)
+            pruneBlock (branch);
+        }
+      });
+    }
+    else
+      if (statement instanceof Loop)
+        pruneBlock (((Loop) statement).body ());
+      else
+        if (statement instanceof JSynchronizedBlock)
+          pruneBlock (((JSynchronizedBlock) statement).body ());
+  }
+
+  private void removeUnusedVariables (final JBlock block)
+  {
+    _referenced.clear ();
+    _referencedNames.clear ();
+    _untracked = false;
+    collectReferences (block);
+    if (!_untracked)
+      removeUnreferenced (block);
+  }
+
+  private void removeUnreferenced (final JBlock block)
+  {
+    final List <Object> contents = block.getContents ();
+    for (int i = contents.size () - 1; i >= 0; i--)
+    {
+      final Object blockElement = contents.get (i);
+      if (blockElement instanceof JVar)
+      {
+        final JVar var = (JVar) blockElement;
+        if (!_referenced.containsKey (var) && !_referencedNames.contains (var.name ()) && isPure (var.init ()))
+        {
+          block.remove (i);
+          _changed = true;
+        }
+      }
+      else
+        if (blockElement instanceof JBlock)
+          removeUnreferenced ((JBlock) blockElement);
+        else
+          if (blockElement instanceof BranchingStatement)
+          {
+            ((BranchingStatement) blockElement).apply (new BranchingStatementVisitor ()
+            {
+              public void visit (final ExpressionContainer conditionalExpression)
+              {}
+
+              public void visit (final JBlock subBlock)
+              {
+                removeUnreferenced (subBlock);
+              }
+
+              public void visit (final List <JBlock> branches)
+              {
+                for (final JBlock branch : branches)
+                  removeUnreferenced (branch);
+              }
+            });
+          }
+          else
+            if (blockElement instanceof Loop)
+              removeUnreferenced (((Loop) blockElement).body ());
+            else
+              if (blockElement instanceof JSynchronizedBlock)
+                removeUnreferenced (((JSynchronizedBlock) blockElement).body ());
+    }
+  }
+
+  private void collectReferences (final IJExpression expr)
+  {
+    if (expr != null)
+    {
+      collectReference (expr);
+      expr.forAllSubExpressions (_referenceCollector);
+    }
+  }
+
+  private void collectReference (final IJExpression expr)
+  {
+    final IJExpression e = expr instanceof JExprStatementWrapper <?> ? ((JExprStatementWrapper <?>) expr).expr ()
+                                                                      : expr;
+    if (e instanceof JVar)
+    {
+      _referenced.put ((JVar) e, Boolean.TRUE);
+    }
+    else
+      if (e instanceof JFieldRef)
+      {
+        final JFieldRef fieldRef = (JFieldRef) e;
+        if (fieldRef.var () != null)
+          _referenced.put (fieldRef.var (), Boolean.TRUE);
+        if (fieldRef.object () == null)
+          _referencedNames.add (fieldRef.name ());
+      }
+      else
+        if (e instanceof JCast)
+        {
+          // casts and conditionals don't visit their operands
+          collectReferences (((JCast) e).object ());
+        }
+        else
+          if (e instanceof JOpTernary)
+          {
+            final JOpTernary ternary = (JOpTernary) e;
+            collectReferences (ternary.expr1 ());
+            collectReferences ((IJExpression) ternary.expr2 ());
+            collectReferences ((IJExpression) ternary.expr3 ());
+          }
+          else
+            if (e instanceof JInvocation)
+            {
+              final JInvocation invocation = (JInvocation) e;
+              if (invocation.isConstructor ())
+              {
+                final AbstractJType type = invocation.expressionType ();
+                if (type instanceof JDefinedClass && ((JDefinedClass) type).isAnonymous ())
+                  _untracked = true;
+              }
+            }
+            else
+              if (e instanceof JExprStatementWrapper <?>)
+              {
+                collectReferences (((JExprStatementWrapper <?>) e).expr ());
+              }
+              else
+                if (e instanceof JAtom)
+                {
+                  if (!isKnownAtom ((JAtom) e))
+                    _untracked = true;
+                }
+                else
+                  if (!(e instanceof JAtomInt ||
+                        e instanceof JAtomLong ||
+                        e instanceof JAtomFloat ||
+                        e instanceof JAtomDouble ||
+                        e instanceof JStringLiteral ||
+                        e instanceof JEnumConstant ||
+                        e instanceof JOpBinary ||
+                        e instanceof JOpUnary ||
+                        e instanceof JArrayCompRef ||
+                        e instanceof JAssignment ||
+                        e instanceof JArray))
+                    _untracked = true;
+  }
+
+  private void collectReferences (final JBlock block)
+  {
+    for (final Object blockElement : block.getContents ())
+    {
+      if (blockElement instanceof JVar)
+      {
+        collectReferences (((JVar) blockElement).init ());
+      }
+      else
+        if (blockElement instanceof IJExpression)
+        {
+          collectReferences ((IJExpression) blockElement);
+        }
+        else
+          if (blockElement instanceof JBlock)
+          {
+            collectReferences ((JBlock) blockElement);
+          }
+          else
+            if (blockElement instanceof BranchingStatement)
+            {
+              ((BranchingStatement) blockElement).apply (new BranchingStatementVisitor ()
+              {
+                public void visit (final ExpressionContainer conditionalExpression)
+                {
+                  if (conditionalExpression instanceof IJExpression)
+                    collectReferences ((IJExpression) conditionalExpression);
+                  else
+                    conditionalExpression.forAllSubExpressions (_referenceCollector);
+                }
+
+                public void visit (final JBlock subBlock)
+                {
+                  collectReferences (subBlock);
+                }
+
+                public void visit (final List <JBlock> branches)
+                {
+                  for (final JBlock branch : branches)
+                    collectReferences (branch);
+                }
+              });
+            }
+            else
+              if (blockElement instanceof Loop)
+              {
+                final Loop loop = (Loop) blockElement;
+                if (loop instanceof JForLoop)
+                {
+                  for (final Object init : ((JForLoop) loop).inits ())
+                    if (init instanceof JVar)
+                      collectReferences (((JVar) init).init ());
+                }
+                loop.statementsExecutedOnce ().forAllSubExpressions (_referenceCollector);
+                loop.statementsExecutedOnEachIteration ().forAllSubExpressions (_referenceCollector);
+                collectReferences (loop.body ());
+              }
+              else
+                if (blockElement instanceof JReturn)
+                {
+                  collectReferences (((JReturn) blockElement).expr ());
+                }
+                else
+                  if (blockElement instanceof JThrow)
+                  {
+                    collectReferences (((JThrow) blockElement).expr ());
+                  }
+                  else
+                    if (blockElement instanceof JSynchronizedBlock)
+                    {
+                      collectReferences (((JSynchronizedBlock) blockElement).expr ());
+                      collectReferences (((JSynchronizedBlock) blockElement).body ());
+                    }
+                    else
+                      if (!(blockElement instanceof JBreak ||
+                            blockElement instanceof JContinue ||
+                            blockElement instanceof JLabel))
+                      {
+                        // switch statements, direct statements, local classes
+                        // etc.
+                        _untracked = true;
+                      }
+    }
+  }
+}
@@ -0,0 +1,728 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.IJAssignmentTarget;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.IJGenerable;
+import com.helger.jcodemodel.JArray;
+import com.helger.jcodemodel.JArrayCompRef;
+import com.helger.jcodemodel.JAssignment;
+import com.helger.jcodemodel.JAtom;
+import com.helger.jcodemodel.JAtomDouble;
+import com.helger.jcodemodel.JAtomFloat;
+import com.helger.jcodemodel.JAtomInt;
+import com.helger.jcodemodel.JAtomLong;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JBreak;
+import com.helger.jcodemodel.JCast;
+import com.helger.jcodemodel.JCatchBlock;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JContinue;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JEnumConstant;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JExprStatementWrapper;
+import com.helger.jcodemodel.JFieldRef;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JLabel;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JMods;
+import com.helger.jcodemodel.JOpBinary;
+import com.helger.jcodemodel.JOpTernary;
+import com.helger.jcodemodel.JOpUnary;
+import com.helger.jcodemodel.JReturn;
+import com.helger.jcodemodel.JStringLiteral;
+import com.helger.jcodemodel.JSynchronizedBlock;
+import com.helger.jcodemodel.JThrow;
+import com.helger.jcodemodel.JTryBlock;
+import com.helger.jcodemodel.JVar;
+
+/**
+ * Loop-invariant code motion for Java <i>source</i> code.
+ * <p>
+ * Expressions inside of a {@link Loop} that are accepted by the
+ * {@link ExpressionFilter} and that don't read any variable, field or array
+ * element assigned within the loop, are evaluated once in a <code>final</code>
+ * local variable that is declared right before the loop. Equal expressions
+ * share one variable. Only expressions evaluated on every iteration are moved:
+ * those of the condition, the update expressions and the statements of the
+ * body up to the first statement that may skip the rest of it, like an
+ * <code>if</code>, a nested loop or a <code>break</code>. Of these, only the
+ * condition of an <code>if</code> is moved. The right operand of
+ * <code>&amp;&amp;</code> and <code>||</code> is never moved.
+ * <p>
+ * The premises are the same as for {@link CSE}: expressions accepted by the
+ * filter must have no side effects and must not be updated concurrently. In
+ * addition they are evaluated even if the loop body is never executed, so they
+ * must not throw. The default filter only accepts reads of fields of
+ * <code>this</code>, that is field references without an object or with
+ * <code>this</code> as object. Array element reads, fields of other objects
+ * and method calls, like a getter chain, are only moved if a filter that
+ * accepts them is passed to {@link #optimize(JBlock, ExpressionFilter)}.
+ * <p>
+ * Loops containing code in which assignments can't be tracked, like direct
+ * statements, <code>switch</code> statements, lambdas or anonymous classes,
+ * are left unchanged. Nested loops of such a loop are still optimized. A loop
+ * invoking a method that is not known to be free of side effects according to
+ * the {@link PurityModel}, by default the one with the JDK defaults, is assumed
+ * to modify all fields and array elements.
+ *
+ * @see #optimize(JBlock)
+ * @see #optimize(JBlock, ExpressionFilter)
+ * @see #optimize(JBlock, ExpressionFilter, PurityModel)
+ */
+public final class LoopInvariantCodeMotion
+{
+  private static final ExpressionFilter DEFAULT_FILTER = new ExpressionFilter ()
+  {
+    public boolean test (final IJExpression expression)
+    {
+      if (!(expression instanceof JFieldRef))
+        return false;
+      final IJGenerable object = ((JFieldRef) expression).object ();
+      return object == null || object == JExpr._this ();
+    }
+  };
+
+  public static void optimize (@Nonnull final JBlock block)
+  {
+    optimize (block, DEFAULT_FILTER);
+  }
+
+  public static void optimize (@Nonnull final JBlock block, @Nonnull final ExpressionFilter filter)
+  {
+    optimize (block, filter, PurityModel.createWithJDKDefaults ());
+  }
+
+  /**
+   * @param block
+   *        The block to optimize
+   * @param filter
+   *        Selects the expressions to move
+   * @param purityModel
+   *        Side effect model of the invoked methods. A loop invoking a method
+   *        that is {@link EPurity#IMPURE} in this model is assumed to modify
+   *        all fields and array elements.
+   */
+  public static void optimize (@Nonnull final JBlock block,
+                               @Nonnull final ExpressionFilter filter,
+                               @Nonnull final PurityModel purityModel)
+  {
+    new LoopInvariantCodeMotion (filter, purityModel).processBlock (block);
+  }
+
+  /**
+   * @return <code>true</code> if the expression can't modify anything without
+   *         it being visible through {@link ExpressionCallback}
+   */
+  private static boolean isTracked (final IJExpression expr)
+  {
+    if (expr instanceof JAtom)
+    {
+      final String what = ((JAtom) expr).what ();
+      return what.equals ("true") ||
+             what.equals ("false") ||
+             what.equals ("null") ||
+             what.equals ("this") ||
+             what.equals ("super") ||
+             what.startsWith ("'");
+    }
+    if (expr instanceof JInvocation && ((JInvocation) expr).isConstructor ())
+    {
+      final AbstractJType type = expr.expressionType ();
+      return !(type instanceof JDefinedClass && ((JDefinedClass) type).isAnonymous ());
+    }
+    return expr instanceof JAtomInt ||
+           expr instanceof JAtomLong ||
+           expr instanceof JAtomFloat ||
+           expr instanceof JAtomDouble ||
+           expr instanceof JStringLiteral ||
+           expr instanceof JEnumConstant ||
+           expr instanceof JVar ||
+           expr instanceof JFieldRef ||
+           expr instanceof JInvocation ||
+           expr instanceof JOpBinary ||
+           expr instanceof JOpUnary ||
+           expr instanceof JOpTernary ||
+           expr instanceof JCast ||
+           expr instanceof JArrayCompRef ||
+           expr instanceof JAssignment ||
+           expr instanceof JArray ||
+           expr instanceof JExprStatementWrapper <?>;
+  }
+
+  private static void visitRoot (final ExpressionAccessor accessor, final ExpressionCallback callback)
+  {
+    final IJExpression expr = accessor.get ();
+    if (expr != null && callback.visitExpression (expr, accessor))
+      expr.forAllSubExpressions (callback);
+  }
+
+  private static void visitVar (final JVar var, final ExpressionCallback callback)
+  {
+    visitRoot (new ExpressionAccessor ()
+    {
+      public void set (final IJExpression newExpression)
+      {
+        var.init (newExpression);
+      }
+
+      public IJExpression get ()
+      {
+        return var.init ();
+      }
+    }, callback);
+  }
+
+  /**
+   * Visit all expressions of the statements of a block and its nested blocks.
+   *
+   * @return <code>false</code> if the block contains statements that can't be
+   *         visited
+   */
+  private static boolean visitBlock (final JBlock block,
+                                     final ExpressionCallback callback,
+                                     final Set <IJAssignmentTarget> declared)
+  {
+    for (final Object blockElement : block.getContents ())
+    {
+      if (blockElement instanceof JVar)
+      {
+        declared.add ((JVar) blockElement);
+        visitVar ((JVar) blockElement, callback);
+      }
+      else
+        if (blockElement instanceof JExprStatementWrapper <?>)
+        {
+          visitRoot (new ConstantAccessor (((JExprStatementWrapper <?>) blockElement).expr ()), callback);
+        }
+        else
+          if (blockElement instanceof ExpressionContainer)
+          {
+            visitStatement ((ExpressionContainer) blockElement, callback);
+          }
+          else
+            if (blockElement instanceof JBlock)
+            {
+              if (!visitBlock ((JBlock) blockElement, callback, declared))
+                return false;
+            }
+            else
+              if (blockElement instanceof BranchingStatement)
+              {
+                if (blockElement instanceof JTryBlock)
+                {
+                  for (final JCatchBlock aCatch : ((JTryBlock) blockElement).catches ())
+                    if (aCatch.param () != null)
+                      declared.add (aCatch.param ());
+                }
+                final boolean [] visited = { true };
+                ((BranchingStatement) blockElement).apply (new BranchingStatementVisitor ()
+                {
+                  public void visit (final ExpressionContainer conditionalExpression)
+                  {
+                    visitStatement (conditionalExpression, callback);
+                  }
+
+                  public void visit (final JBlock subBlock)
+                  {
+                    visited[0] &= visitBlock (subBlock, callback, declared);
+                  }
+
+                  public void visit (final List <JBlock> branches)
+                  {
+                    for (final JBlock branch : branches)
+                      visited[0] &= visitBlock (branch, callback, declared);
+                  }
+                });
+                if (!visited[0])
+                  return false;
+              }
+              else
+                if (blockElement instanceof Loop)
+                {
+                  if (!visitLoop ((Loop) blockElement, callback, declared))
+                    return false;
+                }
+                else
+                  if (blockElement instanceof JReturn)
+                  {
+                    final JReturn aReturn = (JReturn) blockElement;
+                    visitRoot (new ExpressionAccessor ()
+                    {
+                      public void set (final IJExpression newExpression)
+                      {
+                        aReturn.expr (newExpression);
+                      }
+
+                      public IJExpression get ()
+                      {
+                        return aReturn.expr ();
+                      }
+                    }, callback);
+                  }
+                  else
+                    if (blockElement instanceof JThrow)
+                    {
+                      visitRoot (new ConstantAccessor (((JThrow) blockElement).expr ()), callback);
+                    }
+                    else
+                      if (blockElement instanceof JSynchronizedBlock)
+                      {
+                        visitRoot (new ConstantAccessor (((JSynchronizedBlock) blockElement).expr ()), callback);
+                        if (!visitBlock (((JSynchronizedBlock) blockElement).body (), callback, declared))
+                          return false;
+                      }
+                      else
+                        if (!(blockElement instanceof JBreak ||
+                              blockElement instanceof JContinue ||
+                              blockElement instanceof JLabel))
+                          return false;
+    }
+    return true;
+  }
+
+  /**
+   * Visit all expressions of a loop, including its body.
+   *
+   * @return <code>false</code> if the loop contains statements that can't be
+   *         visited
+   */
+  private static boolean visitLoop (final Loop loop,
+                                    final ExpressionCallback callback,
+                                    final Set <IJAssignmentTarget> declared)
+  {
+    if (loop instanceof JForLoop)
+    {
+      for (final Object init : ((JForLoop) loop).inits ())
+        if (init instanceof JVar)
+        {
+          declared.add ((JVar) init);
+          visitVar ((JVar) init, callback);
+        }
+      // the updates are not visited as expressions themselves
+      for (final IJExpression update : ((JForLoop) loop).updates ())
+        callback.visitExpression (update, new ConstantAccessor (update));
+    }
+    loop.statementsExecutedOnce ().forAllSubExpressions (callback);
+    loop.statementsExecutedOnEachIteration ().forAllSubExpressions (callback);
+    return visitBlock (loop.body (), callback, declared);
+  }
+
+  /**
+   * Visit the expressions of a statement or condition, including the
+   * expression itself, e.g. an invocation statement.
+   */
+  private static void visitStatement (final ExpressionContainer container, final ExpressionCallback callback)
+  {
+    if (container instanceof IJExpression)
+      visitRoot (new ConstantAccessor ((IJExpression) container), callback);
+    else
+      container.forAllSubExpressions (callback);
+  }
+
+  private final ExpressionFilter _filter;
+  private final PurityModel _purityModel;
+  private final Map <String, Integer> _nameCounts = new HashMap <String, Integer> ();
+
+  private LoopInvariantCodeMotion (final ExpressionFilter filter, final PurityModel purityModel)
+  {
+    _filter = filter;
+    _purityModel = purityModel;
+  }
+
+  private void processBlock (final JBlock block)
+  {
+    // copy, because variables are inserted into the block
+    for (final Object blockElement : new ArrayList <Object> (block.getContents ()))
+    {
+      if (blockElement instanceof Loop)
+      {
+        hoist (block, (Loop) blockElement);
+        processBlock (((Loop) blockElement).body ());
+      }
+      else
+        if (blockElement instanceof JBlock)
+        {
+          processBlock ((JBlock) blockElement);
+        }
+        else
+          if (blockElement instanceof BranchingStatement)
+          {
+            ((BranchingStatement) blockElement).apply (new BranchingStatementVisitor ()
+            {
+              public void visit (final ExpressionContainer conditionalExpression)
+              {}
+
+              public void visit (final JBlock subBlock)
+              {
+                processBlock (subBlock);
+              }
+
+              public void visit (final List <JBlock> branches)
+              {
+                for (final JBlock branch : branches)
+                  processBlock (branch);
+              }
+            });
+          }
+          else
+            if (blockElement instanceof JSynchronizedBlock)
+            {
+              processBlock (((JSynchronizedBlock) blockElement).body ());
+            }
+    }
+  }
+
+  /**
+   * @param invokesImpure
+   *        Set to <code>true</code> if the loop invokes a method that is not
+   *        known to be free of side effects, which may modify any field or
+   *        array element.
+   * @return All variables, fields and array elements assigned or declared
+   *         within the loop, or <code>null</code> if that can't be determined.
+   */
+  private Set <IJAssignmentTarget> collectModified (final Loop loop, final boolean [] invokesImpure)
+  {
+    final Set <IJAssignmentTarget> modified = new HashSet <IJAssignmentTarget> ();
+    final boolean [] tracked = { true };
+    final ExpressionCallback collector = new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        modified.add (assignmentTarget);
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+      {
+        if (!isTracked (expr))
+          tracked[0] = false;
+        else
+          if (_purityModel.isImpureInvocation (expr))
+            invokesImpure[0] = true;
+          else
+            if (expr instanceof JCast)
+            {
+              // casts and conditionals don't visit their operands
+              visitRoot (new ConstantAccessor (((JCast) expr).object ()), this);
+            }
+            else
+              if (expr instanceof JOpTernary)
+              {
+                final JOpTernary ternary = (JOpTernary) expr;
+                visitRoot (new ConstantAccessor (ternary.expr1 ()), this);
+                visitRoot (new ConstantAccessor ((IJExpression) ternary.expr2 ()), this);
+                visitRoot (new ConstantAccessor ((IJExpression) ternary.expr3 ()), this);
+              }
+        return true;
+      }
+    };
+    if (!visitLoop (loop, collector, modified) || !tracked[0])
+      return null;
+    return modified;
+  }
+
+  /**
+   * @return <code>true</code> if the expression reads a variable by name (see
+   *         {@link com.helger.jcodemodel.JExpr#ref(String)}) that is modified
+   */
+  private static boolean readsModifiedName (final IJExpression expr, final Set <String> modifiedNames)
+  {
+    if (modifiedNames.isEmpty ())
+      return false;
+    final boolean [] reads = { false };
+    final ExpressionCallback finder = new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr2, final ExpressionAccessor accessor)
+      {
+        if (expr2 instanceof JFieldRef &&
+            ((JFieldRef) expr2).object () == null &&
+            modifiedNames.contains (((JFieldRef) expr2).name ()))
+          reads[0] = true;
+        return !reads[0];
+      }
+    };
+    visitRoot (new ConstantAccessor (expr), finder);
+    return reads[0];
+  }
+
+  /**
+   * @return <code>true</code> if the expression reads a field or an array
+   *         element, or invokes a method that is not {@link EPurity#PURE}
+   */
+  private boolean readsMemory (final IJExpression expr)
+  {
+    final boolean [] reads = { false };
+    final ExpressionCallback finder = new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr2, final ExpressionAccessor accessor)
+      {
+        if (expr2 instanceof JFieldRef ||
+            expr2 instanceof JArrayCompRef ||
+            (expr2 instanceof JInvocation && _purityModel.getPurity ((JInvocation) expr2) != EPurity.PURE))
+          reads[0] = true;
+        else
+          if (expr2 instanceof JCast)
+          {
+            // casts and conditionals don't visit their operands
+            visitRoot (new ConstantAccessor (((JCast) expr2).object ()), this);
+          }
+          else
+            if (expr2 instanceof JOpTernary)
+            {
+              final JOpTernary ternary = (JOpTernary) expr2;
+              visitRoot (new ConstantAccessor (ternary.expr1 ()), this);
+              visitRoot (new ConstantAccessor ((IJExpression) ternary.expr2 ()), this);
+              visitRoot (new ConstantAccessor ((IJExpression) ternary.expr3 ()), this);
+            }
+        return !reads[0];
+      }
+    };
+    visitRoot (new ConstantAccessor (expr), finder);
+    return reads[0];
+  }
+
+  private String createName (final IJExpression expr)
+  {
+    final String basicName = expr.expressionName ();
+    final Integer count = _nameCounts.get (basicName);
+    if (count == null)
+    {
+      _nameCounts.put (basicName, Integer.valueOf (1));
+      return basicName;
+    }
+    final Integer newCount = Integer.valueOf (count.intValue () + 1);
+    _nameCounts.put (basicName, newCount);
+    return basicName + newCount;
+  }
+
+  private void hoist (final JBlock block, final Loop loop)
+  {
+    final boolean [] invokesImpure = { false };
+    final Set <IJAssignmentTarget> modified = collectModified (loop, invokesImpure);
+    if (modified == null)
+      return;
+    final Set <String> modifiedNames = new HashSet <String> ();
+    for (final IJAssignmentTarget target : modified)
+    {
+      if (target instanceof JVar)
+        modifiedNames.add (((JVar) target).name ());
+      else
+        if (target instanceof JFieldRef && ((JFieldRef) target).object () == null)
+          modifiedNames.add (((JFieldRef) target).name ());
+    }
+
+    // a label must stay right in front of its loop
+    final List <Object> contents = block.getContents ();
+    final int loopIndex = contents.indexOf (loop);
+    final Object insertBefore = loopIndex > 0 && contents.get (loopIndex - 1) instanceof JLabel ? contents.get (loopIndex - 1)
+                                                                                                : loop;
+    final Map <IJExpression, JVar> hoisted = new HashMap <IJExpression, JVar> ();
+    // replaced expressions and conditionally evaluated operands
+    final Map <IJExpression, Boolean> skipped = new IdentityHashMap <IJExpression, Boolean> ();
+    final ExpressionCallback skippedCollector = new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+      {
+        skipped.put (expr, Boolean.TRUE);
+        return true;
+      }
+    };
+    final ExpressionCallback hoister = new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+      {
+        if (skipped.containsKey (expr))
+          return true;
+        final IJExpression conditionalOperand = conditionalOperand (expr);
+        if (conditionalOperand != null)
+          visitRoot (new ConstantAccessor (conditionalOperand), skippedCollector);
+        if (!_filter.test (expr) ||
+            CSE.modified (expr, modified) ||
+            readsModifiedName (expr, modifiedNames) ||
+            (invokesImpure[0] && readsMemory (expr)))
+          return true;
+        JVar var = hoisted.get (expr);
+        if (var == null)
+        {
+          final AbstractJType type = expr.expressionType ();
+          final String name = expr.expressionName ();
+          if (type == null || name == null)
+            return true;
+          var = new JVar (JMods.forVar (JMod.FINAL), type, createName (expr), expr);
+          if (expr instanceof JFieldRef)
+            ((JFieldRef) expr).explicitThis (true);
+          block.insertBefore (var, insertBefore);
+          hoisted.put (expr, var);
+        }
+        visitRoot (new ConstantAccessor (expr), skippedCollector);
+        accessor.set (var);
+        return true;
+      }
+    };
+    loop.statementsExecutedOnEachIteration ().forAllSubExpressions (hoister);
+    visitUnconditional (loop.body (), hoister, skippedCollector);
+  }
+
+  /**
+   * @return the right operand of <code>&amp;&amp;</code> and <code>||</code>,
+   *         which is not always evaluated, or <code>null</code>
+   */
+  private static IJExpression conditionalOperand (final IJExpression expr)
+  {
+    if (expr instanceof JOpBinary)
+    {
+      final JOpBinary binary = (JOpBinary) expr;
+      if (binary.op ().equals ("&&") || binary.op ().equals ("||"))
+        return (IJExpression) binary.right ();
+    }
+    return null;
+  }
+
+  /**
+   * Visit the expressions of the statements of a block, which are evaluated
+   * whenever the block is entered: all statements up to the first one that may
+   * skip the following statements. Of that one only the condition of an
+   * <code>if</code> is visited. The operands of the condition that are not
+   * always evaluated are passed to <code>conditionalCallback</code> first.
+   *
+   * @return <code>true</code> if all statements of the block were visited
+   */
+  private static boolean visitUnconditional (final JBlock block,
+                                            final ExpressionCallback callback,
+                                            final ExpressionCallback conditionalCallback)
+  {
+    for (final Object blockElement : block.getContents ())
+    {
+      if (blockElement instanceof JVar)
+      {
+        visitVar ((JVar) blockElement, callback);
+      }
+      else
+        if (blockElement instanceof JExprStatementWrapper <?>)
+        {
+          ((JExprStatementWrapper <?>) blockElement).expr ().forAllSubExpressions (callback);
+        }
+        else
+          if (blockElement instanceof ExpressionContainer)
+          {
+            ((ExpressionContainer) blockElement).forAllSubExpressions (callback);
+          }
+          else
+            if (blockElement instanceof JBlock)
+            {
+              if (!visitUnconditional ((JBlock) blockElement, callback, conditionalCallback))
+                return false;
+            }
+            else
+            {
+              if (blockElement instanceof JConditional)
+              {
+                // the root of the condition is not visited
+                final IJExpression test = ((JConditional) blockElement).test ();
+                final IJExpression conditionalOperand = conditionalOperand (test);
+                if (conditionalOperand != null)
+                  visitRoot (new ConstantAccessor (conditionalOperand), conditionalCallback);
+                test.forAllSubExpressions (callback);
+              }
+              return false;
+            }
+    }
+    return true;
+  }
+
+  /**
+   * Accessor for expressions that are only read.
+   */
+  private static final class ConstantAccessor implements ExpressionAccessor
+  {
+    private final IJExpression _expression;
+
+    ConstantAccessor (final IJExpression expression)
+    {
+      _expression = expression;
+    }
+
+    public void set (final IJExpression newExpression)
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    public IJExpression get ()
+    {
+      return _expression;
+    }
+  }
+}
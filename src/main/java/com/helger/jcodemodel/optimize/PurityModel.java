@@ -0,0 +1,554 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.IJAssignmentTarget;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.IJGenerable;
+import com.helger.jcodemodel.JAnnotationUse;
+import com.helger.jcodemodel.JArrayCompRef;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExprStatementWrapper;
+import com.helger.jcodemodel.JFieldRef;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.util.NameUtilities;
+
+/**
+ * Side effect model of method invocations, for {@link CSE}.
+ * <p>
+ * The purity of a method is looked up in this order:
+ * <ol>
+ * <li>{@link JMethod}s registered with {@link #setPurity(JMethod, EPurity)}
+ * <li>{@link JMethod}s annotated with an annotation registered with
+ * {@link #setAnnotationPurity(String, EPurity)}
+ * <li>methods registered by name with
+ * {@link #setPurity(String, String, EPurity)} or
+ * {@link #setClassPurity(String, EPurity)}, searched through the static type of
+ * the receiver and all its supertypes
+ * </ol>
+ * Methods registered by name cover all overloads, and overriding methods are
+ * assumed to honor the purity of the overridden one. Constructors are looked
+ * up by the name <code>&lt;init&gt;</code> on the created class only. Anything
+ * not found is {@link EPurity#IMPURE}.
+ * <p>
+ * As an {@link ExpressionFilter} the model accepts instance field reads, array
+ * element reads and invocations of pure and read-only methods, provided they
+ * contain no side effects themselves. Invocations by method name have no known
+ * result type, so they need a
+ * {@link com.helger.jcodemodel.AbstractJExpressionImpl#hintType(AbstractJType)} to
+ * be eliminated.
+ *
+ * @see CSE#optimize(com.helger.jcodemodel.JBlock, PurityModel)
+ */
+public final class PurityModel implements ExpressionFilter
+{
+  /**
+   * Method name used to register constructors.
+   */
+  public static final String CONSTRUCTOR_NAME = "<init>";
+
+  private static final String [] JDK_NUMBERS = { "java.lang.Byte",
+                                                 "java.lang.Short",
+                                                 "java.lang.Integer",
+                                                 "java.lang.Long",
+                                                 "java.lang.Float",
+                                                 "java.lang.Double" };
+
+  private final Map <JMethod, EPurity> _methods = new IdentityHashMap <JMethod, EPurity> ();
+  private final Map <String, EPurity> _annotations = new HashMap <String, EPurity> ();
+  private final Map <String, EPurity> _classMethods = new HashMap <String, EPurity> ();
+  private final Map <String, EPurity> _classes = new HashMap <String, EPurity> ();
+
+  /**
+   * Create an empty model, where every invocation is {@link EPurity#IMPURE}.
+   */
+  public PurityModel ()
+  {}
+
+  /**
+   * @return A new model, which knows the common pure and read-only methods of
+   *         the JDK.
+   * @see #addJDKDefaults()
+   */
+  @Nonnull
+  public static PurityModel createWithJDKDefaults ()
+  {
+    return new PurityModel ().addJDKDefaults ();
+  }
+
+  /**
+   * Register the common pure and read-only methods of <code>java.lang</code>
+   * and the <code>java.util</code> collection interfaces, e.g. all of
+   * {@link Math} except {@link Math#random()}, {@link String#length()} or
+   * {@link java.util.List#get(int)}.
+   *
+   * @return this for chaining
+   */
+  @Nonnull
+  public PurityModel addJDKDefaults ()
+  {
+    setClassPurity ("java.lang.Math", EPurity.PURE);
+    setPurity ("java.lang.Math", "random", EPurity.IMPURE);
+    setClassPurity ("java.lang.StrictMath", EPurity.PURE);
+    setPurity ("java.lang.StrictMath", "random", EPurity.IMPURE);
+
+    setPurity ("java.lang.Object", "getClass", EPurity.PURE);
+    setPurity ("java.lang.Enum", EPurity.PURE, "name", "ordinal");
+    setPurity ("java.lang.String",
+               EPurity.PURE,
+               "length",
+               "isEmpty",
+               "charAt",
+               "codePointAt",
+               "equals",
+               "equalsIgnoreCase",
+               "compareTo",
+               "compareToIgnoreCase",
+               "hashCode",
+               "startsWith",
+               "endsWith",
+               "indexOf",
+               "lastIndexOf",
+               "substring",
+               "concat",
+               "trim",
+               "toLowerCase",
+               "toUpperCase",
+               "matches",
+               "toString",
+               "intern");
+    // Purity is registered for all overloads, and the overloads taking an
+    // Object or a CharSequence call its toString()
+    setPurity ("java.lang.String", EPurity.IMPURE, "valueOf", "contains", "replace");
+
+    for (final String sNumber : JDK_NUMBERS)
+    {
+      setPurity (sNumber,
+                 EPurity.PURE,
+                 "valueOf",
+                 "toString",
+                 "hashCode",
+                 "equals",
+                 "compareTo",
+                 "compare",
+                 "byteValue",
+                 "shortValue",
+                 "intValue",
+                 "longValue",
+                 "floatValue",
+                 "doubleValue");
+    }
+    setPurity ("java.lang.Byte", "parseByte", EPurity.PURE);
+    setPurity ("java.lang.Short", "parseShort", EPurity.PURE);
+    setPurity ("java.lang.Integer", "parseInt", EPurity.PURE);
+    setPurity ("java.lang.Long", "parseLong", EPurity.PURE);
+    setPurity ("java.lang.Float", "parseFloat", EPurity.PURE);
+    setPurity ("java.lang.Double", "parseDouble", EPurity.PURE);
+    setPurity ("java.lang.Integer", EPurity.PURE, "signum", "bitCount", "toHexString", "toBinaryString");
+    setPurity ("java.lang.Long", EPurity.PURE, "signum", "bitCount", "toHexString", "toBinaryString");
+    setPurity ("java.lang.Float", EPurity.PURE, "isNaN", "isInfinite");
+    setPurity ("java.lang.Double", EPurity.PURE, "isNaN", "isInfinite");
+    setPurity ("java.lang.Boolean",
+               EPurity.PURE,
+               "valueOf",
+               "toString",
+               "hashCode",
+               "equals",
+               "compareTo",
+               "booleanValue",
+               "parseBoolean");
+    setPurity ("java.lang.Character",
+               EPurity.PURE,
+               "valueOf",
+               "toString",
+               "hashCode",
+               "equals",
+               "compareTo",
+               "charValue",
+               "isDigit",
+               "isLetter",
+               "isLetterOrDigit",
+               "isWhitespace",
+               "isUpperCase",
+               "isLowerCase",
+               "toUpperCase",
+               "toLowerCase",
+               "digit",
+               "getNumericValue");
+
+    setPurity ("java.lang.CharSequence", EPurity.READ_ONLY, "length", "charAt", "toString");
+    setPurity ("java.util.Collection", EPurity.READ_ONLY, "size", "isEmpty", "contains", "containsAll");
+    setPurity ("java.util.List", EPurity.READ_ONLY, "get", "indexOf", "lastIndexOf");
+    setPurity ("java.util.Map", EPurity.READ_ONLY, "size", "isEmpty", "get", "containsKey", "containsValue");
+    setPurity ("java.util.Map.Entry", EPurity.READ_ONLY, "getKey", "getValue");
+
+    // Creating a new object doesn't change existing ones
+    for (final String sClass : new String [] { "java.lang.Object",
+                                              "java.lang.StringBuilder",
+                                              "java.lang.StringBuffer",
+                                              "java.util.ArrayList",
+                                              "java.util.LinkedList",
+                                              "java.util.HashMap",
+                                              "java.util.LinkedHashMap",
+                                              "java.util.HashSet",
+                                              "java.util.LinkedHashSet" })
+    {
+      setPurity (sClass, CONSTRUCTOR_NAME, EPurity.READ_ONLY);
+    }
+    return this;
+  }
+
+  @Nonnull
+  private PurityModel setPurity (@Nonnull final String classFullName,
+                                 @Nonnull final EPurity purity,
+                                 @Nonnull final String... methodNames)
+  {
+    for (final String methodName : methodNames)
+      setPurity (classFullName, methodName, purity);
+    return this;
+  }
+
+  /**
+   * Set the purity of a method of the code model.
+   *
+   * @param method
+   *        The method
+   * @param purity
+   *        The purity of the method
+   * @return this for chaining
+   */
+  @Nonnull
+  public PurityModel setPurity (@Nonnull final JMethod method, @Nonnull final EPurity purity)
+  {
+    _methods.put (method, purity);
+    return this;
+  }
+
+  /**
+   * Set the purity of all overloads of a method.
+   *
+   * @param classFullName
+   *        Fully qualified name of the class or interface declaring the method,
+   *        as returned by {@link AbstractJClass#fullName()}
+   * @param methodName
+   *        Name of the method, or {@link #CONSTRUCTOR_NAME}
+   * @param purity
+   *        The purity of the method
+   * @return this for chaining
+   */
+  @Nonnull
+  public PurityModel setPurity (@Nonnull final String classFullName,
+                                @Nonnull final String methodName,
+                                @Nonnull final EPurity purity)
+  {
+    _classMethods.put (classFullName + '#' + methodName, purity);
+    return this;
+  }
+
+  /**
+   * Set the purity of all overloads of a method.
+   *
+   * @param aClass
+   *        Class or interface declaring the method
+   * @param methodName
+   *        Name of the method, or {@link #CONSTRUCTOR_NAME}
+   * @param purity
+   *        The purity of the method
+   * @return this for chaining
+   */
+  @Nonnull
+  public PurityModel setPurity (@Nonnull final Class <?> aClass,
+                                @Nonnull final String methodName,
+                                @Nonnull final EPurity purity)
+  {
+    return setPurity (NameUtilities.getFullName (aClass), methodName, purity);
+  }
+
+  /**
+   * Set the purity of all methods of a class, which are not registered
+   * individually.
+   *
+   * @param classFullName
+   *        Fully qualified name of the class or interface
+   * @param purity
+   *        The purity of its methods
+   * @return this for chaining
+   */
+  @Nonnull
+  public PurityModel setClassPurity (@Nonnull final String classFullName, @Nonnull final EPurity purity)
+  {
+    _classes.put (classFullName, purity);
+    return this;
+  }
+
+  /**
+   * Set the purity of all {@link JMethod}s annotated with the given annotation,
+   * e.g. <code>javax.annotation.CheckReturnValue</code> or a project specific
+   * <code>@Pure</code>.
+   *
+   * @param annotationFullName
+   *        Fully qualified name of the annotation
+   * @param purity
+   *        The purity of annotated methods
+   * @return this for chaining
+   */
+  @Nonnull
+  public PurityModel setAnnotationPurity (@Nonnull final String annotationFullName, @Nonnull final EPurity purity)
+  {
+    _annotations.put (annotationFullName, purity);
+    return this;
+  }
+
+  /**
+   * @param method
+   *        The method to look up
+   * @return The registered purity of the method, or <code>null</code> if it is
+   *         neither registered nor annotated.
+   */
+  @Nullable
+  public EPurity getPurity (@Nonnull final JMethod method)
+  {
+    final EPurity purity = _methods.get (method);
+    if (purity != null)
+      return purity;
+    for (final JAnnotationUse annotation : method.annotations ())
+    {
+      final EPurity annotationPurity = _annotations.get (annotation.getAnnotationClass ().fullName ());
+      if (annotationPurity != null)
+        return annotationPurity;
+    }
+    return null;
+  }
+
+  /**
+   * @param invocation
+   *        The invocation to look up
+   * @return The purity of the invoked method or constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public EPurity getPurity (@Nonnull final JInvocation invocation)
+  {
+    if (invocation.isConstructor ())
+    {
+      final EPurity purity = _classMethods.get (invocation.expressionType ().erasure ().fullName () +
+                                                '#' +
+                                                CONSTRUCTOR_NAME);
+      return purity != null ? purity : EPurity.IMPURE;
+    }
+    if (invocation.method () != null)
+    {
+      final EPurity purity = getPurity (invocation.method ());
+      if (purity != null)
+        return purity;
+    }
+    final IJGenerable object = invocation.object ();
+    AbstractJType receiverType = null;
+    if (object instanceof AbstractJType)
+      receiverType = (AbstractJType) object;
+    else
+      if (object instanceof IJExpression)
+        receiverType = ((IJExpression) object).expressionType ();
+    if (!(receiverType instanceof AbstractJClass))
+      return EPurity.IMPURE;
+    return getPurity ((AbstractJClass) receiverType, invocation.methodName ());
+  }
+
+  @Nonnull
+  private EPurity getPurity (@Nonnull final AbstractJClass receiverType, @Nonnull final String methodName)
+  {
+    final Set <String> visited = new HashSet <String> ();
+    final LinkedList <AbstractJClass> queue = new LinkedList <AbstractJClass> ();
+    queue.add (receiverType.erasure ());
+    while (!queue.isEmpty ())
+    {
+      final AbstractJClass type = queue.removeFirst ();
+      final String fullName = type.fullName ();
+      if (!visited.add (fullName))
+        continue;
+      EPurity purity = _classMethods.get (fullName + '#' + methodName);
+      if (purity != null)
+        return purity;
+      if (type instanceof JDefinedClass)
+      {
+        purity = getDeclaredPurity ((JDefinedClass) type, methodName);
+        if (purity != null)
+          return purity;
+      }
+      purity = _classes.get (fullName);
+      if (purity != null)
+        return purity;
+      final AbstractJClass superClass = type._extends ();
+      if (superClass != null)
+        queue.add (superClass.erasure ());
+      for (final Iterator <AbstractJClass> it = type._implements (); it.hasNext ();)
+        queue.add (it.next ().erasure ());
+    }
+    return EPurity.IMPURE;
+  }
+
+  @Nullable
+  private EPurity getDeclaredPurity (@Nonnull final JDefinedClass type, @Nonnull final String methodName)
+  {
+    EPurity ret = null;
+    for (final JMethod method : type.methods ())
+    {
+      if (method.name ().equals (methodName))
+      {
+        final EPurity purity = getPurity (method);
+        if (purity == null)
+          return EPurity.IMPURE;
+        ret = ret == null ? purity : ret.and (purity);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param expression
+   *        The expression to check
+   * @return <code>true</code> if the expression itself is an invocation of an
+   *         {@link EPurity#IMPURE} method or constructor. Sub-expressions are
+   *         not checked.
+   */
+  public boolean isImpureInvocation (@Nonnull final IJExpression expression)
+  {
+    return expression instanceof JInvocation && getPurity ((JInvocation) expression) == EPurity.IMPURE;
+  }
+
+  /**
+   * @param expression
+   *        The expression to check
+   * @return <code>true</code> if the expression or any of its sub-expressions
+   *         is an assignment, an increment or decrement, or an invocation of an
+   *         {@link EPurity#IMPURE} method or constructor.
+   */
+  public boolean hasSideEffects (@Nonnull final IJExpression expression)
+  {
+    if (hasOwnSideEffects (expression))
+      return true;
+    return !expression.forAllSubExpressions (new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        return false;
+      }
+
+      public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+      {
+        return !hasOwnSideEffects (expr);
+      }
+    });
+  }
+
+  private boolean hasOwnSideEffects (@Nonnull final IJExpression expression)
+  {
+    // Statement wrappers don't expose the wrapped expression as sub expression
+    return expression instanceof JExprStatementWrapper <?> || isImpureInvocation (expression);
+  }
+
+  /**
+   * Check if the value of the expression could be changed by a write to memory
+   * other than local variables.
+   *
+   * @param expression
+   *        The expression to check
+   * @param includeFieldReads
+   *        <code>true</code> to consider field and array element reads,
+   *        <code>false</code> to only consider {@link EPurity#READ_ONLY}
+   *        invocations
+   */
+  boolean readsMutableState (@Nonnull final IJExpression expression, final boolean includeFieldReads)
+  {
+    final ExpressionCallback callback = new ExpressionCallback ()
+    {
+      public boolean visitAssignmentTarget (final IJAssignmentTarget assignmentTarget)
+      {
+        return true;
+      }
+
+      public boolean visitExpression (final IJExpression expr, final ExpressionAccessor accessor)
+      {
+        if (includeFieldReads && (expr instanceof JFieldRef || expr instanceof JArrayCompRef))
+          return false;
+        return !(expr instanceof JInvocation && getPurity ((JInvocation) expr) == EPurity.READ_ONLY);
+      }
+    };
+    return !callback.visitExpression (expression, null) || !expression.forAllSubExpressions (callback);
+  }
+
+  public boolean test (final IJExpression expression)
+  {
+    if (expression instanceof JFieldRef)
+    {
+      if (((JFieldRef) expression).object () instanceof AbstractJType)
+        return false;
+    }
+    else
+      if (expression instanceof JInvocation)
+      {
+        final JInvocation invocation = (JInvocation) expression;
+        if (invocation.isConstructor () || getPurity (invocation) == EPurity.IMPURE)
+          return false;
+        final AbstractJType type = invocation.expressionType ();
+        if (type == null || "void".equals (type.fullName ()))
+          return false;
+      }
+      else
+        if (!(expression instanceof JArrayCompRef))
+          return false;
+    return !hasSideEffects (expression);
+  }
+}
@@ -46,6 +46,7 @@ import java.io.Writer;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * {@link Writer} that escapes characters that are unsafe as Javadoc comments.
@@ -68,23 +69,48 @@ public class JavadocEscapeWriter extends FilterWriter
     super (next);
   }
 
+  @Nullable
+  private static String _getEscaped (final int ch)
+  {
+    if (ch == '<')
+      return "&lt;";
+    if (ch == '&')
+      return "&amp;";
+    return null;
+  }
+
   @Override
   public void write (final int ch) throws IOException
   {
-    if (ch == '<')
-      out.write ("&lt;");
+    final String sEscaped = _getEscaped (ch);
+    if (sEscaped != null)
+      out.write (sEscaped);
     else
-      if (ch == '&')
-        out.write ("&amp;");
-      else
-        out.write (ch);
+      out.write (ch);
   }
 
+  /**
+   * Writes all characters that don't need escaping as one block to the
+   * underlying writer.
+   */
   @Override
   public void write (@Nonnull final char [] buf, @Nonnegative final int off, @Nonnegative final int len) throws IOException
   {
-    for (int i = 0; i < len; i++)
-      write (buf[off + i]);
+    final int nEnd = off + len;
+    int nStart = off;
+    for (int i = off; i < nEnd; i++)
+    {
+      final String sEscaped = _getEscaped (buf[i]);
+      if (sEscaped != null)
+      {
+        if (i > nStart)
+          out.write (buf, nStart, i - nStart);
+        out.write (sEscaped);
+        nStart = i + 1;
+      }
+    }
+    if (nEnd > nStart)
+      out.write (buf, nStart, nEnd - nStart);
   }
 
   @Override
@@ -93,15 +119,33 @@ public class JavadocEscapeWriter extends FilterWriter
     write (buf, 0, buf.length);
   }
 
+  /**
+   * Writes all characters that don't need escaping as one block to the
+   * underlying writer.
+   */
   @Override
   public void write (@Nonnull final String buf, @Nonnegative final int off, @Nonnegative final int len) throws IOException
   {
-    write (buf.toCharArray (), off, len);
+    final int nEnd = off + len;
+    int nStart = off;
+    for (int i = off; i < nEnd; i++)
+    {
+      final String sEscaped = _getEscaped (buf.charAt (i));
+      if (sEscaped != null)
+      {
+        if (i > nStart)
+          out.write (buf, nStart, i - nStart);
+        out.write (sEscaped);
+        nStart = i + 1;
+      }
+    }
+    if (nEnd > nStart)
+      out.write (buf, nStart, nEnd - nStart);
   }
 
   @Override
   public void write (@Nonnull final String buf) throws IOException
   {
-    write (buf.toCharArray (), 0, buf.length ());
+    write (buf, 0, buf.length ());
   }
 }
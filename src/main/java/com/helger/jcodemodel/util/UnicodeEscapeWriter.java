@@ -66,22 +66,49 @@ public class UnicodeEscapeWriter extends FilterWriter
         ESCAPE.set (i, true);
   }
 
+  /**
+   * The result of {@link #requireEscaping(int)} for all US-ASCII characters.
+   * Lazily created, because {@link #requireEscaping(int)} may be overridden
+   * and must not be called from the constructor.
+   */
+  private boolean [] m_aAsciiEscape;
+
   public UnicodeEscapeWriter (@Nonnull final Writer next)
   {
     super (next);
   }
 
+  @Nonnull
+  private boolean [] _getAsciiEscape ()
+  {
+    boolean [] ret = m_aAsciiEscape;
+    if (ret == null)
+    {
+      ret = new boolean [0x80];
+      for (int i = 0; i < ret.length; i++)
+        ret[i] = requireEscaping (i);
+      m_aAsciiEscape = ret;
+    }
+    return ret;
+  }
+
+  private void _writeEscaped (final int ch) throws IOException
+  {
+    out.write ("\\u");
+    final String s = Integer.toHexString (ch);
+    for (int i = s.length (); i < 4; i++)
+      out.write ('0');
+    out.write (s);
+  }
+
   @Override
   public final void write (final int ch) throws IOException
   {
-    if (requireEscaping (ch))
+    final boolean bEscape = ch >= 0 && ch < 0x80 ? _getAsciiEscape ()[ch] : requireEscaping (ch);
+    if (bEscape)
     {
       // need to escape
-      out.write ("\\u");
-      final String s = Integer.toHexString (ch);
-      for (int i = s.length (); i < 4; i++)
-        out.write ('0');
-      out.write (s);
+      _writeEscaped (ch);
     }
     else
       out.write (ch);
@@ -96,11 +123,29 @@ public class UnicodeEscapeWriter extends FilterWriter
     return ch >= 128 || ESCAPE.get (ch);
   }
 
+  /**
+   * Writes all characters that don't need escaping as one block to the
+   * underlying writer.
+   */
   @Override
   public final void write (@Nonnull final char [] buf, @Nonnegative final int off, @Nonnegative final int len) throws IOException
   {
-    for (int i = 0; i < len; i++)
-      write (buf[off + i]);
+    final boolean [] aAsciiEscape = _getAsciiEscape ();
+    final int nEnd = off + len;
+    int nStart = off;
+    for (int i = off; i < nEnd; i++)
+    {
+      final char ch = buf[i];
+      if (ch < 0x80 ? aAsciiEscape[ch] : requireEscaping (ch))
+      {
+        if (i > nStart)
+          out.write (buf, nStart, i - nStart);
+        _writeEscaped (ch);
+        nStart = i + 1;
+      }
+    }
+    if (nEnd > nStart)
+      out.write (buf, nStart, nEnd - nStart);
   }
 
   @Override
@@ -109,15 +154,34 @@ public class UnicodeEscapeWriter extends FilterWriter
     write (buf, 0, buf.length);
   }
 
+  /**
+   * Writes all characters that don't need escaping as one block to the
+   * underlying writer.
+   */
   @Override
   public final void write (@Nonnull final String buf, @Nonnegative final int off, @Nonnegative final int len) throws IOException
   {
-    write (buf.toCharArray (), off, len);
+    final boolean [] aAsciiEscape = _getAsciiEscape ();
+    final int nEnd = off + len;
+    int nStart = off;
+    for (int i = off; i < nEnd; i++)
+    {
+      final char ch = buf.charAt (i);
+      if (ch < 0x80 ? aAsciiEscape[ch] : requireEscaping (ch))
+      {
+        if (i > nStart)
+          out.write (buf, nStart, i - nStart);
+        _writeEscaped (ch);
+        nStart = i + 1;
+      }
+    }
+    if (nEnd > nStart)
+      out.write (buf, nStart, nEnd - nStart);
   }
 
   @Override
   public final void write (@Nonnull final String buf) throws IOException
   {
-    write (buf.toCharArray (), 0, buf.length ());
+    write (buf, 0, buf.length ());
   }
 }
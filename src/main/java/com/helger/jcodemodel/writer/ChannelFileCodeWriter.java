@@ -0,0 +1,305 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.jcodemodel.JPackage;
+
+/**
+ * A {@link FileCodeWriter} that encodes the sources directly into pooled
+ * direct {@link ByteBuffer}s and stores each file with a single gathering write
+ * on a {@link FileChannel}.
+ * <p>
+ * The encoder, the character buffer and the byte buffers are reused for all
+ * files, so writing many small sources causes neither per-file allocation nor
+ * more than one write call per file. Binary resources are written as in
+ * {@link FileCodeWriter}.
+ * <p>
+ * As for all code writers, only one file may be open at a time.
+ */
+public class ChannelFileCodeWriter extends FileCodeWriter
+{
+  /** The default size of a single pooled byte buffer. */
+  public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+  /**
+   * Collects the encoded content of a single source file.
+   */
+  private final class ChannelSourceWriter extends Writer
+  {
+    private final JPackage m_aPackage;
+    private final String m_sFileName;
+    private final List <ByteBuffer> m_aBuffers = new ArrayList <ByteBuffer> ();
+    private ByteBuffer m_aCurrent;
+    private boolean m_bClosed = false;
+
+    ChannelSourceWriter (@Nonnull final JPackage aPackage, @Nonnull final String sFileName)
+    {
+      m_aPackage = aPackage;
+      m_sFileName = sFileName;
+      m_aEncoder.reset ();
+      m_aChars.clear ();
+      _nextBuffer ();
+    }
+
+    private void _nextBuffer ()
+    {
+      m_aCurrent = _borrowBuffer ();
+      m_aBuffers.add (m_aCurrent);
+    }
+
+    private void _ensureOpen () throws IOException
+    {
+      if (m_bClosed)
+        throw new IOException ("Stream closed");
+    }
+
+    /**
+     * Encode all pending characters. On intermediate calls a trailing high
+     * surrogate stays in the character buffer until its low surrogate arrives.
+     */
+    private void _encode (final boolean bEndOfInput) throws IOException
+    {
+      m_aChars.flip ();
+      while (true)
+      {
+        final CoderResult aResult = m_aEncoder.encode (m_aChars, m_aCurrent, bEndOfInput);
+        if (aResult.isOverflow ())
+          _nextBuffer ();
+        else
+          if (aResult.isUnderflow ())
+            break;
+          else
+            aResult.throwException ();
+      }
+      m_aChars.compact ();
+    }
+
+    @Override
+    public void write (final int c) throws IOException
+    {
+      _ensureOpen ();
+      if (!m_aChars.hasRemaining ())
+        _encode (false);
+      m_aChars.put ((char) c);
+    }
+
+    @Override
+    public void write (@Nonnull final char [] cbuf, final int off, final int len) throws IOException
+    {
+      _ensureOpen ();
+      int nOfs = off;
+      int nLeft = len;
+      while (nLeft > 0)
+      {
+        if (!m_aChars.hasRemaining ())
+          _encode (false);
+        final int nCount = Math.min (nLeft, m_aChars.remaining ());
+        m_aChars.put (cbuf, nOfs, nCount);
+        nOfs += nCount;
+        nLeft -= nCount;
+      }
+    }
+
+    @Override
+    public void write (@Nonnull final String str, final int off, final int len) throws IOException
+    {
+      _ensureOpen ();
+      int nOfs = off;
+      int nLeft = len;
+      while (nLeft > 0)
+      {
+        if (!m_aChars.hasRemaining ())
+          _encode (false);
+        final int nCount = Math.min (nLeft, m_aChars.remaining ());
+        m_aChars.put (str, nOfs, nOfs + nCount);
+        nOfs += nCount;
+        nLeft -= nCount;
+      }
+    }
+
+    @Override
+    public void flush ()
+    {
+      // The content is written when the file is closed
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      if (m_bClosed)
+        return;
+      m_bClosed = true;
+
+      try
+      {
+        _encode (true);
+        while (m_aEncoder.flush (m_aCurrent).isOverflow ())
+          _nextBuffer ();
+
+        final ByteBuffer [] aBuffers = m_aBuffers.toArray (new ByteBuffer [m_aBuffers.size ()]);
+        long nLeft = 0;
+        for (final ByteBuffer aBuffer : aBuffers)
+        {
+          aBuffer.flip ();
+          nLeft += aBuffer.remaining ();
+        }
+
+        final FileOutputStream aFOS = new FileOutputStream (getFile (m_aPackage, m_sFileName));
+        try
+        {
+          final FileChannel aChannel = aFOS.getChannel ();
+          while (nLeft > 0)
+            nLeft -= aChannel.write (aBuffers);
+        }
+        finally
+        {
+          aFOS.close ();
+        }
+      }
+      finally
+      {
+        for (final ByteBuffer aBuffer : m_aBuffers)
+          _returnBuffer (aBuffer);
+        m_aBuffers.clear ();
+        m_aCurrent = null;
+      }
+    }
+  }
+
+  private final int m_nBufferSize;
+  private final CharsetEncoder m_aEncoder;
+  private final CharBuffer m_aChars;
+  private final List <ByteBuffer> m_aBufferPool = new ArrayList <ByteBuffer> ();
+
+  public ChannelFileCodeWriter (@Nonnull final File target) throws IOException
+  {
+    this (target, false);
+  }
+
+  public ChannelFileCodeWriter (@Nonnull final File target, @Nullable final Charset encoding) throws IOException
+  {
+    this (target, false, encoding);
+  }
+
+  public ChannelFileCodeWriter (@Nonnull final File target, final boolean readOnly) throws IOException
+  {
+    this (target, readOnly, null);
+  }
+
+  public ChannelFileCodeWriter (@Nonnull final File target, final boolean readOnly, @Nullable final Charset encoding) throws IOException
+  {
+    this (target, readOnly, encoding, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param target
+   *        The target directory to put the files into.
+   * @param readOnly
+   *        <code>true</code> to mark the generated files read-only.
+   * @param encoding
+   *        The encoding of the source files. <code>null</code> means platform
+   *        encoding.
+   * @param bufferSize
+   *        The size in bytes of each pooled buffer. Larger files use several
+   *        buffers.
+   */
+  public ChannelFileCodeWriter (@Nonnull final File target,
+                                final boolean readOnly,
+                                @Nullable final Charset encoding,
+                                @Nonnegative final int bufferSize) throws IOException
+  {
+    super (target, readOnly, encoding);
+    if (bufferSize < 16)
+      throw new IllegalArgumentException ("bufferSize is too small: " + bufferSize);
+    m_nBufferSize = bufferSize;
+    m_aEncoder = (encoding != null ? encoding : Charset.defaultCharset ()).newEncoder ()
+                                                                           .onMalformedInput (CodingErrorAction.REPLACE)
+                                                                           .onUnmappableCharacter (CodingErrorAction.REPLACE);
+    m_aChars = CharBuffer.allocate (bufferSize);
+  }
+
+  @Nonnull
+  private ByteBuffer _borrowBuffer ()
+  {
+    final int nSize = m_aBufferPool.size ();
+    if (nSize == 0)
+      return ByteBuffer.allocateDirect (m_nBufferSize);
+    return m_aBufferPool.remove (nSize - 1);
+  }
+
+  private void _returnBuffer (@Nonnull final ByteBuffer aBuffer)
+  {
+    aBuffer.clear ();
+    m_aBufferPool.add (aBuffer);
+  }
+
+  @Override
+  @Nonnull
+  public Writer openSource (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  {
+    return createUnicodeEscapeWriter (new ChannelSourceWriter (pkg, fileName), m_aEncoder.charset ());
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    super.close ();
+    m_aBufferPool.clear ();
+  }
+}
@@ -101,8 +101,22 @@ public class FileCodeWriter extends AbstractCodeWriter
     return new FileOutputStream (getFile (pkg, fileName));
   }
 
+  /**
+   * @return The target directory to put the files into. Never
+   *         <code>null</code>.
+   */
   @Nonnull
-  protected File getFile (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  protected File target ()
+  {
+    return _target;
+  }
+
+  /**
+   * Get the file the specified resource is written to, without touching any
+   * existing file. The parent directory is created if necessary.
+   */
+  @Nonnull
+  protected File getTargetFile (@Nonnull final JPackage pkg, @Nonnull final String fileName)
   {
     File dir;
     if (pkg.isUnnamed ())
@@ -113,7 +127,13 @@ public class FileCodeWriter extends AbstractCodeWriter
     if (!dir.exists ())
       dir.mkdirs ();
 
-    final File fn = new File (dir, fileName);
+    return new File (dir, fileName);
+  }
+
+  @Nonnull
+  protected File getFile (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  {
+    final File fn = getTargetFile (pkg, fileName);
 
     if (fn.exists ())
     {
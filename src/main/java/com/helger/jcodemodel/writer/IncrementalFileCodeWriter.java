@@ -0,0 +1,233 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.jcodemodel.JPackage;
+
+/**
+ * A {@link FileCodeWriter} that only writes files whose content changed. Each
+ * file is rendered into memory and compared with the file already on disk. If
+ * both are identical the existing file is left untouched, so that its
+ * modification time is preserved and incremental compilers don't consider it
+ * as changed.
+ * <p>
+ * After {@link #close()} was called, the written, unchanged and stale files are
+ * available. Stale files are files below the target directory that were not
+ * generated by this run. They are only reported and never deleted.
+ */
+public class IncrementalFileCodeWriter extends FileCodeWriter
+{
+  /**
+   * Buffers a single file in memory and stores it when closed.
+   */
+  private final class BufferedFileOutputStream extends ByteArrayOutputStream
+  {
+    private final JPackage m_aPackage;
+    private final String m_sFileName;
+    private boolean m_bClosed = false;
+
+    BufferedFileOutputStream (@Nonnull final JPackage aPackage, @Nonnull final String sFileName)
+    {
+      m_aPackage = aPackage;
+      m_sFileName = sFileName;
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      if (!m_bClosed)
+      {
+        m_bClosed = true;
+        _store (m_aPackage, m_sFileName, buf, count);
+      }
+    }
+  }
+
+  private final Set <File> m_aWrittenFiles = new LinkedHashSet <File> ();
+  private final Set <File> m_aUnchangedFiles = new LinkedHashSet <File> ();
+  private final Set <File> m_aStaleFiles = new LinkedHashSet <File> ();
+
+  public IncrementalFileCodeWriter (@Nonnull final File target) throws IOException
+  {
+    super (target);
+  }
+
+  public IncrementalFileCodeWriter (@Nonnull final File target, @Nullable final Charset encoding) throws IOException
+  {
+    super (target, encoding);
+  }
+
+  public IncrementalFileCodeWriter (@Nonnull final File target, final boolean readOnly) throws IOException
+  {
+    super (target, readOnly);
+  }
+
+  public IncrementalFileCodeWriter (@Nonnull final File target, final boolean readOnly, @Nullable final Charset encoding) throws IOException
+  {
+    super (target, readOnly, encoding);
+  }
+
+  @Override
+  @Nonnull
+  public OutputStream openBinary (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  {
+    return new BufferedFileOutputStream (pkg, fileName);
+  }
+
+  private void _store (@Nonnull final JPackage pkg,
+                       @Nonnull final String fileName,
+                       @Nonnull final byte [] aContent,
+                       final int nLength) throws IOException
+  {
+    final File aExisting = getTargetFile (pkg, fileName);
+    if (aExisting.isFile () && aExisting.length () == nLength && _hasContent (aExisting, aContent, nLength))
+    {
+      m_aUnchangedFiles.add (aExisting);
+      return;
+    }
+
+    // Deletes the previous version
+    final File aFile = getFile (pkg, fileName);
+    final OutputStream os = new FileOutputStream (aFile);
+    try
+    {
+      os.write (aContent, 0, nLength);
+    }
+    finally
+    {
+      os.close ();
+    }
+    m_aWrittenFiles.add (aFile);
+  }
+
+  private static boolean _hasContent (@Nonnull final File aFile, @Nonnull final byte [] aContent, final int nLength) throws IOException
+  {
+    final InputStream is = new FileInputStream (aFile);
+    try
+    {
+      final byte [] aBuffer = new byte [Math.min (Math.max (nLength, 1), 16 * 1024)];
+      int nOffset = 0;
+      int nRead;
+      while ((nRead = is.read (aBuffer)) != -1)
+      {
+        if (nOffset + nRead > nLength)
+          return false;
+        for (int i = 0; i < nRead; i++)
+          if (aBuffer[i] != aContent[nOffset + i])
+            return false;
+        nOffset += nRead;
+      }
+      return nOffset == nLength;
+    }
+    finally
+    {
+      is.close ();
+    }
+  }
+
+  private void _collectStaleFiles (@Nonnull final File aDir)
+  {
+    final File [] aFiles = aDir.listFiles ();
+    if (aFiles != null)
+      for (final File aFile : aFiles)
+      {
+        if (aFile.isDirectory ())
+          _collectStaleFiles (aFile);
+        else
+          if (!m_aWrittenFiles.contains (aFile) && !m_aUnchangedFiles.contains (aFile))
+            m_aStaleFiles.add (aFile);
+      }
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    super.close ();
+    m_aStaleFiles.clear ();
+    _collectStaleFiles (target ());
+  }
+
+  /**
+   * @return All files that were created or whose content changed. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Set <File> getWrittenFiles ()
+  {
+    return Collections.unmodifiableSet (m_aWrittenFiles);
+  }
+
+  /**
+   * @return All files that were generated with exactly the same content as
+   *         before and were therefore not touched. Never <code>null</code>.
+   */
+  @Nonnull
+  public Set <File> getUnchangedFiles ()
+  {
+    return Collections.unmodifiableSet (m_aUnchangedFiles);
+  }
+
+  /**
+   * @return All files in the target directory that were not generated by this
+   *         writer. Only filled after {@link #close()} was called. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Set <File> getStaleFiles ()
+  {
+    return Collections.unmodifiableSet (m_aStaleFiles);
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Writes all the files into a jar file, optionally starting with a manifest.
+ */
+public class JarCodeWriter extends ZipCodeWriter
+{
+  /**
+   * @param target
+   *        Jar file will be written to this stream.
+   * @param manifest
+   *        The manifest to write as the first entry. May be <code>null</code>.
+   * @throws IOException
+   *         If the manifest could not be written
+   */
+  public JarCodeWriter (@Nonnull final OutputStream target, @Nullable final Manifest manifest) throws IOException
+  {
+    this (target, manifest, ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param target
+   *        Jar file will be written to this stream.
+   * @param manifest
+   *        The manifest to write as the first entry. May be <code>null</code>.
+   * @param method
+   *        Either {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}.
+   * @param compressionLevel
+   *        The compression level from {@link Deflater#NO_COMPRESSION} to
+   *        {@link Deflater#BEST_COMPRESSION} or
+   *        {@link Deflater#DEFAULT_COMPRESSION}. Ignored for
+   *        {@link ZipEntry#STORED}.
+   * @throws IOException
+   *         If the manifest could not be written
+   */
+  public JarCodeWriter (@Nonnull final OutputStream target,
+                        @Nullable final Manifest manifest,
+                        final int method,
+                        final int compressionLevel) throws IOException
+  {
+    super (new JarOutputStream (target), method, compressionLevel);
+    if (manifest != null)
+    {
+      final OutputStream os = openEntry (JarFile.MANIFEST_NAME);
+      try
+      {
+        manifest.write (os);
+      }
+      finally
+      {
+        os.close ();
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.jcodemodel.AbstractCodeWriter;
+import com.helger.jcodemodel.JPackage;
+
+/**
+ * Keeps all generated files in memory instead of writing them to disk. Source
+ * files are kept as {@link CharSequence}s and all other files as byte arrays.
+ * Both are keyed by their relative path, like
+ * <code>org/example/Foo.java</code>, in the order in which they were written.
+ * <p>
+ * This is meant for generating code that is compiled right away, for example
+ * with <code>javax.tools.JavaCompiler</code>: each source can be wrapped into a
+ * <code>SimpleJavaFileObject</code> using the path as URI and the
+ * {@link CharSequence} as character content, so no file is ever written or
+ * read.
+ */
+public class MemoryCodeWriter extends AbstractCodeWriter
+{
+  /**
+   * Collects the content of a single source file.
+   */
+  private final class SourceWriter extends Writer
+  {
+    private final String m_sPath;
+    private final StringBuilder m_aSB = new StringBuilder ();
+
+    SourceWriter (@Nonnull final String sPath)
+    {
+      m_sPath = sPath;
+    }
+
+    @Override
+    public void write (final int c)
+    {
+      m_aSB.append ((char) c);
+    }
+
+    @Override
+    public void write (@Nonnull final char [] cbuf, final int off, final int len)
+    {
+      m_aSB.append (cbuf, off, len);
+    }
+
+    @Override
+    public void write (@Nonnull final String str, final int off, final int len)
+    {
+      m_aSB.append (str, off, off + len);
+    }
+
+    @Override
+    public void flush ()
+    {}
+
+    @Override
+    public void close ()
+    {
+      m_aSources.put (m_sPath, m_aSB);
+    }
+  }
+
+  /**
+   * Collects the content of a single binary file.
+   */
+  private final class BinaryOutputStream extends ByteArrayOutputStream
+  {
+    private final String m_sPath;
+
+    BinaryOutputStream (@Nonnull final String sPath)
+    {
+      m_sPath = sPath;
+    }
+
+    @Override
+    public void close ()
+    {
+      m_aResources.put (m_sPath, toByteArray ());
+    }
+  }
+
+  private final Map <String, CharSequence> m_aSources = new LinkedHashMap <String, CharSequence> ();
+  private final Map <String, byte []> m_aResources = new LinkedHashMap <String, byte []> ();
+
+  public MemoryCodeWriter ()
+  {
+    this (null);
+  }
+
+  /**
+   * @param encoding
+   *        The encoding only used for text files that are written via
+   *        {@link #openBinary(JPackage, String)}. <code>null</code> means
+   *        platform encoding.
+   */
+  public MemoryCodeWriter (@Nullable final Charset encoding)
+  {
+    super (encoding);
+  }
+
+  /**
+   * Get the relative path of a file.
+   *
+   * @param pkg
+   *        The package of the file.
+   * @param fileName
+   *        File name without the path.
+   * @return The path with '/' as the separator. Never <code>null</code>.
+   */
+  @Nonnull
+  public static String getPath (@Nonnull final JPackage pkg, @Nonnull final String fileName)
+  {
+    if (pkg.isUnnamed ())
+      return fileName;
+    return pkg.name ().replace ('.', '/') + '/' + fileName;
+  }
+
+  @Override
+  @Nonnull
+  public OutputStream openBinary (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  {
+    return new BinaryOutputStream (getPath (pkg, fileName));
+  }
+
+  @Override
+  @Nonnull
+  public Writer openSource (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  {
+    // Escape like a UTF-8 file, so that only control characters and single
+    // surrogates are escaped
+    return createUnicodeEscapeWriter (new SourceWriter (getPath (pkg, fileName)), Charset.forName ("UTF-8"));
+  }
+
+  @Override
+  public void close ()
+  {}
+
+  /**
+   * @return All source files written so far, keyed by their path. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Map <String, CharSequence> getSources ()
+  {
+    return Collections.unmodifiableMap (m_aSources);
+  }
+
+  /**
+   * @param sPath
+   *        The path as returned by {@link #getPath(JPackage, String)}.
+   * @return The source file with the passed path or <code>null</code> if no
+   *         such source was written.
+   */
+  @Nullable
+  public CharSequence getSource (@Nullable final String sPath)
+  {
+    return m_aSources.get (sPath);
+  }
+
+  /**
+   * @return All files written via {@link #openBinary(JPackage, String)} so
+   *         far, keyed by their path. Never <code>null</code>.
+   */
+  @Nonnull
+  public Map <String, byte []> getResources ()
+  {
+    return Collections.unmodifiableMap (m_aResources);
+  }
+}
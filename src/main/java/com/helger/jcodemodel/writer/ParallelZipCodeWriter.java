@@ -0,0 +1,395 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import javax.annotation.Nonnull;
+
+import com.helger.jcodemodel.AbstractCodeWriter;
+import com.helger.jcodemodel.JPackage;
+
+/**
+ * Writes all the files into a zip file and compresses the entries concurrently
+ * on an {@link Executor}. Each entry is buffered in memory and compressed by a
+ * separate task. The compressed entries are appended to the zip file in the
+ * order in which they were opened, as soon as they are ready, so the result is
+ * the same as with a single thread.
+ * <p>
+ * Only the code writer methods may not be called concurrently. ZIP64 is not
+ * supported, so the archive is limited to 65535 entries and 4 GB.
+ */
+public class ParallelZipCodeWriter extends AbstractCodeWriter
+{
+  private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int VERSION = 20;
+  /** The names are encoded in UTF-8 */
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int MAX_ENTRIES = 0xffff;
+  private static final long MAX_SIZE = 0xffffffffL;
+
+  /**
+   * A completely compressed entry.
+   */
+  private static final class CompressedEntry
+  {
+    private final byte [] m_aName;
+    private final int m_nMethod;
+    private final long m_nCRC;
+    private final long m_nSize;
+    private final byte [] m_aData;
+    private final int m_nDataLength;
+    private long m_nOffset;
+
+    CompressedEntry (@Nonnull final byte [] aName,
+                     final int nMethod,
+                     final long nCRC,
+                     final long nSize,
+                     @Nonnull final byte [] aData,
+                     final int nDataLength)
+    {
+      m_aName = aName;
+      m_nMethod = nMethod;
+      m_nCRC = nCRC;
+      m_nSize = nSize;
+      m_aData = aData;
+      m_nDataLength = nDataLength;
+    }
+  }
+
+  /**
+   * Buffers a single entry and schedules its compression when closed.
+   */
+  private final class EntryOutputStream extends ByteArrayOutputStream
+  {
+    private final String m_sName;
+    private boolean m_bClosed = false;
+
+    EntryOutputStream (@Nonnull final String sName)
+    {
+      m_sName = sName;
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      if (m_bClosed)
+        return;
+      m_bClosed = true;
+
+      final String sName = m_sName;
+      final byte [] aData = buf;
+      final int nLength = count;
+      final FutureTask <CompressedEntry> aTask = new FutureTask <CompressedEntry> (new Callable <CompressedEntry> ()
+      {
+        public CompressedEntry call () throws IOException
+        {
+          return _compress (sName, aData, nLength);
+        }
+      });
+      m_aExecutor.execute (aTask);
+      m_aPending.add (aTask);
+      _writeFinishedEntries (false);
+    }
+  }
+
+  private final OutputStream m_aTarget;
+  private final Executor m_aExecutor;
+  private final int m_nCompressionLevel;
+  private final int m_nDosTime;
+  private final LinkedList <Future <CompressedEntry>> m_aPending = new LinkedList <Future <CompressedEntry>> ();
+  private final List <CompressedEntry> m_aWritten = new ArrayList <CompressedEntry> ();
+  /** The names of all entries opened so far */
+  private final Set <String> m_aNames = new HashSet <String> ();
+  private long m_nOffset = 0;
+  private boolean m_bClosed = false;
+
+  /**
+   * @param target
+   *        Zip file will be written to this stream.
+   * @param executor
+   *        The executor to compress the entries on. It is not shut down by this
+   *        code writer.
+   */
+  public ParallelZipCodeWriter (@Nonnull final OutputStream target, @Nonnull final Executor executor)
+  {
+    this (target, executor, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param target
+   *        Zip file will be written to this stream.
+   * @param executor
+   *        The executor to compress the entries on. It is not shut down by this
+   *        code writer.
+   * @param compressionLevel
+   *        The compression level from {@link Deflater#NO_COMPRESSION} to
+   *        {@link Deflater#BEST_COMPRESSION} or
+   *        {@link Deflater#DEFAULT_COMPRESSION}. With
+   *        {@link Deflater#NO_COMPRESSION} all entries are stored.
+   */
+  public ParallelZipCodeWriter (@Nonnull final OutputStream target,
+                                @Nonnull final Executor executor,
+                                final int compressionLevel)
+  {
+    super (null);
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+      throw new IllegalArgumentException ("Invalid compression level " + compressionLevel);
+    m_aTarget = target;
+    m_aExecutor = executor;
+    m_nCompressionLevel = compressionLevel;
+    m_nDosTime = _toDosTime (System.currentTimeMillis ());
+  }
+
+  private static int _toDosTime (final long nMillis)
+  {
+    final Calendar aCal = Calendar.getInstance ();
+    aCal.setTimeInMillis (nMillis);
+    return (aCal.get (Calendar.YEAR) - 1980) << 25 |
+           (aCal.get (Calendar.MONTH) + 1) << 21 |
+           aCal.get (Calendar.DAY_OF_MONTH) << 16 |
+           aCal.get (Calendar.HOUR_OF_DAY) << 11 |
+           aCal.get (Calendar.MINUTE) << 5 |
+           aCal.get (Calendar.SECOND) >> 1;
+  }
+
+  @Nonnull
+  private CompressedEntry _compress (@Nonnull final String sName, @Nonnull final byte [] aData, final int nLength) throws IOException
+  {
+    final byte [] aName = sName.getBytes ("UTF-8");
+    final CRC32 aCRC = new CRC32 ();
+    aCRC.update (aData, 0, nLength);
+
+    if (m_nCompressionLevel != Deflater.NO_COMPRESSION)
+    {
+      final Deflater aDeflater = new Deflater (m_nCompressionLevel, true);
+      try
+      {
+        aDeflater.setInput (aData, 0, nLength);
+        aDeflater.finish ();
+        // Compressing makes no sense if it does not save anything
+        final byte [] aCompressed = new byte [nLength];
+        int nCompressed = 0;
+        while (!aDeflater.finished () && nCompressed < nLength)
+          nCompressed += aDeflater.deflate (aCompressed, nCompressed, nLength - nCompressed);
+        if (aDeflater.finished () && nCompressed < nLength)
+          return new CompressedEntry (aName, ZipEntry.DEFLATED, aCRC.getValue (), nLength, aCompressed, nCompressed);
+      }
+      finally
+      {
+        aDeflater.end ();
+      }
+    }
+    return new CompressedEntry (aName, ZipEntry.STORED, aCRC.getValue (), nLength, aData, nLength);
+  }
+
+  @Override
+  @Nonnull
+  public OutputStream openBinary (@Nonnull final JPackage pkg, @Nonnull final String fileName) throws IOException
+  {
+    String name = fileName;
+    if (!pkg.isUnnamed ())
+      name = pkg.name ().replace ('.', '/') + '/' + name;
+    if (!m_aNames.add (name))
+      throw new ZipException ("duplicate entry: " + name);
+    return new EntryOutputStream (name);
+  }
+
+  /**
+   * Append all compressed entries to the zip file, in the order in which they
+   * were opened.
+   *
+   * @param bWait
+   *        <code>true</code> to wait for all pending entries,
+   *        <code>false</code> to stop at the first entry that is not yet
+   *        compressed.
+   */
+  private void _writeFinishedEntries (final boolean bWait) throws IOException
+  {
+    while (!m_aPending.isEmpty () && (bWait || m_aPending.getFirst ().isDone ()))
+    {
+      final CompressedEntry aEntry = _getCompressedEntry (m_aPending.removeFirst ());
+      if (m_aWritten.size () >= MAX_ENTRIES || m_nOffset + aEntry.m_nDataLength > MAX_SIZE)
+        throw new IOException ("The zip file is too large, because ZIP64 is not supported");
+
+      aEntry.m_nOffset = m_nOffset;
+      final ByteArrayOutputStream aHeader = new ByteArrayOutputStream (30 + aEntry.m_aName.length);
+      _writeInt (aHeader, LOCAL_FILE_HEADER_SIGNATURE);
+      _writeShort (aHeader, VERSION);
+      _writeEntryInfo (aHeader, aEntry);
+      _writeShort (aHeader, 0);
+      aHeader.write (aEntry.m_aName);
+
+      aHeader.writeTo (m_aTarget);
+      m_aTarget.write (aEntry.m_aData, 0, aEntry.m_nDataLength);
+      m_nOffset += aHeader.size () + aEntry.m_nDataLength;
+      m_aWritten.add (aEntry);
+    }
+  }
+
+  @Nonnull
+  private static CompressedEntry _getCompressedEntry (@Nonnull final Future <CompressedEntry> aFuture) throws IOException
+  {
+    try
+    {
+      return aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new InterruptedIOException ("Interrupted while waiting for a zip entry to be compressed");
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      if (aCause instanceof Error)
+        throw (Error) aCause;
+      if (aCause instanceof IOException)
+        throw (IOException) aCause;
+      final IOException ioex = new IOException ("Failed to compress zip entry");
+      ioex.initCause (aCause);
+      throw ioex;
+    }
+  }
+
+  /**
+   * Write the part that is shared by the local and the central header: from
+   * the flags up to the length of the name.
+   */
+  private void _writeEntryInfo (@Nonnull final ByteArrayOutputStream aOS, @Nonnull final CompressedEntry aEntry)
+  {
+    _writeShort (aOS, FLAG_UTF8);
+    _writeShort (aOS, aEntry.m_nMethod);
+    _writeInt (aOS, m_nDosTime);
+    _writeInt (aOS, (int) aEntry.m_nCRC);
+    _writeInt (aOS, aEntry.m_nDataLength);
+    _writeInt (aOS, (int) aEntry.m_nSize);
+    _writeShort (aOS, aEntry.m_aName.length);
+  }
+
+  private static void _writeShort (@Nonnull final ByteArrayOutputStream aOS, final int n)
+  {
+    aOS.write (n & 0xff);
+    aOS.write ((n >>> 8) & 0xff);
+  }
+
+  private static void _writeInt (@Nonnull final ByteArrayOutputStream aOS, final int n)
+  {
+    _writeShort (aOS, n & 0xffff);
+    _writeShort (aOS, n >>> 16);
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    // The same code writer may be used for sources and resources
+    if (m_bClosed)
+      return;
+    m_bClosed = true;
+
+    try
+    {
+      _writeFinishedEntries (true);
+
+      // central directory
+      final ByteArrayOutputStream aCD = new ByteArrayOutputStream ();
+      for (final CompressedEntry aEntry : m_aWritten)
+      {
+        _writeInt (aCD, CENTRAL_FILE_HEADER_SIGNATURE);
+        _writeShort (aCD, VERSION);
+        _writeShort (aCD, VERSION);
+        _writeEntryInfo (aCD, aEntry);
+        // extra field, comment, disk number, internal and external attributes
+        _writeShort (aCD, 0);
+        _writeShort (aCD, 0);
+        _writeShort (aCD, 0);
+        _writeShort (aCD, 0);
+        _writeInt (aCD, 0);
+        _writeInt (aCD, (int) aEntry.m_nOffset);
+        aCD.write (aEntry.m_aName);
+      }
+      if (m_nOffset + aCD.size () > MAX_SIZE)
+        throw new IOException ("The zip file is too large, because ZIP64 is not supported");
+
+      // end of central directory
+      final int nCDSize = aCD.size ();
+      _writeInt (aCD, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+      _writeShort (aCD, 0);
+      _writeShort (aCD, 0);
+      _writeShort (aCD, m_aWritten.size ());
+      _writeShort (aCD, m_aWritten.size ());
+      _writeInt (aCD, nCDSize);
+      _writeInt (aCD, (int) m_nOffset);
+      _writeShort (aCD, 0);
+      aCD.writeTo (m_aTarget);
+    }
+    finally
+    {
+      // Don't waste any time on entries that are no longer needed
+      for (final Future <CompressedEntry> aFuture : m_aPending)
+        aFuture.cancel (false);
+      m_aPending.clear ();
+      m_aTarget.close ();
+    }
+  }
+}
@@ -40,9 +40,12 @@
  */
 package com.helger.jcodemodel.writer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -53,25 +56,119 @@ import com.helger.jcodemodel.JPackage;
 
 /**
  * Writes all the files into a zip file.
- * 
+ * <p>
+ * The entries are either compressed with a configurable compression level, or
+ * stored uncompressed, which is the fastest option for local builds. Use
+ * {@link ParallelZipCodeWriter} to compress the entries on multiple threads.
+ *
  * @author Kohsuke Kawaguchi (kohsuke.kawaguchi@sun.com)
  */
 public class ZipCodeWriter extends AbstractCodeWriter
 {
+  /**
+   * Buffers a single uncompressed entry, because the size and the checksum of
+   * a stored entry must be known before its data is written.
+   */
+  private final class StoredEntryOutputStream extends ByteArrayOutputStream
+  {
+    private final String m_sName;
+    private boolean m_bClosed = false;
+
+    StoredEntryOutputStream (@Nonnull final String sName)
+    {
+      m_sName = sName;
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      if (m_bClosed)
+        return;
+      m_bClosed = true;
+
+      final CRC32 aCRC = new CRC32 ();
+      aCRC.update (buf, 0, count);
+      final ZipEntry aEntry = new ZipEntry (m_sName);
+      aEntry.setMethod (ZipEntry.STORED);
+      aEntry.setSize (count);
+      aEntry.setCompressedSize (count);
+      aEntry.setCrc (aCRC.getValue ());
+      _zip.putNextEntry (aEntry);
+      _zip.write (buf, 0, count);
+      _zip.closeEntry ();
+    }
+  }
+
   private final ZipOutputStream _zip;
   private final OutputStream _filter;
+  private final int _method;
 
   /**
    * @param target
    *        Zip file will be written to this stream.
    */
   public ZipCodeWriter (@Nonnull final OutputStream target)
+  {
+    this (target, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param target
+   *        Zip file will be written to this stream.
+   * @param compressionLevel
+   *        The compression level from {@link Deflater#NO_COMPRESSION} to
+   *        {@link Deflater#BEST_COMPRESSION} or
+   *        {@link Deflater#DEFAULT_COMPRESSION}.
+   */
+  public ZipCodeWriter (@Nonnull final OutputStream target, final int compressionLevel)
+  {
+    this (target, ZipEntry.DEFLATED, compressionLevel);
+  }
+
+  /**
+   * @param target
+   *        Zip file will be written to this stream.
+   * @param method
+   *        Either {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}.
+   * @param compressionLevel
+   *        The compression level from {@link Deflater#NO_COMPRESSION} to
+   *        {@link Deflater#BEST_COMPRESSION} or
+   *        {@link Deflater#DEFAULT_COMPRESSION}. Ignored for
+   *        {@link ZipEntry#STORED}.
+   */
+  public ZipCodeWriter (@Nonnull final OutputStream target, final int method, final int compressionLevel)
+  {
+    this (new ZipOutputStream (target), method, compressionLevel);
+  }
+
+  /**
+   * @param zip
+   *        The stream to write the entries to. It is closed when this code
+   *        writer is closed.
+   * @param method
+   *        Either {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}.
+   * @param compressionLevel
+   *        The compression level. Ignored for {@link ZipEntry#STORED}.
+   */
+  protected ZipCodeWriter (@Nonnull final ZipOutputStream zip, final int method, final int compressionLevel)
   {
     super (null);
-    _zip = new ZipOutputStream (target);
+    if (method != ZipEntry.DEFLATED && method != ZipEntry.STORED)
+      throw new IllegalArgumentException ("Unsupported compression method " + method);
+    _zip = zip;
+    _method = method;
+    if (method == ZipEntry.DEFLATED)
+      _zip.setLevel (compressionLevel);
     // nullify the close method.
     _filter = new FilterOutputStream (_zip)
     {
+      @Override
+      public void write (final byte [] b, final int off, final int len) throws IOException
+      {
+        // bulk write instead of the byte-by-byte default
+        out.write (b, off, len);
+      }
+
       @Override
       public void close ()
       {}
@@ -85,6 +182,23 @@ public class ZipCodeWriter extends AbstractCodeWriter
     if (!pkg.isUnnamed ())
       name = _toDirName (pkg) + name;
 
+    return openEntry (name);
+  }
+
+  /**
+   * Start a new entry in the zip file.
+   *
+   * @param name
+   *        The full name of the entry, with '/' as the separator.
+   * @return The stream to write the content of the entry to. It must be closed
+   *         before the next entry is opened.
+   */
+  @Nonnull
+  protected OutputStream openEntry (@Nonnull final String name) throws IOException
+  {
+    if (_method == ZipEntry.STORED)
+      return new StoredEntryOutputStream (name);
+
     _zip.putNextEntry (new ZipEntry (name));
     return _filter;
   }
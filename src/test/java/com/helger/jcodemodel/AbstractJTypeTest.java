@@ -41,9 +41,13 @@
 package com.helger.jcodemodel;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -208,4 +212,31 @@ public final class AbstractJTypeTest
       }
     }
   }
+
+  @Test
+  public void testBaseClassCacheInvalidation () throws Exception
+  {
+    final JCodeModel codeModel = new JCodeModel ();
+    final AbstractJClass _Integer = codeModel.ref (Integer.class);
+    final AbstractJClass _List = codeModel.ref (List.class);
+    final AbstractJClass _Collection = codeModel.ref (Collection.class);
+    final JDefinedClass aBase = codeModel._class ("foo.Base");
+    final JDefinedClass aDerived = codeModel._class ("foo.Derived")._extends (aBase);
+
+    assertNull (aDerived.getBaseClass (_Collection));
+    assertFalse (aDerived.isAssignableTo (_Collection));
+    assertTrue (aDerived.isAssignableTo (aBase));
+
+    // Changing a super class must be visible in the derived class
+    aBase._implements (_List.narrow (_Integer));
+    assertSame (_List.narrow (_Integer), aDerived.getBaseClass (_List));
+    assertSame (_Collection, aDerived.getBaseClass (_Collection));
+    assertTrue (aDerived.isAssignableTo (_Collection.narrow (String.class)));
+    assertTrue (aDerived.isAssignableTo (List.class));
+
+    assertFalse (aDerived.isAssignableTo (Serializable.class));
+    aDerived._extends (codeModel._class ("foo.Other")._implements (Serializable.class));
+    assertTrue (aDerived.isAssignableTo (Serializable.class));
+    assertFalse (aDerived.isAssignableTo (aBase));
+  }
 }
@@ -41,6 +41,13 @@
 package com.helger.jcodemodel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -66,4 +73,65 @@ public final class JBlockTest
     assertEquals ("", CodeModelTestsUtils.toString (new JBlock ().bracesRequired (false).indentRequired (true)));
     assertEquals ("", CodeModelTestsUtils.toString (new JBlock ().bracesRequired (false).indentRequired (false)));
   }
+
+  @Test
+  public void testInsertBeforeMultiple ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JBlock b = new JBlock ();
+    final JVar x = b.decl (cm.INT, "x");
+    // Equal statements, which must be told apart
+    final JInvocation first = b.invoke ("foo");
+    final JInvocation second = b.invoke ("foo");
+    assertEquals (first, second);
+
+    final JVar a = new JVar (JMods.forVar (JMod.FINAL), cm.INT, "a", JExpr.lit (1));
+    final JVar b1 = new JVar (JMods.forVar (JMod.FINAL), cm.INT, "b1", JExpr.lit (2));
+    final JVar b2 = new JVar (JMods.forVar (JMod.FINAL), cm.INT, "b2", JExpr.lit (3));
+    final Map <Object, List <JVar>> vars = new IdentityHashMap <Object, List <JVar>> ();
+    vars.put (x, new ArrayList <JVar> ());
+    vars.get (x).add (a);
+    vars.put (second, new ArrayList <JVar> ());
+    vars.get (second).add (b1);
+    vars.get (second).add (b2);
+    b.insertBefore (vars);
+
+    final List <Object> contents = b.getContents ();
+    assertEquals (6, contents.size ());
+    assertSame (a, contents.get (0));
+    assertSame (x, contents.get (1));
+    assertSame (first, contents.get (2));
+    assertSame (b1, contents.get (3));
+    assertSame (b2, contents.get (4));
+    assertSame (second, contents.get (5));
+    // New statements are still appended
+    assertEquals (6, b.pos ());
+  }
+
+  @Test
+  public void testInsertBeforeUnknownElement ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JBlock b = new JBlock ();
+    final JVar x = b.decl (cm.INT, "x");
+    final JInvocation notInBlock = JExpr.invoke ("foo");
+
+    final Map <Object, List <JVar>> vars = new IdentityHashMap <Object, List <JVar>> ();
+    vars.put (x, new ArrayList <JVar> ());
+    vars.get (x).add (new JVar (JMods.forVar (JMod.FINAL), cm.INT, "a", JExpr.lit (1)));
+    vars.put (notInBlock, new ArrayList <JVar> ());
+    vars.get (notInBlock).add (new JVar (JMods.forVar (JMod.FINAL), cm.INT, "b", JExpr.lit (2)));
+    try
+    {
+      b.insertBefore (vars);
+      fail ();
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // expected
+    }
+    // The block is not modified
+    assertEquals (1, b.size ());
+    assertSame (x, b.getContents ().get (0));
+  }
 }
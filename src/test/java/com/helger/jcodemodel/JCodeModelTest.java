@@ -40,11 +40,35 @@
  */
 package com.helger.jcodemodel;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.writer.MemoryCodeWriter;
+import com.helger.jcodemodel.writer.SingleStreamCodeWriter;
 
 /**
  * @author Kohsuke Kawaguchi
@@ -58,4 +82,305 @@ public class JCodeModelTest
     assertNotNull (cm.parseType ("java.util.ArrayList<java.lang.String[]>[]"));
     assertNotNull (cm.parseType ("java.util.ArrayList<java.util.ArrayList<java.util.ArrayList<java.lang.String[]>[]>[]>[]"));
   }
+
+  @Test
+  public void testClassesSortedByName () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass aC = cm._class ("org.example.C");
+    final JDefinedClass aA = cm._class ("org.example.A");
+    final JDefinedClass aB = cm._class ("org.example.B");
+    assertEquals (Arrays.asList (aA, aB, aC), new ArrayList <JDefinedClass> (cm._package ("org.example").classes ()));
+  }
+
+  private static void _createClass (final JCodeModel cm, final int i) throws JClassAlreadyExistsException
+  {
+    final JDefinedClass c = cm._class ("org.example" + (i % 5) + ".Class" + i);
+    c._implements (cm.ref (List.class).narrow (String.class));
+    final JFieldVar f = c.field (JMod.PRIVATE, cm.ref (Map.class).narrow (String.class, Object.class), "m_aMap");
+    final JMethod m = c.method (JMod.PUBLIC, cm.INT, "size");
+    m.body ()._return (f.invoke ("size"));
+  }
+
+  private static JCodeModel _createModel () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    cm._package ("org.example").javadoc ().add ("Package doc");
+    for (int i = 0; i < 50; ++i)
+      _createClass (cm, i);
+    return cm;
+  }
+
+  @Test
+  public void testParallelBuildIsIdentical () throws Exception
+  {
+    final ByteArrayOutputStream aSerial = new ByteArrayOutputStream ();
+    _createModel ().build (new SingleStreamCodeWriter (aSerial));
+
+    final ByteArrayOutputStream aParallel = new ByteArrayOutputStream ();
+    final SingleStreamCodeWriter aParallelCW = new SingleStreamCodeWriter (aParallel);
+    _createModel ().build (aParallelCW, aParallelCW, 4);
+
+    assertArrayEquals (aSerial.toByteArray (), aParallel.toByteArray ());
+  }
+
+  @Test
+  public void testPipelinedBuildIsBounded () throws Exception
+  {
+    final ByteArrayOutputStream aSerial = new ByteArrayOutputStream ();
+    _createModel ().build (new SingleStreamCodeWriter (aSerial));
+
+    final int nMaxPending = 3;
+    final AtomicInteger aScheduled = new AtomicInteger ();
+    final AtomicInteger aWritten = new AtomicInteger ();
+    final AtomicInteger aMaxAhead = new AtomicInteger ();
+    final ExecutorService aES = Executors.newFixedThreadPool (2);
+    try
+    {
+      final Executor aCountingExecutor = new Executor ()
+      {
+        public void execute (final Runnable aCommand)
+        {
+          aScheduled.incrementAndGet ();
+          aES.execute (aCommand);
+        }
+      };
+      final ByteArrayOutputStream aPipelined = new ByteArrayOutputStream ();
+      final SingleStreamCodeWriter aCW = new SingleStreamCodeWriter (aPipelined)
+      {
+        @Override
+        public Writer openSource (final JPackage pkg, final String fileName) throws IOException
+        {
+          if (!fileName.equals ("package-info.java"))
+            aMaxAhead.set (Math.max (aMaxAhead.get (), aScheduled.get () - aWritten.getAndIncrement ()));
+          return super.openSource (pkg, fileName);
+        }
+      };
+      _createModel ().build (aCW, aCW, aCountingExecutor, nMaxPending);
+
+      assertArrayEquals (aSerial.toByteArray (), aPipelined.toByteArray ());
+      assertEquals (50, aScheduled.get ());
+      assertEquals (50, aWritten.get ());
+      assertEquals (nMaxPending, aMaxAhead.get ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testBuildListener () throws Exception
+  {
+    final HistogramBuildListener aListener = new HistogramBuildListener (5);
+    final MemoryCodeWriter aSerialCW = new MemoryCodeWriter ();
+    final JCodeModel cm = _createModel ();
+    assertSame (cm, cm.setBuildListener (aListener));
+    assertSame (aListener, cm.getBuildListener ());
+    cm.build (aSerialCW);
+
+    long nChars = 0;
+    for (final Map.Entry <String, CharSequence> aEntry : aSerialCW.getSources ().entrySet ())
+      if (!aEntry.getKey ().endsWith ("package-info.java"))
+        nChars += aEntry.getValue ().length ();
+
+    assertEquals (1, aListener.getBuildNanos ().getCount ());
+    assertEquals (50, aListener.getClassNanos ().getCount ());
+    assertEquals (50, aListener.getCollectNanos ().getCount ());
+    assertEquals (nChars, aListener.getClassChars ().getSum ());
+    assertTrue (aListener.getClassImports ().getSum () > 0);
+    assertEquals (5, aListener.getSlowestClasses ().size ());
+    assertTrue (aListener.getSlowestClasses ().get (0).getNanos () >= aListener.getSlowestClasses ()
+                                                                               .get (4)
+                                                                               .getNanos ());
+    assertEquals (10, aListener.getPackageTotals ().get ("org.example0").getClasses ());
+    long nPackageChars = 0;
+    for (final HistogramBuildListener.PackageTotals aTotals : aListener.getPackageTotals ().values ())
+      nPackageChars += aTotals.getChars ();
+    assertEquals (nChars, nPackageChars);
+
+    // The pipelined build reports the same totals
+    final ExecutorService aES = Executors.newFixedThreadPool (2);
+    try
+    {
+      final MemoryCodeWriter aPipelinedCW = new MemoryCodeWriter ();
+      _createModel ().setBuildListener (aListener).build (aPipelinedCW, aPipelinedCW, aES, 3);
+      assertEquals (2, aListener.getBuildNanos ().getCount ());
+      assertEquals (100, aListener.getClassNanos ().getCount ());
+      assertEquals (2 * nChars, aListener.getClassChars ().getSum ());
+      assertEquals (20, aListener.getPackageTotals ().get ("org.example4").getClasses ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testHistogramPercentiles ()
+  {
+    final HistogramBuildListener.Histogram aHisto = new HistogramBuildListener.Histogram ();
+    assertEquals (0, aHisto.getPercentile (50));
+    for (int i = 1; i <= 100; ++i)
+      aHisto.add (i);
+    assertEquals (100, aHisto.getCount ());
+    assertEquals (1, aHisto.getMin ());
+    assertEquals (100, aHisto.getMax ());
+    assertEquals (5050, aHisto.getSum ());
+    assertEquals (1, aHisto.getBucketCount (1));
+    assertEquals (2, aHisto.getBucketCount (2));
+    assertEquals (63, aHisto.getPercentile (50));
+    assertEquals (100, aHisto.getPercentile (99));
+  }
+
+  @Test
+  public void testNarrowedClassesAreShared ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final AbstractJClass aList = cm.ref (List.class).narrow (String.class);
+    assertSame (aList, cm.ref (List.class).narrow (cm.ref (String.class)));
+    assertSame (aList, cm.ref (List.class).narrow (new AbstractJClass [] { cm.ref (String.class) }));
+    assertSame (aList.array (), cm.ref (List.class).narrow (String.class).array ());
+
+    final AbstractJClass aMap = cm.ref (Map.class).narrow (cm.ref (String.class), aList);
+    assertSame (aMap, cm.ref (Map.class).narrow (String.class).narrow (aList));
+    assertNotSame (aMap, cm.ref (Map.class).narrow (aList, cm.ref (String.class)));
+
+    // Other code models have their own instances
+    assertNotSame (aList, new JCodeModel ().ref (List.class).narrow (String.class));
+  }
+
+  @Test
+  public void testEmit () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass aEmitted = cm._class ("org.example.Emitted");
+    final JMethod aMethod = aEmitted.method (JMod.PUBLIC, cm.INT, "answer");
+    aMethod.body ()._return (JExpr.lit (42));
+    final JDefinedClass aOther = cm._class ("org.example.Other");
+    aOther.field (JMod.PRIVATE, aEmitted, "m_aEmitted");
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    final SingleStreamCodeWriter aCW = new SingleStreamCodeWriter (aBAOS);
+    cm.emit (aEmitted, aCW);
+    assertTrue (aEmitted.isEmitted ());
+    assertTrue (aBAOS.toString ("UTF-8").contains ("return  42;"));
+
+    // The body is gone, but the class is still usable as a type
+    try
+    {
+      aMethod.body ();
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+    assertSame (aMethod, aEmitted.getMethod ("answer", new AbstractJType [0]));
+    try
+    {
+      aEmitted._implements (Serializable.class);
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+
+    cm.build (aCW);
+    final String sOutput = aBAOS.toString ("UTF-8");
+    assertEquals (sOutput.indexOf ("class Emitted"), sOutput.lastIndexOf ("class Emitted"));
+    assertTrue (sOutput.contains ("private Emitted m_aEmitted;"));
+  }
+
+  @Test
+  public void testConcurrentConstruction () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    cm._package ("org.example").javadoc ().add ("Package doc");
+
+    // All threads try to create all classes, in different orders
+    final int nThreads = 4;
+    final AtomicInteger aCreated = new AtomicInteger ();
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    try
+    {
+      final List <Future <Object>> aFutures = new ArrayList <Future <Object>> ();
+      for (int t = 0; t < nThreads; ++t)
+      {
+        final int nOffset = t * 13;
+        aFutures.add (aES.submit (new Callable <Object> ()
+        {
+          public Object call () throws Exception
+          {
+            for (int i = 0; i < 50; ++i)
+            {
+              try
+              {
+                _createClass (cm, (i + nOffset) % 50);
+                aCreated.incrementAndGet ();
+              }
+              catch (final JClassAlreadyExistsException ex)
+              {
+                // Created by another thread
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (final Future <Object> aFuture : aFutures)
+        aFuture.get ();
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+    assertEquals (50, aCreated.get ());
+
+    // The output does not depend on the creation order
+    final ByteArrayOutputStream aSerial = new ByteArrayOutputStream ();
+    _createModel ().build (new SingleStreamCodeWriter (aSerial));
+    final ByteArrayOutputStream aConcurrent = new ByteArrayOutputStream ();
+    cm.build (new SingleStreamCodeWriter (aConcurrent));
+    assertArrayEquals (aSerial.toByteArray (), aConcurrent.toByteArray ());
+  }
+
+  @Test
+  public void testRefByName ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    assertSame (cm.ref (String.class), cm.ref ("java.lang.String"));
+
+    final AbstractJClass aUnknown = cm.ref ("org.example.DoesNotExist");
+    assertTrue (aUnknown instanceof JDirectClass);
+    assertSame (aUnknown, cm.ref ("org.example.DoesNotExist"));
+    assertSame (aUnknown, cm.directClass ("org.example.DoesNotExist"));
+
+    cm.setClassResolver (EClassResolver.NEVER_REFLECT);
+    final AbstractJClass aString = cm.ref ("java.lang.String");
+    assertTrue (aString instanceof JDirectClass);
+    assertEquals ("java.lang.String", aString.fullName ());
+  }
+
+  @Test
+  public void testReferencedClassMetadata ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final AbstractJClass aEntry = cm.ref (Map.Entry.class);
+    assertEquals ("Entry", aEntry.name ());
+    assertEquals ("java.util.Map.Entry", aEntry.fullName ());
+    assertSame (cm.ref (Map.class), aEntry.outer ());
+    assertSame (cm.ref (Object.class), aEntry._extends ());
+
+    final AbstractJClass aList = cm.ref (ArrayList.class);
+    for (int i = 0; i < 2; ++i)
+    {
+      // Same result when resolved from the cache
+      assertSame (cm.ref (java.util.AbstractList.class), aList._extends ());
+      assertSame (cm.ref (List.class), aList._implements ().next ());
+      assertNull (aList.outer ());
+      assertSame (cm._package ("java.util"), aList._package ());
+    }
+  }
 }
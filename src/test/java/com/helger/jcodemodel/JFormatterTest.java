@@ -0,0 +1,175 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link JFormatter}.
+ */
+public final class JFormatterTest
+{
+  @Nonnull
+  private static String _write (@Nonnull final JDefinedClass c, final boolean bSinglePass)
+  {
+    final StringWriter aSW = new StringWriter ();
+    final JFormatter f = new JFormatter (aSW).setSinglePass (bSinglePass);
+    f.write (c);
+    f.close ();
+    return aSW.toString ();
+  }
+
+  @Test
+  public void testSinglePassIsIdentical () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass aOtherList = cm._class ("org.example.other.List");
+    final JDefinedClass c = cm._class ("org.example.Foo");
+    c.javadoc ().append ("Refers to ").append (cm.ref (Map.class).narrow (String.class, Integer.class));
+    c.field (JMod.PRIVATE, cm.ref (List.class).narrow (String.class), "m_aList");
+    c.field (JMod.PRIVATE, aOtherList, "m_aOtherList");
+    final JDefinedClass aInner = c._class (JMod.PUBLIC | JMod.STATIC, "Inner");
+    final JMethod m = c.method (JMod.PUBLIC, aInner, "create");
+    final JVar aParam = m.param (cm.ref (Map.Entry.class), "String");
+    m.body ()._if (aParam.eq (JExpr._null ()))._then ()._return (JExpr._new (aInner));
+    m.body ()._return (JExpr._null ());
+
+    assertEquals (_write (c, false), _write (c, true));
+  }
+
+  @Test
+  public void testResetIsIdentical () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass aOtherList = cm._class ("org.example.other.List");
+    final JDefinedClass c1 = cm._class ("org.example.Foo");
+    c1.field (JMod.PRIVATE, cm.ref (List.class).narrow (String.class), "m_aList");
+    c1.method (JMod.PUBLIC, cm.VOID, "run").body ().decl (cm.INT, "Map", JExpr.lit (1));
+    final JDefinedClass c2 = cm._class ("org.example.Bar");
+    c2.field (JMod.PRIVATE, aOtherList, "m_aOtherList");
+    c2.field (JMod.PRIVATE, cm.ref (Map.class), "m_aMap");
+
+    final StringWriter aSW1 = new StringWriter ();
+    final JFormatter f = new JFormatter (aSW1);
+    f.write (c1);
+    f.close ();
+    assertEquals (_write (c1, true), aSW1.toString ());
+
+    // A closed formatter no longer writes to its writer
+    f.write (c2);
+    assertEquals (_write (c1, true), aSW1.toString ());
+
+    // Reuse after close
+    final StringWriter aSW2 = new StringWriter ();
+    f.reset (aSW2).write (c2);
+    assertEquals (_write (c2, true), aSW2.toString ());
+
+    // Reuse without close
+    final StringWriter aSW3 = new StringWriter ();
+    f.reset (aSW3).write (c1);
+    f.close ();
+    assertEquals (_write (c1, true), aSW3.toString ());
+  }
+
+  @Test
+  public void testLargeAndDeeplyNestedClass () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass c = cm._class ("org.example.Foo");
+    for (int i = 0; i < 200; i++)
+    {
+      JBlock aBlock = c.method (JMod.PUBLIC, cm.VOID, "m" + i).body ();
+      for (int j = 0; j < 12; j++)
+        aBlock = aBlock._if (JExpr.lit (j).lt (JExpr.lit (i)))._then ();
+      aBlock.decl (cm.INT, "x", JExpr.lit (i));
+    }
+
+    final String sSource = _write (c, true);
+    assertEquals (_write (c, false), sSource);
+    assertTrue (sSource.length () > 100000);
+    final StringBuilder aIndent = new StringBuilder ();
+    for (int i = 0; i < 14; i++)
+      aIndent.append ("    ");
+    assertTrue (sSource.contains (aIndent + "int x = 199;"));
+  }
+
+  @Test
+  public void testCheckError () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass c = cm._class ("org.example.Foo");
+
+    final JFormatter f = new JFormatter (new Writer ()
+    {
+      @Override
+      public void write (final char [] cbuf, final int off, final int len) throws IOException
+      {
+        throw new IOException ("Disk full");
+      }
+
+      @Override
+      public void flush ()
+      {}
+
+      @Override
+      public void close ()
+      {}
+    });
+    f.write (c);
+    f.close ();
+    assertTrue (f.checkError ());
+
+    f.reset (new StringWriter ());
+    assertFalse (f.checkError ());
+  }
+}
@@ -40,6 +40,9 @@
  */
 package com.helger.jcodemodel;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -112,4 +115,47 @@ public class JInvocationTest
 
     cm.build (new SingleStreamCodeWriter (System.out));
   }
+
+  @Test
+  public void testHashCodeFollowsModifications ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JInvocation aInner1 = JExpr.invoke ("foo").arg (JExpr.lit (1));
+    final JInvocation aInner2 = JExpr.invoke ("foo").arg (JExpr.lit (1));
+    final JInvocation aOuter1 = JExpr.invoke ("bar").arg (aInner1);
+    final JInvocation aOuter2 = JExpr.invoke ("bar").arg (aInner2);
+    assertEquals (aOuter1, aOuter2);
+    assertEquals (aOuter1.hashCode (), aOuter2.hashCode ());
+
+    // Modifying a nested invocation must be reflected by the cached hash code
+    // of the outer invocation
+    aInner2.arg (JExpr.lit (2));
+    assertFalse (aOuter1.equals (aOuter2));
+    assertFalse (aOuter1.hashCode () == aOuter2.hashCode ());
+    aInner1.arg (JExpr.lit (2));
+    assertEquals (aOuter1, aOuter2);
+    assertEquals (aOuter1.hashCode (), aOuter2.hashCode ());
+
+    // Renaming a variable changes the hash code of references to it
+    final JVar aVar = new JVar (JMods.forVar (JMod.NONE), cm.INT, "a", null);
+    final JOpBinary aSum = JExpr.ref (aVar).plus (JExpr.lit (1));
+    final int nOldHashCode = aSum.hashCode ();
+    aVar.name ("b");
+    assertFalse (nOldHashCode == aSum.hashCode ());
+    assertEquals (JExpr.ref ("b").plus (JExpr.lit (1)).hashCode (), aSum.hashCode ());
+  }
+
+  @Test
+  public void testCachedHashCodeFollowsModifications ()
+  {
+    AbstractJExpressionImpl.beginHashCodeCaching ();
+    try
+    {
+      testHashCodeFollowsModifications ();
+    }
+    finally
+    {
+      AbstractJExpressionImpl.endHashCodeCaching ();
+    }
+  }
 }
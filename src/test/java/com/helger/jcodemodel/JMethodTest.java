@@ -64,4 +64,38 @@ public class JMethodTest
     Assert.assertEquals (1, m.params ().size ());
     Assert.assertSame (foo, m.params ().get (0));
   }
+
+  @Test
+  public void testMethodLookup () throws JClassAlreadyExistsException
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("Test");
+    final AbstractJType [] aNoArgs = new AbstractJType [0];
+    final AbstractJType [] aStringArg = new AbstractJType [] { cm.ref (String.class) };
+
+    final JMethod m1 = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JMethod m2 = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    m2.param (String.class, "s");
+    Assert.assertSame (m1, cls.getMethod ("foo", aNoArgs));
+    Assert.assertSame (m2, cls.getMethod ("foo", aStringArg));
+    Assert.assertNull (cls.getMethod ("bar", aNoArgs));
+
+    m1.name ("bar");
+    Assert.assertNull (cls.getMethod ("foo", aNoArgs));
+    Assert.assertSame (m1, cls.getMethod ("bar", aNoArgs));
+
+    cls.removeMethod (m2);
+    Assert.assertNull (cls.getMethod ("foo", aStringArg));
+    Assert.assertEquals (1, cls.methods ().size ());
+
+    final JMethod c1 = cls.constructor (JMod.PUBLIC);
+    final JMethod c2 = cls.constructor (JMod.PUBLIC);
+    c2.param (String.class, "s");
+    Assert.assertSame (c1, cls.getConstructor (aNoArgs));
+    Assert.assertSame (c2, cls.getConstructor (aStringArg));
+
+    cls.removeConstructor (c1);
+    Assert.assertNull (cls.getConstructor (aNoArgs));
+    Assert.assertSame (c2, cls.getConstructor (aStringArg));
+  }
 }
@@ -43,6 +43,7 @@ package com.helger.jcodemodel.optimize;
 import static com.helger.jcodemodel.JExpr._new;
 import static com.helger.jcodemodel.JExpr.lit;
 import static com.helger.jcodemodel.JExpr.ref;
+import static org.junit.Assert.assertEquals;
 
 import java.util.HashSet;
 
@@ -280,4 +281,60 @@ public final class CSETest
     CSE.optimize (b);
     System.out.println (CodeModelTestsUtils.declare (cls));
   }
+
+  @Test
+  public void testDeepLoopNesting () throws JClassAlreadyExistsException
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestDeepLoopNesting");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JBlock b = m.body ();
+
+    final JVar a = b.decl ("a", JExpr.newArray (cm.INT, 42));
+    final JVar j = b.decl ("j", lit (42));
+
+    // Each loop used to be processed twice per nesting level
+    JBlock body = b;
+    for (int d = 0; d < 30; d++)
+    {
+      final JForLoop _for = body._for ();
+      final JVar i = _for.init (cm.INT, "i" + d, lit (0));
+      _for.test (i.lt (lit (10)));
+      _for.update (i.incr ());
+      body = _for.body ();
+    }
+    _println (cm, body, a.component (j));
+    _println (cm, body, a.component (j));
+
+    CSE.optimize (b);
+    final String code = CodeModelTestsUtils.declare (cls);
+    // Hoisted out of all loops
+    assertEquals (code, 4, b.getContents ().size ());
+    assertEquals (code, 1, code.split ("a\\[j\\]", -1).length - 1);
+  }
+
+  @Test
+  public void testLargeBlock () throws JClassAlreadyExistsException
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestLargeBlock");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JBlock b = m.body ();
+
+    final JVar a = b.decl ("a", JExpr.newArray (cm.INT, 42));
+    final JVar [] vars = new JVar [100];
+    for (int i = 0; i < vars.length; i++)
+      vars[i] = b.decl (cm.INT, "v" + i, lit (i));
+    final int nStatements = 10000;
+    for (int i = 0; i < nStatements; i++)
+    {
+      // Reads a[v(i+1)] twice, then invalidates a[v(i)]
+      final JVar read = vars[(i + 1) % vars.length];
+      b.assign (vars[i % vars.length], a.component (read).plus (a.component (read)));
+    }
+
+    CSE.optimize (b);
+    // One variable per assignment
+    assertEquals (1 + vars.length + 2 * nStatements, b.getContents ().size ());
+  }
 }
@@ -0,0 +1,139 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import static com.helger.jcodemodel.JExpr.lit;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JOp;
+import com.helger.jcodemodel.JReturn;
+import com.helger.jcodemodel.JVar;
+import com.helger.jcodemodel.tests.util.CodeModelTestsUtils;
+
+public final class ConstantFoldingTest
+{
+  private static String _fold (final IJExpression expression)
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JBlock b = new JBlock ();
+    final JVar v = b.decl (cm.ref (Object.class), "v", expression);
+    ConstantFolding.optimize (b);
+    return CodeModelTestsUtils.toString (v.init ());
+  }
+
+  @Test
+  public void testArithmetic ()
+  {
+    assertEquals ("7", _fold (lit (3).plus (lit (4))));
+    // Integer.MIN_VALUE has no positive literal to negate
+    assertEquals ("(2147483647 + 1)", _fold (lit (Integer.MAX_VALUE).plus (lit (1))));
+    assertEquals ("(- 2)", _fold (JOp.minus (lit (7).div (lit (3)))));
+    assertEquals ("3L", _fold (lit (1).plus (lit (2L))));
+    assertEquals ("0.5", _fold (lit (1).div (lit (2.0))));
+    assertEquals ("2", _fold (lit (1).shl (lit (33))));
+    assertEquals ("8589934592L", _fold (lit (1L).shl (lit (33))));
+    assertEquals ("(- 1)", _fold (JOp.complement (lit (0))));
+    // Would throw at runtime
+    assertEquals ("(1 / 0)", _fold (lit (1).div (lit (0))));
+    assertEquals ("(1L% 0L)", _fold (lit (1L).mod (lit (0L))));
+  }
+
+  @Test
+  public void testNegativeResults ()
+  {
+    final IJExpression x = JExpr.ref ("x");
+    // Must not print as "x --3"
+    assertEquals ("(x -(- 3))", _fold (x.minus (JOp.minus (lit (3)))));
+    assertEquals ("(x -(- 5L))", _fold (x.minus (lit (0).minus (lit (5L)))));
+    assertEquals ("3", _fold (JOp.minus (JOp.minus (lit (3)))));
+    assertEquals ("(x -(- 0.5))", _fold (x.minus (lit (0.5).minus (lit (1)))));
+  }
+
+  @Test
+  public void testStrings ()
+  {
+    assertEquals ("\"a12\"", _fold (lit ("a").plus (lit (1)).plus (lit (2))));
+    assertEquals ("\"3a\"", _fold (lit (1).plus (lit (2)).plus (lit ("a"))));
+    assertEquals ("\"a1.5true\"", _fold (lit ("a").plus (lit (1.5)).plus (JOp.not (lit (false)))));
+  }
+
+  @Test
+  public void testBooleans ()
+  {
+    final IJExpression x = JOp.gt (JExpr.ref ("x"), lit (0));
+    assertEquals ("true", _fold (lit (1).lt (lit (2))));
+    assertEquals ("false", _fold (lit (Double.NaN).gte (lit (1.0))));
+    assertEquals ("true", _fold (lit (Float.NaN).ne (lit (Float.NaN))));
+    assertEquals ("false", _fold (lit (false).cand (x)));
+    assertEquals (CodeModelTestsUtils.toString (x), _fold (JOp.cand (lit (1).lt (lit (2)), x)));
+    assertEquals (CodeModelTestsUtils.toString (x), _fold (JOp.cor (x, lit (2).lt (lit (1)))));
+    assertEquals ("1L", _fold (JOp.cond (lit (1).lt (lit (2)), lit (1), lit (2L))));
+    assertEquals ("\"b\"", _fold (JOp.cond (lit (false), lit ("a"), lit ("b"))));
+    // The type of the conditional is Object
+    assertEquals ("(true?\"a\": 1)", _fold (JOp.cond (lit (true), lit ("a"), lit (1))));
+  }
+
+  @Test
+  public void testNestedInStatements ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JBlock b = new JBlock ();
+    final JVar x = b.decl (cm.INT, "x", lit (0));
+    final JVar y = b.decl (cm.INT, "y", x.plus (lit (2).mul (lit (3))));
+    final JVar z = b.decl (cm.INT, "z", JOp.minus (x.minus (lit (1).plus (lit (1)))));
+    final JConditional cond = b._if (x.lt (lit (10).mod (lit (4))));
+    cond._then ().assign (x, lit (1).minus (lit (2)));
+    final JReturn ret = cond._else ()._return (lit ("a").plus (lit ("b")));
+
+    ConstantFolding.optimize (b);
+    assertEquals ("(x + 6)", CodeModelTestsUtils.toString (y.init ()));
+    assertEquals ("(-(x - 2))", CodeModelTestsUtils.toString (z.init ()));
+    assertEquals ("(x< 2)", CodeModelTestsUtils.toString (cond.test ()));
+    assertEquals ("\"ab\"", CodeModelTestsUtils.toString (ret.expr ()));
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import static com.helger.jcodemodel.JExpr.lit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JLabel;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JOp;
+import com.helger.jcodemodel.JVar;
+
+public final class DeadCodeEliminationTest
+{
+  @Test
+  public void testUnreachableStatements () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestUnreachableStatements");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JVar p = m.param (cm.INT, "p");
+    final JBlock b = m.body ();
+
+    final JConditional cond = b._if (p.gt (lit (0)));
+    cond._then ()._return (lit (1));
+    cond._then ().invoke ("unreachable");
+    cond._else ()._throw (JExpr._new (cm.ref (IllegalArgumentException.class)));
+    b._return (lit (0));
+
+    DeadCodeElimination.optimize (m);
+    assertEquals (1, b.size ());
+    assertSame (cond, b.getContents ().get (0));
+    assertEquals (1, cond._then ().size ());
+
+    // The insertion position is still valid
+    b.invoke ("added");
+    assertEquals (2, b.size ());
+  }
+
+  @Test
+  public void testLabeledBreak () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestLabeledBreak");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JBlock b = m.body ();
+
+    final JVar s = b.decl (cm.INT, "s", lit (0));
+    final JLabel lbl = b.label ("lbl");
+    final JBlock labeled = b.block ();
+    labeled.assign (s, lit (1));
+    labeled._break (lbl);
+    labeled.invoke ("unreachable");
+    b._return (s);
+
+    DeadCodeElimination.optimize (m);
+    // the labeled block completes normally through "break lbl"
+    assertEquals (4, b.size ());
+    assertEquals (2, labeled.size ());
+  }
+
+  @Test
+  public void testConstantConditions () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestConstantConditions");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JBlock b = m.body ();
+
+    final JConditional always = b._if (JExpr.TRUE);
+    always._then ().invoke ("kept");
+    always._else ().invoke ("dropped1");
+    b._if (JExpr.FALSE)._then ().invoke ("dropped2");
+    final JConditional never = b._if (JExpr.FALSE);
+    never._then ().invoke ("dropped3");
+    never._else ()._return ();
+    b.invoke ("unreachable");
+
+    DeadCodeElimination.optimize (m);
+    assertEquals (2, b.size ());
+    assertSame (always._then (), b.getContents ().get (0));
+    assertSame (never._else (), b.getContents ().get (1));
+  }
+
+  @Test
+  public void testEmptyBlocks () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestEmptyBlocks");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar p = m.param (cm.INT, "p");
+    final JBlock b = m.body ();
+
+    b.block ().block ();
+    b._if (p.gt (lit (0)));
+    // the condition has side effects
+    b._if (JExpr.invoke ("test"));
+    final JForLoop loop = b._for ();
+    loop.test (p.lt (lit (10)));
+    loop.body ().block ();
+
+    DeadCodeElimination.optimize (m);
+    assertEquals (2, b.size ());
+    assertEquals (0, loop.body ().size ());
+  }
+
+  @Test
+  public void testUnusedVariables () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestUnusedVariables");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JVar p = m.param (cm.INT, "p");
+    final JBlock b = m.body ();
+
+    final JVar a = b.decl (cm.INT, "a", p.plus (lit (1)));
+    // only used by the unused variable c
+    final JVar bb = b.decl (cm.INT, "b", a.mul (lit (2)));
+    b.decl (cm.LONG, "c", JExpr.cast (cm.LONG, bb));
+    // has side effects
+    final JVar d = b.decl (cm.INT, "d", JExpr.invoke ("compute"));
+    // division may throw
+    final JVar e = b.decl (cm.INT, "e", p.div (lit (0)));
+    // assigned, but not read
+    final JVar f = b.decl (cm.INT, "f");
+    b.assign (f, lit (1));
+    // referenced by name
+    final JVar g = b.decl (cm.INT, "g", lit (1));
+    b._return (JExpr.ref ("g"));
+
+    DeadCodeElimination.optimize (m);
+    assertEquals (6, b.size ());
+    assertSame (d, b.getContents ().get (0));
+    assertSame (e, b.getContents ().get (1));
+    assertSame (f, b.getContents ().get (2));
+    assertSame (g, b.getContents ().get (4));
+  }
+
+  @Test
+  public void testUnboxingVariables () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestUnboxingVariables");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JBlock b = m.body ();
+
+    final JVar a = b.decl (cm.ref (Integer.class), "a", JExpr._null ());
+    // unboxing a null Integer throws
+    final JVar minus = b.decl (cm.INT, "minus", a.minus (lit (1)));
+    final JVar cast = b.decl (cm.INT, "cast", JExpr.cast (cm.INT, a));
+    final JVar less = b.decl (cm.BOOLEAN, "less", a.lt (lit (1)));
+    final JVar negated = b.decl (cm.INT, "negated", JOp.minus (a));
+    // comparing references does not unbox
+    b.decl (cm.BOOLEAN, "same", a.eq (JExpr._null ()));
+
+    DeadCodeElimination.optimize (m);
+    assertEquals (5, b.size ());
+    assertSame (a, b.getContents ().get (0));
+    assertSame (minus, b.getContents ().get (1));
+    assertSame (cast, b.getContents ().get (2));
+    assertSame (less, b.getContents ().get (3));
+    assertSame (negated, b.getContents ().get (4));
+  }
+
+  @Test
+  public void testUntrackedReferences () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestUntrackedReferences");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JBlock b = m.body ();
+
+    b.decl (cm.INT, "a", lit (1));
+    b.directStatement ("System.out.println (a);");
+
+    DeadCodeElimination.optimize (m);
+    assertEquals (2, b.size ());
+  }
+}
@@ -0,0 +1,327 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import static com.helger.jcodemodel.JExpr.lit;
+import static com.helger.jcodemodel.JExpr.ref;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JArrayCompRef;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldRef;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JVar;
+import com.helger.jcodemodel.JWhileLoop;
+import com.helger.jcodemodel.tests.util.CodeModelTestsUtils;
+
+public final class LoopInvariantCodeMotionTest
+{
+  // may throw, so only for loops whose body is always executed
+  private static final ExpressionFilter FIELDS_AND_ARRAYS = new ExpressionFilter ()
+  {
+    public boolean test (final IJExpression expression)
+    {
+      return expression instanceof JFieldRef || expression instanceof JArrayCompRef;
+    }
+  };
+
+  private static String _init (final Object var)
+  {
+    return CodeModelTestsUtils.toString (((JVar) var).init ());
+  }
+
+  @Test
+  public void testForLoop () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestForLoop");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JVar a = m.param (cm.INT.array (), "a");
+    final JVar k = m.param (cm.INT, "k");
+    final JBlock b = m.body ();
+
+    final JVar sum = b.decl (cm.INT, "sum", lit (0));
+    final JForLoop loop = b._for ();
+    final JVar i = loop.init (cm.INT, "i", lit (0));
+    loop.test (i.lt (a.ref ("length").hintType (cm.INT)));
+    loop.update (i.incr ());
+    loop.body ().assignPlus (sum, a.component (i).mul (a.component (k)));
+    loop.body ().assignPlus (sum, a.component (k));
+    b._return (sum);
+
+    // a may be null and k out of bounds
+    LoopInvariantCodeMotion.optimize (b);
+    assertEquals (3, b.size ());
+
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS);
+    assertEquals (5, b.size ());
+    assertEquals ("a.length", _init (b.getContents ().get (1)));
+    assertEquals ("a[k]", _init (b.getContents ().get (2)));
+    assertSame (loop, b.getContents ().get (3));
+    // a[i] is not invariant
+    assertTrue (CodeModelTestsUtils.toString (loop.body ()).contains ("a[i]"));
+  }
+
+  @Test
+  public void testModifiedInLoop () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestModifiedInLoop");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar a = m.param (cm.INT.array (), "a");
+    final JVar o = m.param (cls, "o");
+    final JBlock b = m.body ();
+
+    final JWhileLoop loop = b._while (ref (o, "next").hintType (cls).ne (lit (0)));
+    loop.body ().assign (o, ref (o, "next").hintType (cls));
+    // the index is modified by name
+    loop.body ().assign (a.component (ref ("j").hintType (cm.INT)), lit (1));
+    loop.body ().assign (ref ("j"), lit (2));
+    loop.body ().decl (cm.INT, "x", a.component (ref ("j").hintType (cm.INT)));
+
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS);
+    assertEquals (1, b.size ());
+  }
+
+  @Test
+  public void testNestedLoops () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestNestedLoops");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar a = m.param (cm.INT.array ().array (), "a");
+    final JVar k = m.param (cm.INT, "k");
+    final JBlock b = m.body ();
+
+    final JForLoop outer = b._for ();
+    final JVar i = outer.init (cm.INT, "i", lit (0));
+    outer.test (i.lt (lit (10)));
+    outer.update (i.incr ());
+    final JForLoop inner = outer.body ()._for ();
+    final JVar j = inner.init (cm.INT, "j", lit (0));
+    inner.test (j.lt (lit (10)));
+    inner.update (j.incr ());
+    inner.body ().assign (a.component (i).component (j), a.component (k).component (i));
+
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS);
+    // the body of the inner loop is not executed on every iteration of the
+    // outer loop
+    assertEquals (1, b.size ());
+    assertEquals (3, outer.body ().size ());
+    assertEquals ("a[i]", _init (outer.body ().getContents ().get (0)));
+    assertEquals ("a[k][i]", _init (outer.body ().getContents ().get (1)));
+    assertSame (inner, outer.body ().getContents ().get (2));
+  }
+
+  @Test
+  public void testInvocationChain () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestInvocationChain");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar schema = m.param (cls, "schema");
+    final JVar k = m.param (cm.INT, "k");
+    final JVar n = m.param (cm.INT, "n");
+    final JBlock b = m.body ();
+
+    final JForLoop loop = b._for ();
+    final JVar i = loop.init (cm.INT, "i", lit (0));
+    loop.test (i.lt (n));
+    loop.update (i.incr ());
+    final IJExpression length = schema.invoke ("field")
+                                      .arg (k)
+                                      .hintType (cls)
+                                      .invoke ("name")
+                                      .hintType (cm.ref (String.class))
+                                      .invoke ("length")
+                                      .hintType (cm.INT);
+    final JMethod process = cls.method (JMod.PRIVATE, cm.VOID, "process");
+    loop.body ().invoke (process).arg (i).arg (length);
+
+    // not moved with the default filter
+    LoopInvariantCodeMotion.optimize (b);
+    assertEquals (1, b.size ());
+
+    final ExpressionFilter invocations = new ExpressionFilter ()
+    {
+      public boolean test (final IJExpression expression)
+      {
+        return expression instanceof JInvocation && !"void".equals (expression.expressionType ().fullName ());
+      }
+    };
+    // process, field and name may modify anything
+    LoopInvariantCodeMotion.optimize (b, invocations);
+    assertEquals (1, b.size ());
+
+    final PurityModel model = PurityModel.createWithJDKDefaults ()
+                                         .setPurity (process, EPurity.READ_ONLY)
+                                         .setPurity ("TestInvocationChain", "field", EPurity.READ_ONLY)
+                                         .setPurity ("TestInvocationChain", "name", EPurity.READ_ONLY);
+    LoopInvariantCodeMotion.optimize (b, invocations, model);
+    assertEquals (2, b.size ());
+    assertEquals ("schema.field(k).name().length()", _init (b.getContents ().get (0)));
+  }
+
+  @Test
+  public void testUntrackedStatement () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestUntrackedStatement");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar a = m.param (cm.INT.array (), "a");
+    final JVar k = m.param (cm.INT, "k");
+    final JBlock b = m.body ();
+
+    final JWhileLoop loop = b._while (a.component (k).gt (lit (0)));
+    loop.body ().directStatement ("k++;");
+
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS);
+    assertEquals (1, b.size ());
+  }
+
+  @Test
+  public void testThisField () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestThisField");
+    final JVar count = cls.field (JMod.PRIVATE, cm.INT, "count");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JVar n = m.param (cm.INT, "n");
+    final JBlock b = m.body ();
+
+    final JVar sum = b.decl (cm.INT, "sum", lit (0));
+    final JWhileLoop loop = b._while (sum.lt (n));
+    loop.body ().assignPlus (sum, JExpr._this ().ref (count).mul (n));
+    b._return (sum);
+
+    LoopInvariantCodeMotion.optimize (b);
+    assertEquals (4, b.size ());
+    assertEquals ("this.count", _init (b.getContents ().get (1)));
+    assertEquals ("count", ((JVar) b.getContents ().get (1)).name ());
+    assertSame (loop, b.getContents ().get (2));
+  }
+
+  @Test
+  public void testFieldModifiedByInvocation () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestFieldModifiedByInvocation");
+    final JVar count = cls.field (JMod.PRIVATE, cm.INT, "count");
+    final JMethod inc = cls.method (JMod.PRIVATE, cm.VOID, "inc");
+    inc.body ().assignPlus (JExpr._this ().ref (count), lit (1));
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JBlock b = m.body ();
+
+    final JWhileLoop loop = b._while (JExpr._this ().ref (count).lt (lit (10)));
+    loop.body ().invoke (inc);
+
+    // inc writes the field without an assignment in the loop
+    LoopInvariantCodeMotion.optimize (b);
+    assertEquals (1, b.size ());
+    assertTrue (CodeModelTestsUtils.toString (loop).contains ("this.count"));
+
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS, PurityModel.createWithJDKDefaults ().setPurity (inc, EPurity.READ_ONLY));
+    assertEquals (2, b.size ());
+  }
+
+  @Test
+  public void testConditionallyEvaluated () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestConditionallyEvaluated");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JVar p = m.param (cls, "p");
+    final JVar arr = m.param (cm.INT.array (), "arr");
+    final JVar n = m.param (cm.INT, "n");
+    final JBlock b = m.body ();
+
+    final JVar s = b.decl (cm.INT, "s", lit (0));
+    final JForLoop loop = b._for ();
+    final JVar i = loop.init (cm.INT, "i", lit (0));
+    loop.test (i.lt (n));
+    loop.update (i.incr ());
+    loop.body ()._if (p.ne (JExpr._null ()).cand (p.ref ("y").hintType (cm.INT).gt (i)))._then ().assignPlus (s, i);
+    loop.body ()._if (p.ne (JExpr._null ()))._then ().assignPlus (s, p.ref ("x").hintType (cm.INT));
+    loop.body ().assignPlus (s, arr.component (n));
+    b._return (s);
+
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS);
+    // p.y is the right operand of &&, p.x is in a branch and arr[n] follows
+    // a branching statement
+    assertEquals (3, b.size ());
+    final String body = CodeModelTestsUtils.toString (loop.body ());
+    assertTrue (body.contains ("p.x"));
+    assertTrue (body.contains ("p.y"));
+    assertTrue (body.contains ("arr[n]"));
+  }
+
+  @Test
+  public void testLiteralIndex () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("TestLiteralIndex");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.INT, "foo");
+    final JVar arr = m.param (cm.INT.array (), "arr");
+    final JVar n = m.param (cm.INT, "n");
+    final JBlock b = m.body ();
+
+    final JVar s = b.decl (cm.INT, "s", lit (0));
+    final JWhileLoop loop = b._while (s.lt (n));
+    loop.body ().assignPlus (s, arr.component (lit (5)));
+    b._return (s);
+
+    // no variable name can be derived from arr[5]
+    LoopInvariantCodeMotion.optimize (b, FIELDS_AND_ARRAYS);
+    assertEquals (3, b.size ());
+    assertTrue (CodeModelTestsUtils.toString (loop.body ()).contains ("arr[ 5 ]"));
+  }
+}
@@ -0,0 +1,241 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.optimize;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.EClassType;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JVar;
+import com.helger.jcodemodel.tests.util.CodeModelTestsUtils;
+
+/**
+ * Test class for class {@link PurityModel}.
+ */
+public final class PurityModelTest
+{
+  private static int _count (final String s, final String part)
+  {
+    int ret = 0;
+    for (int i = s.indexOf (part); i >= 0; i = s.indexOf (part, i + 1))
+      ret++;
+    return ret;
+  }
+
+  @Test
+  public void testJDKDefaults ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final PurityModel model = PurityModel.createWithJDKDefaults ();
+    final JBlock b = new JBlock ();
+    final JVar s = b.decl (cm.ref (String.class), "s");
+    final AbstractJClass listType = cm.ref (ArrayList.class).narrow (String.class);
+    final JVar list = b.decl (listType, "list");
+
+    assertEquals (EPurity.PURE, model.getPurity (cm.ref (Math.class).staticInvoke ("abs").arg (s.invoke ("length"))));
+    assertEquals (EPurity.IMPURE, model.getPurity (cm.ref (Math.class).staticInvoke ("random")));
+    assertEquals (EPurity.PURE, model.getPurity (s.invoke ("length")));
+    assertEquals (EPurity.PURE, model.getPurity (s.invoke ("getClass")));
+    // May call the toString() of any object
+    assertEquals (EPurity.IMPURE, model.getPurity (cm.ref (String.class).staticInvoke ("valueOf").arg (list)));
+    assertEquals (EPurity.READ_ONLY, model.getPurity (list.invoke ("size")));
+    assertEquals (EPurity.READ_ONLY, model.getPurity (list.invoke ("get").arg (0)));
+    assertEquals (EPurity.IMPURE, model.getPurity (list.invoke ("add").arg (s)));
+    assertEquals (EPurity.READ_ONLY, model.getPurity (JExpr._new (listType)));
+    assertEquals (EPurity.IMPURE, model.getPurity (JExpr.invoke ("foo")));
+    assertEquals (EPurity.IMPURE, model.getPurity (JExpr.ref ("untyped").invoke ("length")));
+
+    assertEquals (EPurity.IMPURE, new PurityModel ().getPurity (s.invoke ("length")));
+  }
+
+  @Test
+  public void testDefinedMethods () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass pure = cm._class ("org.example.Pure", EClassType.ANNOTATION_TYPE_DECL);
+    final JDefinedClass bean = cm._class ("org.example.Bean");
+    final JMethod getName = bean.method (JMod.PUBLIC, cm.ref (String.class), "getName");
+    final JMethod getId = bean.method (JMod.PUBLIC, cm.INT, "getId");
+    getId.annotate (pure);
+    final JMethod setName = bean.method (JMod.PUBLIC, cm.VOID, "setName");
+    bean.method (JMod.PUBLIC, cm.INT, "count");
+    bean.method (JMod.PUBLIC, cm.INT, "count").param (cm.INT, "x");
+
+    final PurityModel model = new PurityModel ().setPurity (getName, EPurity.READ_ONLY)
+                                                .setAnnotationPurity ("org.example.Pure", EPurity.PURE);
+    final JVar v = new JBlock ().decl (bean, "bean");
+
+    assertEquals (EPurity.READ_ONLY, model.getPurity (getName));
+    assertEquals (EPurity.PURE, model.getPurity (getId));
+    assertEquals (null, model.getPurity (setName));
+    assertEquals (EPurity.READ_ONLY, model.getPurity (v.invoke (getName)));
+    assertEquals (EPurity.READ_ONLY, model.getPurity (v.invoke ("getName")));
+    assertEquals (EPurity.PURE, model.getPurity (v.invoke ("getId")));
+    assertEquals (EPurity.IMPURE, model.getPurity (v.invoke (setName)));
+    assertEquals (EPurity.IMPURE, model.getPurity (v.invoke ("count")));
+
+    // A class wide registration applies to unknown methods only
+    model.setClassPurity ("org.example.Bean", EPurity.READ_ONLY);
+    assertEquals (EPurity.READ_ONLY, model.getPurity (v.invoke ("hashCode")));
+    assertEquals (EPurity.IMPURE, model.getPurity (v.invoke ("count")));
+  }
+
+  @Test
+  public void testFilter ()
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final PurityModel model = PurityModel.createWithJDKDefaults ();
+    final JBlock b = new JBlock ();
+    final JVar s = b.decl (cm.ref (String.class), "s");
+    final JVar i = b.decl (cm.INT, "i");
+
+    assertEquals (true, model.test (s.invoke ("length").hintType (cm.INT)));
+    // Unknown type
+    assertEquals (false, model.test (s.invoke ("length")));
+    assertEquals (false, model.test (s.invoke ("getBytes").hintType (cm.BYTE.array ())));
+    assertEquals (false, model.test (s.invoke ("charAt").arg (JExpr.incr (i)).hintType (cm.CHAR)));
+    assertEquals (false, model.test (JExpr._new (cm.ref (String.class))));
+    assertEquals (true, model.test (JExpr.ref (s, "field")));
+    assertEquals (false, model.test (cm.ref (Integer.class).staticRef ("MAX_VALUE")));
+  }
+
+  @Test
+  public void testCSE () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass bean = cm._class ("org.example.Bean");
+    final JMethod getName = bean.method (JMod.PUBLIC, cm.ref (String.class), "getName");
+    final JMethod setName = bean.method (JMod.PUBLIC, cm.VOID, "setName");
+    setName.param (cm.ref (String.class), "name");
+    final JMethod m = bean.method (JMod.PUBLIC, cm.VOID, "map");
+    final JVar other = m.param (bean, "other");
+    final JBlock b = m.body ();
+    final JVar n = b.decl (cm.INT, "n");
+    final JVar s = b.decl (cm.ref (String.class), "s");
+
+    final PurityModel model = PurityModel.createWithJDKDefaults ().setPurity (getName, EPurity.READ_ONLY);
+    // Read-only getter chains are eliminated ...
+    b.assign (n, other.invoke (getName).invoke ("length").hintType (cm.INT));
+    b.assign (s, other.invoke (getName).invoke ("trim").hintType (cm.ref (String.class)));
+    // ... but not across the setter
+    b.invoke (other, setName).arg (s);
+    b.assign (n, other.invoke (getName).invoke ("length").hintType (cm.INT));
+
+    CSE.optimize (b, model);
+    final String code = CodeModelTestsUtils.declare (m);
+    assertEquals (code, 2, _count (code, "other.getName()"));
+    assertEquals (code, 2, _count (code, ".length()"));
+  }
+
+  @Test
+  public void testFieldReadsInvalidatedByInvocation () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("org.example.Fields");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar other = m.param (cls, "other");
+    final JBlock b = m.body ();
+    final JVar n = b.decl (cm.INT, "n");
+    final IJExpression field = JExpr.ref (other, "x").hintType (cm.INT);
+
+    b.assign (n, field);
+    // The argument is read before the invocation
+    b.add (JExpr.invoke ("update").arg (field));
+    b.assign (n, field);
+    b.assign (n, field);
+
+    CSE.optimize (b, PurityModel.createWithJDKDefaults ());
+    final String code = CodeModelTestsUtils.declare (m);
+    // One variable before and one after the invocation
+    assertEquals (code, 2, _count (code, "other.x"));
+    assertEquals (code, 2, _count (code, "final int"));
+    assertEquals (code, 1, _count (code, "update(otherX)"));
+
+    // Without the model the invocation is ignored
+    final JMethod m2 = cls.method (JMod.PUBLIC, cm.VOID, "bar");
+    final JVar other2 = m2.param (cls, "other");
+    final JBlock b2 = m2.body ();
+    final JVar n2 = b2.decl (cm.INT, "n");
+    final JInvocation update = JExpr.invoke ("update");
+    b2.assign (n2, JExpr.ref (other2, "x").hintType (cm.INT));
+    b2.add (update);
+    b2.assign (n2, JExpr.ref (other2, "x").hintType (cm.INT));
+    CSE.optimize (b2);
+    assertEquals (1, _count (CodeModelTestsUtils.declare (m2), "other.x"));
+  }
+
+  @Test
+  public void testLoop () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass cls = cm._class ("org.example.Loop");
+    final JMethod m = cls.method (JMod.PUBLIC, cm.VOID, "foo");
+    final JVar other = m.param (cls, "other");
+    final JBlock b = m.body ();
+    final JVar n = b.decl (cm.INT, "n");
+    final JForLoop loop = b._for ();
+    final JVar i = loop.init (cm.INT, "i", JExpr.lit (0));
+    loop.test (i.lt (JExpr.lit (10)));
+    loop.update (JExpr.incr (i));
+    loop.body ().assign (n, JExpr.ref (other, "x").hintType (cm.INT));
+    loop.body ().assign (n, JExpr.ref (other, "x").hintType (cm.INT));
+    // The field may change in the next iteration
+    loop.body ().invoke ("update");
+
+    CSE.optimize (b, PurityModel.createWithJDKDefaults ());
+    final String code = CodeModelTestsUtils.declare (m);
+    assertEquals (code, 1, _count (code, "other.x"));
+    assertEquals (code, true, code.indexOf ("other.x") > code.indexOf ("for ("));
+  }
+}
@@ -40,6 +40,8 @@
  */
 package com.helger.jcodemodel.tests.util;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
 
 import javax.annotation.Nonnull;
@@ -141,4 +143,35 @@ public final class CodeModelTestsUtils
     generable.generate (formatter);
     return aSW.toString ();
   }
+
+  /**
+   * Creates a new empty directory in the default temporary-file directory.
+   *
+   * @return The created directory. Never <code>null</code>.
+   * @throws IOException
+   *         if the directory could not be created
+   */
+  @Nonnull
+  public static File createTempDir () throws IOException
+  {
+    final File aDir = File.createTempFile ("jcm", "");
+    if (!aDir.delete () || !aDir.mkdirs ())
+      throw new IOException ("Failed to create temporary directory " + aDir);
+    return aDir;
+  }
+
+  /**
+   * Deletes a file or a directory including all its contents.
+   *
+   * @param aFile
+   *        file or directory to delete.
+   */
+  public static void deleteRecursive (@Nonnull final File aFile)
+  {
+    final File [] aChildren = aFile.listFiles ();
+    if (aChildren != null)
+      for (final File aChild : aChildren)
+        deleteRecursive (aChild);
+    aFile.delete ();
+  }
 }
@@ -0,0 +1,126 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.tests.util.CodeModelTestsUtils;
+
+/**
+ * Test class for class {@link ChannelFileCodeWriter}.
+ */
+public final class ChannelFileCodeWriterTest
+{
+  private static final Charset UTF8 = Charset.forName ("UTF-8");
+
+  private static byte [] _read (final File aFile) throws Exception
+  {
+    final InputStream is = new FileInputStream (aFile);
+    try
+    {
+      final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+      final byte [] aBuffer = new byte [1024];
+      int nRead;
+      while ((nRead = is.read (aBuffer)) != -1)
+        aBAOS.write (aBuffer, 0, nRead);
+      return aBAOS.toByteArray ();
+    }
+    finally
+    {
+      is.close ();
+    }
+  }
+
+  private static JCodeModel _createModel () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    for (int i = 0; i < 5; i++)
+    {
+      final JDefinedClass c = cm._class ("org.example.Foo" + i);
+      c.javadoc ().add ("Gr\u00FC\u00DFe aus M\u00FCnchen \u20AC \u0001");
+      final JMethod m = c.method (JMod.PUBLIC, cm.ref (String.class), "get");
+      for (int j = 0; j < 50 * i; j++)
+        m.body ().decl (cm.INT, "v" + j, JExpr.lit (j));
+      m.body ()._return (JExpr.lit ("\u00E4\u00F6\u00FC \uD83D\uDE00"));
+    }
+    return cm;
+  }
+
+  @Test
+  public void testSameContentAsFileCodeWriter () throws Exception
+  {
+    final File aExpectedDir = CodeModelTestsUtils.createTempDir ();
+    final File aDir = CodeModelTestsUtils.createTempDir ();
+    try
+    {
+      _createModel ().build (new FileCodeWriter (aExpectedDir, UTF8));
+      // Tiny buffers, so that each file spans multiple buffers
+      final ChannelFileCodeWriter aCW = new ChannelFileCodeWriter (aDir, false, UTF8, 16);
+      _createModel ().build (aCW);
+
+      for (int i = 0; i < 5; i++)
+      {
+        final String sPath = "org/example/Foo" + i + ".java";
+        assertArrayEquals (sPath, _read (new File (aExpectedDir, sPath)), _read (new File (aDir, sPath)));
+      }
+      assertEquals (5, new File (aDir, "org/example").list ().length);
+    }
+    finally
+    {
+      CodeModelTestsUtils.deleteRecursive (aExpectedDir);
+      CodeModelTestsUtils.deleteRecursive (aDir);
+    }
+  }
+}
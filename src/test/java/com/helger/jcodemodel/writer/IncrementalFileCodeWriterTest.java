@@ -0,0 +1,108 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.tests.util.CodeModelTestsUtils;
+
+/**
+ * Test class for class {@link IncrementalFileCodeWriter}.
+ */
+public final class IncrementalFileCodeWriterTest
+{
+  private static JCodeModel _createModel (final String sFieldName) throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JDefinedClass c1 = cm._class ("org.example.Foo");
+    c1.field (JMod.PRIVATE, cm.INT, sFieldName);
+    cm._class ("org.example.Bar");
+    return cm;
+  }
+
+  @Test
+  public void testSkipUnchanged () throws Exception
+  {
+    final File aDir = CodeModelTestsUtils.createTempDir ();
+    try
+    {
+      IncrementalFileCodeWriter aCW = new IncrementalFileCodeWriter (aDir);
+      _createModel ("a").build (aCW);
+      assertEquals (2, aCW.getWrittenFiles ().size ());
+      assertEquals (0, aCW.getUnchangedFiles ().size ());
+      assertEquals (0, aCW.getStaleFiles ().size ());
+
+      final File aFoo = new File (aDir, "org/example/Foo.java");
+      final File aBar = new File (aDir, "org/example/Bar.java");
+      final File aOther = new File (aDir, "org/example/Other.java");
+      new FileOutputStream (aOther).close ();
+
+      // Only Foo changed
+      aCW = new IncrementalFileCodeWriter (aDir);
+      _createModel ("b").build (aCW);
+      assertEquals (1, aCW.getWrittenFiles ().size ());
+      assertTrue (aCW.getWrittenFiles ().contains (aFoo));
+      assertEquals (1, aCW.getUnchangedFiles ().size ());
+      assertTrue (aCW.getUnchangedFiles ().contains (aBar));
+      assertEquals (1, aCW.getStaleFiles ().size ());
+      assertTrue (aCW.getStaleFiles ().contains (aOther));
+
+      // Nothing changed
+      aCW = new IncrementalFileCodeWriter (aDir);
+      _createModel ("b").build (aCW);
+      assertEquals (0, aCW.getWrittenFiles ().size ());
+      assertEquals (2, aCW.getUnchangedFiles ().size ());
+    }
+    finally
+    {
+      CodeModelTestsUtils.deleteRecursive (aDir);
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/**
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ * Portions Copyright 2013-2015 Philip Helger
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.helger.jcodemodel.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.Attributes;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JPackage;
+
+/**
+ * Test class for the zip based code writers.
+ */
+public final class ZipCodeWriterTest
+{
+  private static JCodeModel _createModel () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    for (int i = 0; i < 20; i++)
+    {
+      final JDefinedClass c = cm._class ("org.example" + (i % 3) + ".Foo" + i);
+      final JMethod m = c.method (JMod.PUBLIC, cm.INT, "get");
+      for (int j = 0; j < 10 * i; j++)
+        m.body ().decl (cm.INT, "v" + j, JExpr.lit (j));
+      m.body ()._return (JExpr.lit (i));
+    }
+    cm._class ("Empty");
+    return cm;
+  }
+
+  private static Map <String, String> _getExpected () throws Exception
+  {
+    final MemoryCodeWriter aCW = new MemoryCodeWriter ();
+    _createModel ().build (aCW);
+    final Map <String, String> ret = new LinkedHashMap <String, String> ();
+    for (final Map.Entry <String, CharSequence> aEntry : aCW.getSources ().entrySet ())
+      ret.put (aEntry.getKey (), aEntry.getValue ().toString ());
+    return ret;
+  }
+
+  private static String _read (final InputStream is) throws Exception
+  {
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    final byte [] aBuffer = new byte [1024];
+    int nRead;
+    while ((nRead = is.read (aBuffer)) != -1)
+      aBAOS.write (aBuffer, 0, nRead);
+    return aBAOS.toString ("ISO-8859-1");
+  }
+
+  private static Map <String, String> _readZip (final byte [] aZip) throws Exception
+  {
+    final Map <String, String> ret = new LinkedHashMap <String, String> ();
+    final ZipInputStream aZIS = new ZipInputStream (new ByteArrayInputStream (aZip));
+    ZipEntry aEntry;
+    while ((aEntry = aZIS.getNextEntry ()) != null)
+      ret.put (aEntry.getName (), _read (aZIS));
+    aZIS.close ();
+    return ret;
+  }
+
+  @Test
+  public void testCompressionLevels () throws Exception
+  {
+    final Map <String, String> aExpected = _getExpected ();
+
+    ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    _createModel ().build (new ZipCodeWriter (aBAOS, ZipEntry.STORED, Deflater.DEFAULT_COMPRESSION));
+    assertEquals (aExpected, _readZip (aBAOS.toByteArray ()));
+    final int nStoredSize = aBAOS.size ();
+
+    aBAOS = new ByteArrayOutputStream ();
+    _createModel ().build (new ZipCodeWriter (aBAOS, Deflater.BEST_COMPRESSION));
+    assertEquals (aExpected, _readZip (aBAOS.toByteArray ()));
+    assertEquals (true, aBAOS.size () < nStoredSize);
+  }
+
+  @Test
+  public void testJarManifest () throws Exception
+  {
+    final Manifest aManifest = new Manifest ();
+    aManifest.getMainAttributes ().put (Attributes.Name.MANIFEST_VERSION, "1.0");
+    aManifest.getMainAttributes ().putValue ("Created-By", "jcodemodel");
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    _createModel ().build (new JarCodeWriter (aBAOS, aManifest));
+
+    final JarInputStream aJIS = new JarInputStream (new ByteArrayInputStream (aBAOS.toByteArray ()));
+    assertNotNull (aJIS.getManifest ());
+    assertEquals ("jcodemodel", aJIS.getManifest ().getMainAttributes ().getValue ("Created-By"));
+    aJIS.close ();
+
+    final Map <String, String> aEntries = _readZip (aBAOS.toByteArray ());
+    assertNotNull (aEntries.remove ("META-INF/MANIFEST.MF"));
+    assertEquals (_getExpected (), aEntries);
+
+    // No manifest
+    final ByteArrayOutputStream aBAOS2 = new ByteArrayOutputStream ();
+    _createModel ().build (new JarCodeWriter (aBAOS2, null));
+    assertNull (new JarInputStream (new ByteArrayInputStream (aBAOS2.toByteArray ())).getManifest ());
+  }
+
+  @Test
+  public void testParallel () throws Exception
+  {
+    final Map <String, String> aExpected = _getExpected ();
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      for (final int nLevel : new int [] { Deflater.NO_COMPRESSION,
+                                          Deflater.DEFAULT_COMPRESSION,
+                                          Deflater.BEST_COMPRESSION })
+      {
+        final File aFile = File.createTempFile ("jcm", ".zip");
+        try
+        {
+          _createModel ().build (new ParallelZipCodeWriter (new FileOutputStream (aFile), aES, nLevel));
+
+          // Check the central directory
+          final Map <String, String> aEntries = new LinkedHashMap <String, String> ();
+          final ZipFile aZip = new ZipFile (aFile);
+          try
+          {
+            final Enumeration <? extends ZipEntry> aEnum = aZip.entries ();
+            while (aEnum.hasMoreElements ())
+            {
+              final ZipEntry aEntry = aEnum.nextElement ();
+              final InputStream is = aZip.getInputStream (aEntry);
+              aEntries.put (aEntry.getName (), _read (is));
+              is.close ();
+            }
+          }
+          finally
+          {
+            aZip.close ();
+          }
+          assertEquals (aExpected, aEntries);
+        }
+        finally
+        {
+          aFile.delete ();
+        }
+      }
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testParallelDuplicateEntry () throws Exception
+  {
+    final JCodeModel cm = new JCodeModel ();
+    final JPackage aPkg = cm._package ("org.example");
+    final ExecutorService aES = Executors.newFixedThreadPool (2);
+    try
+    {
+      final ParallelZipCodeWriter aCW = new ParallelZipCodeWriter (new ByteArrayOutputStream (), aES);
+      aCW.openBinary (aPkg, "Foo.java").close ();
+      // Same name in another package is fine
+      aCW.openBinary (cm.rootPackage (), "Foo.java").close ();
+      try
+      {
+        aCW.openBinary (aPkg, "Foo.java");
+        fail ();
+      }
+      catch (final ZipException ex)
+      {
+        // expected
+        assertEquals ("duplicate entry: org/example/Foo.java", ex.getMessage ());
+      }
+      aCW.close ();
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+}